@@ -24,6 +24,7 @@ import ru.practicum.ewm.ewmservice.dto.EventFullDto;
 import ru.practicum.ewm.ewmservice.dto.EventShortDto;
 import ru.practicum.ewm.ewmservice.dto.EventShortRateDto;
 import ru.practicum.ewm.ewmservice.exception.EwmAppEntityNotFoundException;
+import ru.practicum.ewm.ewmservice.service.EventViewRecorder;
 import ru.practicum.ewm.ewmservice.service.EwmService;
 import ru.practicum.ewm.statsserver.client.StatsClientImpl;
 
@@ -32,6 +33,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Validated
@@ -73,6 +75,7 @@ public class PublicLayerApiController {
     String thisService = this.getClass().getName();
     StatsClientImpl statsClient;
     EwmService ewmService;
+    EventViewRecorder viewRecorder;
 
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("/categories/{cat-id}")
@@ -107,11 +110,10 @@ public class PublicLayerApiController {
         log.info(PUBLISHED_EVENT, response);
         String endpointPath = request.getRequestURI();
         String ip = request.getRemoteAddr();
-        var isUniqueHit = logAction(thisService, endpointPath, ip);
-        if (isUniqueHit) {
-            ewmService.addView(eId);
-        }
-        log.info(EVENT_HIT, eId, isUniqueHit);
+        logAction(thisService, endpointPath, ip, isUniqueHit -> {
+            viewRecorder.record(eId, isUniqueHit);
+            log.info(EVENT_HIT, eId, isUniqueHit);
+        });
         return response;
     }
 
@@ -128,13 +130,18 @@ public class PublicLayerApiController {
         return response;
     }
 
-    private boolean logAction(String service, String endpointPath, String ip) {
+    private void logAction(String service, String endpointPath, String ip) {
         log.info(SEND_ACTION_TO_STAT_SERVICE, service, endpointPath, ip);
-        return statsClient.hit(
-                service,
-                endpointPath,
-                ip,
-                LocalDateTime.now(Clock.systemUTC()).format(DateTimeFormatter.ofPattern(DATE_TIME_PATTERN)));
+        statsClient.dispatch(service, endpointPath, ip, now());
+    }
+
+    private void logAction(String service, String endpointPath, String ip, Consumer<Boolean> onComplete) {
+        log.info(SEND_ACTION_TO_STAT_SERVICE, service, endpointPath, ip);
+        statsClient.dispatch(service, endpointPath, ip, now(), onComplete);
+    }
+
+    private static String now() {
+        return LocalDateTime.now(Clock.systemUTC()).format(DateTimeFormatter.ofPattern(DATE_TIME_PATTERN));
     }
 
     @ResponseStatus(HttpStatus.OK)
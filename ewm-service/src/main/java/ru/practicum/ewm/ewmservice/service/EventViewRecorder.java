@@ -0,0 +1,93 @@
+package ru.practicum.ewm.ewmservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.client.StatsClientImpl;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Учет уникальных просмотров событий по ответам сервиса статистики. Признак уникальности приходит в потоке
+ * отправки обращений клиента статистики, поэтому запись просмотра в БД выполняется в отдельном потоке
+ * через очередь на queue-capacity просмотров; при переполнении очереди просмотр отбрасывается.
+ * Учитываются и просмотры, обращения которых были отложены клиентом и отправлены повторно позже.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EventViewRecorder {
+    static String THREAD_NAME = "event-view-recorder";
+    static String VIEW_DROPPED = "Очередь учета просмотров заполнена, просмотр события ID {} не учтен";
+    static String VIEW_FAILED = "Не удалось учесть просмотр события ID {}: {}";
+    static Pattern EVENT_URI = Pattern.compile("/events/(\\d+)");
+    EwmService ewmService;
+    StatsClientImpl statsClient;
+    ThreadPoolExecutor executor;
+
+    public EventViewRecorder(EwmService ewmService, StatsClientImpl statsClient,
+                             @Value("${ewm.views.queue-capacity:10000}") int queueCapacity) {
+        this.ewmService = ewmService;
+        this.statsClient = statsClient;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            var thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void init() {
+        statsClient.setReplayListener(this::replayed);
+    }
+
+    @PreDestroy
+    void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Учесть просмотр события, если обращение к нему уникально
+     *
+     * @param eId идентификатор события
+     * @param isUniqueHit признак уникальности обращения
+     */
+    public void record(Long eId, boolean isUniqueHit) {
+        if (!isUniqueHit) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    ewmService.addView(eId);
+                } catch (RuntimeException exception) {
+                    log.warn(VIEW_FAILED, eId, exception.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            log.warn(VIEW_DROPPED, eId);
+        }
+    }
+
+    /**
+     * Обращение, отправленное клиентом статистики повторно: просмотр учитывается, если это обращение
+     * к событию
+     */
+    private void replayed(HitDto hit, boolean isUniqueHit) {
+        var matcher = EVENT_URI.matcher(hit.uri());
+        if (matcher.matches()) {
+            record(Long.valueOf(matcher.group(1)), isUniqueHit);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.ewm.statsserver.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.binary.HitFrame;
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор одного обращения без БД: JSON-тело POST /hit в {@link HitDto}, время обращения в формате
+ * "yyyy-MM-dd HH:mm:ss" в {@link Instant} (так же, как в сервисе) и, для сравнения, кадр двоичного
+ * протокола {@link HitFrame.Hit}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitDecodingBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] json;
+    private String timestamp;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        var instant = Instant.parse("2024-01-15T10:15:30Z");
+        timestamp = StatsBenchmarkContext.format(instant);
+        json = mapper.writeValueAsBytes(new HitDto(StatsBenchmarkContext.APP, "/events/1024", "192.168.10.25",
+                timestamp));
+        var encoded = new HitFrame.Hit(1L, 1, 1024, PackedIp.pack("192.168.10.25"), instant.toEpochMilli()).encode();
+        frame = ByteBuffer.wrap(encoded, HitFrame.LENGTH_BYTES, encoded.length - HitFrame.LENGTH_BYTES).slice();
+    }
+
+    @Benchmark
+    public HitDto decodeJson() throws IOException {
+        return mapper.readValue(json, HitDto.class);
+    }
+
+    @Benchmark
+    public Instant parseTimestamp() {
+        return LocalDateTime.parse(timestamp, StatsBenchmarkContext.DATE_TIME_FORMATTER).toInstant(ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public Instant decodeJsonWithTimestamp() throws IOException {
+        var hit = mapper.readValue(json, HitDto.class);
+        return LocalDateTime.parse(hit.timestamp(), StatsBenchmarkContext.DATE_TIME_FORMATTER)
+                .toInstant(ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public HitFrame decodeBinaryFrame() {
+        return HitFrame.decode(frame.duplicate());
+    }
+}
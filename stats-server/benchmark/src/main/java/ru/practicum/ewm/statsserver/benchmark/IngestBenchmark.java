@@ -0,0 +1,121 @@
+package ru.practicum.ewm.statsserver.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прием обращений {@link StatsService#add} и {@link StatsService#addAll} в режимах stats-server.ingest.mode
+ * sync, async и journal. Перед замером БД заполняется seedHits обращениями к uris эндпоинтам, чтобы
+ * индекс первых обращений и таблицы агрегатов имели реалистичный размер. В режимах async и journal
+ * отказ из-за заполненного буфера или журнала (429) считается выполненной операцией и не прерывает замер.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(4)
+public class IngestBenchmark {
+    private static final int POOL_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 100;
+    @Param({"sync", "async", "journal"})
+    public String mode;
+    @Param({"100", "10000"})
+    public int uris;
+    @Param({"100000"})
+    public int seedHits;
+    private StatsBenchmarkContext context;
+    private StatsService statsService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsBenchmarkContext.start(Map.of("stats-server.ingest.mode", mode));
+        context.seed(seedHits, uris, 42L);
+        statsService = context.statsService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean add(HitPool pool) {
+        try {
+            return statsService.add(pool.next());
+        } catch (AppTooManyRequestsException exception) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public List<Boolean> addBatch(HitPool pool) {
+        try {
+            return statsService.addAll(pool.nextBatch(BATCH_SIZE));
+        } catch (AppTooManyRequestsException exception) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Заранее подготовленные обращения потока: формирование DTO не входит в замер. Обращения повторяются
+     * по кругу, поэтому доля уникальных обращений убывает по ходу замера, как и в работающем сервисе.
+     */
+    @State(Scope.Thread)
+    public static class HitPool {
+        private HitDto[] hits;
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setUp(IngestBenchmark benchmark, ThreadParams threadParams) {
+            var random = new SplittableRandom(threadParams.getThreadIndex());
+            var timestamp = StatsBenchmarkContext.format(Instant.now());
+            hits = new HitDto[POOL_SIZE];
+            for (int i = 0; i < POOL_SIZE; i++) {
+                hits[i] = new HitDto(StatsBenchmarkContext.APP,
+                        StatsBenchmarkContext.uri(random.nextInt(benchmark.uris)),
+                        StatsBenchmarkContext.ip(random.nextInt(1 << 20)),
+                        timestamp);
+            }
+        }
+
+        HitDto next() {
+            var hit = hits[position];
+            position = (position + 1) & (POOL_SIZE - 1);
+            return hit;
+        }
+
+        List<HitDto> nextBatch(int size) {
+            if (position + size > POOL_SIZE) {
+                position = 0;
+            }
+            var batch = Arrays.asList(hits).subList(position, position + size);
+            position += size;
+            return batch;
+        }
+    }
+}
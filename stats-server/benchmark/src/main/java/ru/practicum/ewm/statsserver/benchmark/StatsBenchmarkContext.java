@@ -0,0 +1,136 @@
+package ru.practicum.ewm.statsserver.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.statsserver.server.StatsServiceApp;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Сервис статистики для замеров: контекст Spring без веб-сервера со встроенной H2 в режиме совместимости
+ * с PostgreSQL (как в интеграционных тестах сервиса). Каждый контекст работает со своей БД в памяти
+ * и своим каталогом журнала приема, который удаляется при закрытии.
+ */
+final class StatsBenchmarkContext implements AutoCloseable {
+    static final String APP = "ewm-main-service";
+    static final Instant SEED_END = Instant.parse("2024-02-01T00:00:00Z");
+    static final Duration SEED_PERIOD = Duration.ofDays(30);
+    static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int SEED_BATCH_SIZE = 5_000;
+    private static final int IP_CARDINALITY = 50_000;
+    private final ConfigurableApplicationContext context;
+    private final Path journalDir;
+
+    private StatsBenchmarkContext(ConfigurableApplicationContext context, Path journalDir) {
+        this.context = context;
+        this.journalDir = journalDir;
+    }
+
+    /**
+     * Запустить сервис статистики. Настройки передаются аргументами командной строки, поэтому имеют
+     * приоритет над application.properties сервиса.
+     *
+     * @param properties настройки stats-server.* и другие, дополняющие настройки БД
+     * @return запущенный сервис
+     */
+    static StatsBenchmarkContext start(Map<String, String> properties) {
+        Path journalDir;
+        try {
+            journalDir = Files.createTempDirectory("stats-benchmark-journal");
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        var args = new ArrayList<String>();
+        args.add("--spring.main.web-application-type=none");
+        args.add("--spring.main.banner-mode=off");
+        args.add("--logging.level.root=warn");
+        args.add("--spring.datasource.driverClassName=org.h2.Driver");
+        args.add("--spring.datasource.url=jdbc:h2:mem:stats-benchmark-" + UUID.randomUUID()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+        args.add("--spring.datasource.username=sa");
+        args.add("--spring.datasource.password=");
+        args.add("--spring.sql.init.platform=h2");
+        args.add("--stats-server.journal.dir=" + journalDir);
+        properties.forEach((key, value) -> args.add("--" + key + "=" + value));
+        var context = new SpringApplicationBuilder(StatsServiceApp.class).run(args.toArray(String[]::new));
+        return new StatsBenchmarkContext(context, journalDir);
+    }
+
+    StatsService statsService() {
+        return context.getBean(StatsService.class);
+    }
+
+    /**
+     * Заполнить БД обращениями, равномерно распределенными по эндпоинтам и периоду SEED_PERIOD до SEED_END.
+     * Обращения записываются тем же путем, что и при приеме: с определением уникальности и обновлением
+     * агрегатов. Последовательность обращений определяется seed и одинакова при каждом запуске.
+     *
+     * @param hits количество обращений
+     * @param uris количество различных эндпоинтов
+     * @param seed начальное значение генератора
+     */
+    void seed(int hits, int uris, long seed) {
+        var writer = context.getBean(HitBatchWriter.class);
+        var random = new SplittableRandom(seed);
+        var periodSeconds = SEED_PERIOD.toSeconds();
+        var from = SEED_END.minus(SEED_PERIOD);
+        var batch = new ArrayList<HitRecord>(SEED_BATCH_SIZE);
+        for (int i = 0; i < hits; i++) {
+            batch.add(new HitRecord(APP, uri(random.nextInt(uris)), ip(random.nextInt(IP_CARDINALITY)),
+                    from.plusSeconds(random.nextLong(periodSeconds))));
+            if (batch.size() == SEED_BATCH_SIZE || i == hits - 1) {
+                writer.write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    static String uri(int index) {
+        return "/events/" + index;
+    }
+
+    static String ip(int index) {
+        return "10." + (index >>> 16 & 0xFF) + "." + (index >>> 8 & 0xFF) + "." + (index & 0xFF);
+    }
+
+    static String format(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).format(DATE_TIME_FORMATTER);
+    }
+
+    static List<String> uris(int count, int cardinality) {
+        return Stream.iterate(0, i -> i + Math.max(1, cardinality / count))
+                .limit(Math.min(count, cardinality))
+                .map(StatsBenchmarkContext::uri)
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        try (var files = Files.walk(journalDir)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.ewm.statsserver.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение статистики {@link StatsService#getStats} по БД, заполненной seedHits обращениями к uris эндпоинтам
+ * за 30 суток. Диапазон запроса - последние 7 суток с неровными краями, так что в план запроса входят
+ * агрегаты всех гранулярностей и исходные записи. Кеш результатов по умолчанию отключен (cacheRows = 0),
+ * чтобы замерялось чтение из БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class StatsQueryBenchmark {
+    private static final int FILTER_URIS = 10;
+    @Param({"100000", "1000000"})
+    public int seedHits;
+    @Param({"100", "10000"})
+    public int uris;
+    @Param({"0"})
+    public long cacheRows;
+    private StatsBenchmarkContext context;
+    private StatsService statsService;
+    private String start;
+    private String end;
+    private List<String> filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsBenchmarkContext.start(Map.of("stats-server.cache.max-rows", String.valueOf(cacheRows)));
+        context.seed(seedHits, uris, 42L);
+        statsService = context.statsService();
+        start = StatsBenchmarkContext.format(StatsBenchmarkContext.SEED_END
+                .minus(Duration.ofDays(7))
+                .plus(Duration.ofMinutes(37).plusSeconds(15)));
+        end = StatsBenchmarkContext.format(StatsBenchmarkContext.SEED_END
+                .minus(Duration.ofHours(2).plusMinutes(3).plusSeconds(5)));
+        filter = StatsBenchmarkContext.uris(FILTER_URIS, uris);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> allHits() {
+        return statsService.getStats(start, end, null, false, false);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> allHitsByUris() {
+        return statsService.getStats(start, end, filter, false, false);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> uniqueEstimate() {
+        return statsService.getStats(start, end, null, true, false);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> uniqueExact() {
+        return statsService.getStats(start, end, null, true, true);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> uniqueExactByUris() {
+        return statsService.getStats(start, end, filter, true, true);
+    }
+}
@@ -0,0 +1,339 @@
+package ru.practicum.ewm.statsserver.client;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.binary.HitFrame;
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправка обращений по двоичному протоколу {@link HitFrame} через постоянное TCP-соединение с сервисом
+ * статистики. Компоненты и эндпоинты передаются один раз на соединение кадрами {@link HitFrame.Dict}, дата
+ * обращения переводится в миллисекунды, а IP-адрес упаковывается на стороне клиента. Подтверждения читает
+ * отдельный поток и завершает ими {@link CompletableFuture} соответствующих обращений.
+ * <p>
+ * Соединение открывается в отдельном потоке: обращения, отправленные до его установления, передаются сразу
+ * после подключения, а вызывающий поток не ждет connectTimeout. Когда словари соединения достигают
+ * {@link #MAX_DICT_ENTRIES} идентификаторов - предела сервера, - следующие обращения передаются через новое
+ * соединение, а прежнее закрывается после получения его подтверждений.
+ * <p>
+ * При обрыве соединения, ошибке подключения и по истечении ackTimeout неподтвержденные обращения завершаются
+ * признаком false, а следующее обращение открывает новое соединение.
+ */
+@Slf4j
+class BinaryHitTransport implements AutoCloseable {
+    static final int MAX_DICT_ENTRIES = 10_000;
+    private static final String ACKS_THREAD_NAME = "stats-binary-acks";
+    private static final String CONNECT_THREAD_NAME = "stats-binary-connect";
+    private static final String SEND_FAILED = "Ошибка клиента при отправке статистики по двоичному протоколу: {}";
+    private static final String CONNECT_FAILED = "Ошибка подключения к сервису статистики по двоичному протоколу: {}";
+    private static final String CONNECTION_LOST = "Соединение с сервисом статистики по двоичному протоколу закрыто: {}";
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final String host;
+    private final int port;
+    private final Duration connectTimeout;
+    private final Duration ackTimeout;
+    private final ExecutorService connector;
+    private final Object lock = new Object();
+    private final Queue<PendingHit> waiting = new ArrayDeque<>();
+    private CompletableFuture<Connection> connection;
+    private long nextSeq;
+    private boolean closed;
+
+    BinaryHitTransport(String host, int port, Duration connectTimeout, Duration ackTimeout) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.ackTimeout = ackTimeout;
+        this.connector = Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, CONNECT_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Отправить обращение, не дожидаясь подключения и подтверждения
+     *
+     * @param hit обращение
+     * @return признак уникальности обращения, доступный после подтверждения сервером; false, если подтверждение
+     *         не получено за ackTimeout
+     */
+    CompletableFuture<Boolean> send(HitDto hit) {
+        var result = new CompletableFuture<Boolean>().completeOnTimeout(false, ackTimeout.toMillis(),
+                TimeUnit.MILLISECONDS);
+        try {
+            long epochMilli = LocalDateTime.parse(hit.timestamp(), DATE_TIME_FORMATTER)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+            long seq;
+            synchronized (lock) {
+                seq = nextSeq++;
+            }
+            submit(new PendingHit(seq, hit.app(), hit.uri(), PackedIp.pack(hit.ip()), epochMilli, result));
+        } catch (RuntimeException exception) {
+            log.info(SEND_FAILED, exception.getMessage());
+            result.complete(false);
+        }
+        return result;
+    }
+
+    /**
+     * Закрыть соединение. Неподтвержденные обращения завершаются признаком false, новые обращения
+     * не отправляются.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Connection> current;
+        synchronized (lock) {
+            closed = true;
+            current = connection;
+            connection = null;
+            waiting.forEach(hit -> hit.result().complete(false));
+            waiting.clear();
+        }
+        connector.shutdown();
+        if (current != null) {
+            current.thenAccept(Connection::close);
+        }
+    }
+
+    /**
+     * Передать обращение в текущее соединение. Пока соединение устанавливается, обращения ждут в очереди
+     * и передаются после подключения в порядке отправки.
+     */
+    private void submit(PendingHit hit) {
+        synchronized (lock) {
+            if (closed) {
+                hit.result().complete(false);
+                return;
+            }
+            if (connection == null) {
+                connection = connect();
+            }
+            if (!connection.isDone()) {
+                waiting.add(hit);
+            } else if (connection.isCompletedExceptionally()) {
+                hit.result().complete(false);
+            } else if (!connection.join().send(hit)) {
+                submit(hit);
+            }
+        }
+    }
+
+    /**
+     * Начать подключение в потоке подключения и передать ожидающие его обращения после подключения.
+     * Вызывается под блокировкой транспорта.
+     */
+    private CompletableFuture<Connection> connect() {
+        var connecting = CompletableFuture.supplyAsync(() -> new Connection(open()), connector);
+        connecting.whenComplete((opened, exception) -> {
+            synchronized (lock) {
+                if (exception != null) {
+                    log.info(CONNECT_FAILED, exception.getMessage());
+                    if (connection == connecting) {
+                        connection = null;
+                    }
+                }
+                var ready = List.copyOf(waiting);
+                waiting.clear();
+                for (var hit : ready) {
+                    if (exception != null) {
+                        hit.result().complete(false);
+                    } else if (!opened.send(hit)) {
+                        submit(hit);
+                    }
+                }
+            }
+        });
+        return connecting;
+    }
+
+    /**
+     * Перестать передавать обращения через соединение, если оно текущее. Вызывается под блокировкой транспорта.
+     */
+    private void release(Connection released) {
+        if (connection != null && connection.isDone() && !connection.isCompletedExceptionally()
+                && connection.join() == released) {
+            connection = null;
+        }
+    }
+
+    private SocketChannel open() {
+        try {
+            var channel = SocketChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.socket().connect(new InetSocketAddress(host, port), (int) connectTimeout.toMillis());
+                return channel;
+            } catch (IOException exception) {
+                channel.close();
+                throw exception;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private record PendingHit(long seq, String app, String uri, byte[] ip, long epochMilli,
+                              CompletableFuture<Boolean> result) {
+    }
+
+    /**
+     * Соединение с собственными словарями и ожидающими подтверждения обращениями
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final Map<String, Integer> apps = new HashMap<>();
+        private final Map<String, Integer> uris = new HashMap<>();
+        private final Map<Long, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+        private final ByteBuffer header = ByteBuffer.allocate(HitFrame.LENGTH_BYTES);
+        private boolean retired;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            var reader = new Thread(this::readAcks, ACKS_THREAD_NAME);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Записать в соединение кадр обращения и, если нужно, предшествующие ему кадры словаря
+         *
+         * @return false, если соединение выведено из работы и обращение нужно передать в новое
+         */
+        private boolean send(PendingHit hit) {
+            synchronized (lock) {
+                if (!retired && (isFull(apps, hit.app()) || isFull(uris, hit.uri()))) {
+                    retire();
+                }
+                if (retired) {
+                    return false;
+                }
+                try {
+                    var appId = id(apps, HitFrame.Dict.APP, hit.app());
+                    var uriId = id(uris, HitFrame.Dict.URI, hit.uri());
+                    pending.put(hit.seq(), hit.result());
+                    hit.result().whenComplete((unique, exception) -> acknowledged(hit.seq()));
+                    write(new HitFrame.Hit(hit.seq(), appId, uriId, hit.ip(), hit.epochMilli()).encode());
+                } catch (IOException | RuntimeException exception) {
+                    log.info(SEND_FAILED, exception.getMessage());
+                    hit.result().complete(false);
+                    close();
+                }
+                return true;
+            }
+        }
+
+        private boolean isFull(Map<String, Integer> names, String name) {
+            return names.size() >= MAX_DICT_ENTRIES && !names.containsKey(name);
+        }
+
+        /**
+         * Вывести соединение из работы: новые обращения передаются через новое соединение, а это закрывается
+         * после подтверждения отправленных. Вызывается под блокировкой транспорта.
+         */
+        private void retire() {
+            retired = true;
+            release(this);
+            if (pending.isEmpty()) {
+                close();
+            }
+        }
+
+        private int id(Map<String, Integer> names, byte kind, String name) throws IOException {
+            var id = names.get(name);
+            if (id == null) {
+                id = names.size() + 1;
+                write(new HitFrame.Dict(kind, id, name).encode());
+                names.put(name, id);
+            }
+            return id;
+        }
+
+        private void acknowledged(long seq) {
+            pending.remove(seq);
+            if (pending.isEmpty()) {
+                synchronized (lock) {
+                    if (retired && pending.isEmpty()) {
+                        close();
+                    }
+                }
+            }
+        }
+
+        private void write(byte[] frame) throws IOException {
+            var buffer = ByteBuffer.wrap(frame);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void readAcks() {
+            try {
+                while (true) {
+                    header.clear();
+                    readFully(header);
+                    var payload = ByteBuffer.allocate(header.flip().getInt());
+                    readFully(payload);
+                    if (HitFrame.decode(payload.flip()) instanceof HitFrame.Ack ack) {
+                        var result = pending.remove(ack.seq());
+                        if (result != null) {
+                            result.complete(ack.status() == HitFrame.Ack.UNIQUE);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException exception) {
+                if (channel.isOpen()) {
+                    log.info(CONNECTION_LOST, exception.getMessage());
+                }
+                close();
+            }
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Сервис статистики закрыл соединение");
+                }
+            }
+        }
+
+        /**
+         * Закрыть соединение и завершить ожидающие подтверждения обращения признаком false
+         */
+        private void close() {
+            synchronized (lock) {
+                retired = true;
+                release(this);
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // соединение уже закрыто
+            }
+            pending.values().forEach(result -> result.complete(false));
+            pending.clear();
+        }
+    }
+}
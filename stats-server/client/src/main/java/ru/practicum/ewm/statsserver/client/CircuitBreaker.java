@@ -0,0 +1,84 @@
+package ru.practicum.ewm.statsserver.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Предохранитель вызовов узла сервиса статистики. После failureThreshold ошибок подряд размыкается,
+ * и вызовы на время openDuration отклоняются сразу, не дожидаясь таймаута соединения. Затем пропускается
+ * один пробный вызов: успех замыкает предохранитель, ошибка снова размыкает его на openDuration.
+ */
+@Slf4j
+final class CircuitBreaker {
+    private static final String OPENED = "Узел сервиса статистики {} недоступен после {} ошибок подряд, "
+            + "вызовы приостановлены на {}";
+    private static final String CLOSED = "Узел сервиса статистики {} снова доступен";
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration, Clock clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Можно ли выполнить вызов. В полуоткрытом состоянии разрешение получает только один вызов,
+     * остальные отклоняются, пока он не завершится.
+     *
+     * @return true, если вызов можно выполнить
+     */
+    synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> {
+                if (clock.millis() < openUntil) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Будет ли разрешен следующий вызов; в отличие от {@link #tryAcquire()} не меняет состояние
+     *
+     * @return true, если предохранитель замкнут или время размыкания истекло
+     */
+    synchronized boolean isCallPermitted() {
+        return state == State.CLOSED || state == State.OPEN && clock.millis() >= openUntil;
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info(CLOSED, name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            if (state == State.CLOSED) {
+                log.warn(OPENED, name, failures, openDuration);
+            }
+            state = State.OPEN;
+            openUntil = clock.millis() + openDuration.toMillis();
+        }
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.ewm.statsserver.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хеширования: каждый узел занимает на кольце virtualNodes точек, ключ относится
+ * к первому узлу по часовой стрелке от своего хеша. При добавлении или удалении узла меняется узел только
+ * у ключей, попадавших на его точки, - в среднем 1/N ключей. Хеш - первые 8 байт MD5, поэтому распределение
+ * одинаково на всех экземплярах клиента независимо от JVM.
+ *
+ * @param <T> тип узла
+ */
+final class ConsistentHashRing<T> {
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+
+    /**
+     * @param nodes узлы
+     * @param names имена узлов в том же порядке; имя определяет положение узла на кольце
+     * @param virtualNodes количество точек каждого узла на кольце
+     */
+    ConsistentHashRing(List<T> nodes, List<String> names, int virtualNodes) {
+        if (nodes.isEmpty() || nodes.size() != names.size() || virtualNodes < 1) {
+            throw new IllegalArgumentException("Кольцу нужен хотя бы один узел и хотя бы одна точка на узел");
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                ring.put(hash(names.get(i) + "#" + point), nodes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Узел, к которому относится ключ
+     *
+     * @param key ключ
+     * @return узел
+     */
+    T node(String key) {
+        var entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        try {
+            var digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package ru.practicum.ewm.statsserver.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Файл на диске для обращений, которые не удалось поставить в очередь или отправить. Обращения дописываются
+ * построчно в JSON в текущий сегмент каталога dir; сегмент больше segmentBytes закрывается и начинается новый.
+ * Сегменты вместе занимают не больше maxBytes: обращения, которые не помещаются, не записываются.
+ * При повторной отправке сегменты читаются от старого к новому, отправленный сегмент удаляется, а при ошибке
+ * в нем остаются только неотправленные обращения. Сегменты, оставшиеся после перезапуска, отправляются так же,
+ * поэтому обращение может быть отправлено повторно, если клиент остановился между отправкой и удалением сегмента.
+ */
+@Slf4j
+final class HitSpillFile implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final String REPLAY_FAILED = "Ошибка повторной отправки обращений из {}, осталось {}: {}";
+    private static final String SPILL_FAILED = "Ошибка файла неотправленных обращений {}: {}";
+    private static final String SPILL_FULL = "Файл неотправленных обращений %s заполнен: %d из %d байт";
+    private static final int LINE_SEPARATOR_BYTES = System.lineSeparator().getBytes(StandardCharsets.UTF_8).length;
+    private final Path dir;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicLong size = new AtomicLong();
+    private long currentSegment;
+    private BufferedWriter writer;
+    private long written;
+
+    HitSpillFile(Path dir, long segmentBytes, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        var segments = segments();
+        currentSegment = segments.stream().mapToLong(HitSpillFile::sequence).max().orElse(-1L) + 1;
+        for (var segment : segments) {
+            size.addAndGet(Files.size(segment));
+        }
+    }
+
+    /**
+     * Дописать обращения в текущий сегмент. Обращения записываются, только если помещаются целиком.
+     *
+     * @param hits обращения
+     * @throws IOException ошибка записи или файл заполнен
+     */
+    synchronized void append(List<HitDto> hits) throws IOException {
+        var lines = new ArrayList<String>(hits.size());
+        long bytes = 0;
+        for (var hit : hits) {
+            var line = mapper.writeValueAsString(hit);
+            lines.add(line);
+            bytes += line.getBytes(StandardCharsets.UTF_8).length + LINE_SEPARATOR_BYTES;
+        }
+        if (size.get() + bytes > maxBytes) {
+            throw new IOException(SPILL_FULL.formatted(dir, size.get(), maxBytes));
+        }
+        if (writer == null) {
+            var segment = dir.resolve(String.format("%020d", currentSegment) + SEGMENT_SUFFIX);
+            writer = Files.newBufferedWriter(segment, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            written = Files.size(segment);
+        }
+        for (var line : lines) {
+            writer.write(line);
+            writer.newLine();
+        }
+        writer.flush();
+        written += bytes;
+        size.addAndGet(bytes);
+        if (written >= segmentBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Отправить обращения самого старого сегмента пакетами по batchSize. Текущий сегмент перед отправкой
+     * закрывается, новые обращения пишутся в следующий. Пока выполняется одна отправка, другие вызовы
+     * ничего не делают.
+     *
+     * @param batchSize размер пакета
+     * @param sender отправка пакета; исключение означает, что пакет не отправлен
+     * @return true, если сегмент отправлен целиком
+     */
+    boolean replay(int batchSize, Consumer<List<HitDto>> sender) {
+        if (!replaying.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            var segment = oldestSegment();
+            if (segment == null) {
+                return false;
+            }
+            List<HitDto> hits;
+            try (var lines = Files.lines(segment, StandardCharsets.UTF_8)) {
+                hits = new ArrayList<>();
+                for (var line : (Iterable<String>) lines::iterator) {
+                    if (!line.isBlank()) {
+                        hits.add(mapper.readValue(line, HitDto.class));
+                    }
+                }
+            }
+            for (int from = 0; from < hits.size(); from += batchSize) {
+                try {
+                    sender.accept(hits.subList(from, Math.min(from + batchSize, hits.size())));
+                } catch (RuntimeException exception) {
+                    log.info(REPLAY_FAILED, segment.getFileName(), hits.size() - from, exception.getMessage());
+                    keep(segment, hits.subList(from, hits.size()));
+                    return false;
+                }
+            }
+            delete(segment);
+            return true;
+        } catch (IOException exception) {
+            log.info(SPILL_FAILED, dir, exception.getMessage());
+            return false;
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * Есть ли обращения, ожидающие отправки
+     *
+     * @return true, если в каталоге есть хотя бы один сегмент
+     */
+    boolean isEmpty() {
+        try {
+            return segments().isEmpty();
+        } catch (IOException exception) {
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            rotate();
+        } catch (IOException exception) {
+            log.info(SPILL_FAILED, dir, exception.getMessage());
+        }
+    }
+
+    private synchronized Path oldestSegment() throws IOException {
+        var segments = segments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        var oldest = segments.get(0);
+        if (sequence(oldest) == currentSegment) {
+            rotate();
+        }
+        return oldest;
+    }
+
+    private void rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            currentSegment++;
+        }
+    }
+
+    private void keep(Path segment, List<HitDto> hits) throws IOException {
+        var temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+        var lines = new ArrayList<String>(hits.size());
+        for (var hit : hits) {
+            lines.add(mapper.writeValueAsString(hit));
+        }
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        long released = Files.size(segment) - Files.size(temp);
+        Files.move(temp, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        size.addAndGet(-released);
+    }
+
+    private void delete(Path segment) throws IOException {
+        long released = Files.size(segment);
+        Files.delete(segment);
+        size.addAndGet(-released);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long sequence(Path segment) {
+        var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
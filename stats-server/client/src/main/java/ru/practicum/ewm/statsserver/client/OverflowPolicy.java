@@ -0,0 +1,20 @@
+package ru.practicum.ewm.statsserver.client;
+
+/**
+ * Что делать с обращением, для которого нет места в очереди отправки {@link StatsHitDispatcher}
+ */
+public enum OverflowPolicy {
+    /**
+     * Отбросить обращение
+     */
+    DROP,
+    /**
+     * Ждать места в очереди не дольше block-timeout, затем отбросить
+     */
+    BLOCK,
+    /**
+     * Записать обращение в файл повторной отправки узла и отправить позже вместе с пакетами, которые
+     * не удалось отправить
+     */
+    SPILL
+}
@@ -1,32 +1,250 @@
 package ru.practicum.ewm.statsserver.client;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.StatsQueryDto;
 import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Клиент сервиса статистики. Сервис может состоять из нескольких независимых узлов stats-server.url
+ * со своими БД: обращения распределяются по узлам согласованным хешированием uri {@link ConsistentHashRing},
+ * поэтому все обращения к одному эндпоинту, а значит, и определение их уникальности, приходятся на один узел.
+ * Статистика запрашивается у всех узлов параллельно и объединяется.
+ * <p>
+ * Обращения, ответ на которые не нужен вызывающему потоку сразу, регистрируются методом dispatch: они
+ * отправляются в фоне через очередь {@link StatsHitDispatcher} каждого узла, не задерживая ответ пользователю.
+ * Запросы по HTTP выполняются через общий для всех узлов {@link StatsHttpTransport} с ограничениями по времени.
+ * <p>
+ * Вызовы каждого узла защищены предохранителем {@link CircuitBreaker}: пока узел недоступен, вызовы отклоняются
+ * сразу, а обращения, отправляемые по HTTP, записываются в локальный файл {@link HitSpillFile} узла. В тот же файл
+ * очередь отправки откладывает обращения сверх своей емкости при политике {@link OverflowPolicy#SPILL}. Обращения
+ * из файла повторно отправляются пакетами, когда узел снова доступен; ответ 429 откладывает повторную отправку
+ * на время из заголовка Retry-After.
+ */
 @Component
 @Slf4j
 public class StatsClientImpl {
-    private final RestClient restClient = RestClient.create();
+    private static final String SEND_FAILED = "\nОшибка клиента при отправке статистики: ";
+    private static final String SPOOL_FAILED = "Не удалось сохранить {} обращений к узлу {} для повторной отправки: {}";
+    private static final String REPLAY_DEFERRED = "Узел {} перегружен, повторная отправка отложена на {}";
+    private static final String REPLAY_REJECTED = "Узел {} отклонил {} сохраненных обращений: {}";
+    private static final String LISTENER_FAILED = "Ошибка обработчика повторно отправленного обращения: {}";
+    private static final String CIRCUIT_OPEN = "Вызовы узла сервиса статистики приостановлены: ";
     @Value("${stats-server.url:http://localhost:9090}")
-    private String statServerUrl;
+    private String[] statServerUrls;
+    @Value("${stats-server.http.http2-enabled:true}")
+    private boolean http2Enabled;
+    @Value("${stats-server.http.connect-timeout:1s}")
+    private Duration connectTimeout;
+    @Value("${stats-server.http.read-timeout:2s}")
+    private Duration readTimeout;
+    @Value("${stats-server.http.max-concurrent-requests:64}")
+    private int maxConcurrentRequests;
+    @Value("${stats-server.http.acquire-timeout:100ms}")
+    private Duration acquireTimeout;
+    @Value("${stats-server.sharding.virtual-nodes:128}")
+    private int virtualNodes;
+    @Value("${stats-server.binary.enabled:false}")
+    private boolean binaryEnabled;
+    @Value("${stats-server.binary.address:localhost:9092}")
+    private String[] binaryAddresses;
+    @Value("${stats-server.binary.connect-timeout:1s}")
+    private Duration binaryConnectTimeout;
+    @Value("${stats-server.binary.ack-timeout:5s}")
+    private Duration binaryAckTimeout;
+    @Value("${stats-server.dispatch.capacity:10000}")
+    private int dispatchCapacity;
+    @Value("${stats-server.dispatch.senders:2}")
+    private int dispatchSenders;
+    @Value("${stats-server.dispatch.batch-size:100}")
+    private int dispatchBatchSize;
+    @Value("${stats-server.dispatch.overflow:drop}")
+    private OverflowPolicy overflowPolicy;
+    @Value("${stats-server.dispatch.block-timeout:50ms}")
+    private Duration blockTimeout;
+    @Value("${stats-server.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+    @Value("${stats-server.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+    @Value("${stats-server.circuit-breaker.open-duration:10s}")
+    private Duration openDuration;
+    @Value("${stats-server.spool.dir:stats-spool}")
+    private Path spoolDir;
+    @Value("${stats-server.spool.segment-size:1MB}")
+    private DataSize spoolSegmentSize;
+    @Value("${stats-server.spool.max-size:256MB}")
+    private DataSize spoolMaxSize;
+    @Value("${stats-server.spool.replay-interval:1s}")
+    private Duration replayInterval;
+    @Value("${stats-server.spool.replay-batch-size:100}")
+    private int replayBatchSize;
+    @Value("${stats-server.query-cache.enabled:true}")
+    private boolean queryCacheEnabled;
+    @Value("${stats-server.query-cache.max-rows:10000}")
+    private long queryCacheMaxRows;
+    @Value("${stats-server.query-cache.open-window-ttl:5s}")
+    private Duration openWindowTtl;
+    @Value("${stats-server.query-cache.closed-after:1m}")
+    private Duration closedAfter;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    private StatsHttpTransport httpTransport;
+    private RestClient restClient;
+    private List<Shard> shards;
+    private ConsistentHashRing<Shard> ring;
+    private ExecutorService scatterExecutor;
+    private ScheduledExecutorService spoolReplayer;
+    private StatsQueryCache queryCache;
+    private volatile BiConsumer<HitDto, Boolean> replayListener = (hit, isUnique) -> {
+    };
+
+    @PostConstruct
+    void init() {
+        var urls = Arrays.stream(statServerUrls).map(String::trim).toList();
+        if (binaryEnabled && binaryAddresses.length != urls.size()) {
+            throw new IllegalStateException(
+                    "Количество адресов stats-server.binary.address должно совпадать с количеством узлов "
+                            + "stats-server.url");
+        }
+        httpTransport = new StatsHttpTransport(http2Enabled, connectTimeout, readTimeout, maxConcurrentRequests,
+                acquireTimeout, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+        restClient = httpTransport.restClient();
+        shards = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            var shard = new Shard(urls.get(i));
+            if (circuitBreakerEnabled) {
+                shard.breaker = new CircuitBreaker(shard.url, failureThreshold, openDuration, Clock.systemUTC());
+            }
+            if (overflowPolicy == OverflowPolicy.SPILL || circuitBreakerEnabled && !binaryEnabled) {
+                shard.spool = hitSpillFile(i);
+            }
+            if (binaryEnabled) {
+                var address = binaryAddresses[i].trim();
+                int separator = address.lastIndexOf(':');
+                shard.binaryTransport = new BinaryHitTransport(address.substring(0, separator),
+                        Integer.parseInt(address.substring(separator + 1)), binaryConnectTimeout, binaryAckTimeout);
+            }
+            shard.dispatcher = new StatsHitDispatcher(batch -> deliver(shard, batch), dispatchCapacity,
+                    dispatchSenders, dispatchBatchSize, overflowPolicy, blockTimeout, shard.spool);
+            shards.add(shard);
+        }
+        ring = new ConsistentHashRing<>(shards, urls, virtualNodes);
+        scatterExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        if (queryCacheEnabled) {
+            queryCache = new StatsQueryCache(queryCacheMaxRows, openWindowTtl, closedAfter, Clock.systemUTC());
+        }
+        if (shards.stream().anyMatch(shard -> shard.spool != null)) {
+            spoolReplayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "stats-spool-replayer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            spoolReplayer.scheduleWithFixedDelay(this::replaySpools, replayInterval.toMillis(),
+                    replayInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (spoolReplayer != null) {
+            spoolReplayer.shutdownNow();
+        }
+        for (var shard : shards) {
+            shard.dispatcher.close();
+            if (shard.binaryTransport != null) {
+                shard.binaryTransport.close();
+            }
+            if (shard.spool != null) {
+                shard.spool.close();
+            }
+        }
+        scatterExecutor.shutdown();
+        httpTransport.close();
+    }
+
+    /**
+     * Зарегистрировать обращение в фоне, не дожидаясь ответа сервиса статистики
+     */
+    public void dispatch(String app, String uri, String ip, String timestamp) {
+        dispatch(app, uri, ip, timestamp, isUnique -> {
+        });
+    }
+
+    /**
+     * Зарегистрировать обращение в фоне. Вызывающий поток только ставит обращение в очередь.
+     *
+     * @param onComplete обработчик признака уникальности обращения; выполняется в потоке отправки,
+     *                   получает false, если обращение отброшено или отложено для повторной отправки.
+     *                   Признак уникальности отложенного обращения после повторной отправки передается
+     *                   обработчику {@link #setReplayListener}
+     */
+    public void dispatch(String app, String uri, String ip, String timestamp, Consumer<Boolean> onComplete) {
+        ring.node(uri).dispatcher.dispatch(new HitDto(app, uri, ip, timestamp), onComplete);
+    }
+
+    /**
+     * Задать обработчик признаков уникальности обращений, отложенных в файл и отправленных повторно. Выполняется
+     * в потоке повторной отправки и должен быть коротким.
+     *
+     * @param listener обработчик обращения и его признака уникальности
+     */
+    public void setReplayListener(BiConsumer<HitDto, Boolean> listener) {
+        replayListener = listener;
+    }
 
     public boolean hit(String app, String uri, String ip, String timestamp) {
-        String hitUri = UriComponentsBuilder.fromHttpUrl(statServerUrl.concat("/hit")).toUriString();
+        var shard = ring.node(uri);
+        var hitCreateDto = new HitDto(app, uri, ip, timestamp);
+        if (shard.binaryTransport != null) {
+            var isUnique = shard.binaryTransport.send(hitCreateDto).join();
+            written(List.of(hitCreateDto));
+            return isUnique;
+        }
+        String hitUri = UriComponentsBuilder.fromHttpUrl(shard.url.concat("/hit")).toUriString();
         try {
-            var hitCreateDto = new HitDto(app, uri, ip, timestamp);
-            return Boolean.TRUE.equals(
+            var isUnique = Boolean.TRUE.equals(call(shard, () ->
                         restClient.post()
                             .uri(hitUri)
                             .acceptCharset(StandardCharsets.UTF_8)
@@ -35,16 +253,272 @@ public class StatsClientImpl {
                             .body(hitCreateDto)
                             .retrieve()
                             .body(Boolean.class)
-            );
+            ));
+            written(List.of(hitCreateDto));
+            return isUnique;
         } catch (RuntimeException exception) {
-            log.info(this.getClass().getName()
-                .concat("\nОшибка клиента при отправке статистики: ").concat(exception.getMessage()));
+            sendFailed(shard, List.of(hitCreateDto), exception);
             return false;
         }
     }
 
+    /**
+     * Отправить пакет обращений: обращения группируются по узлам, каждому узлу его часть пакета отправляется
+     * одним запросом, узлам - параллельно
+     *
+     * @return признаки уникальности в порядке следования обращений в пакете
+     */
+    public List<Boolean> hits(List<HitDto> hits) {
+        if (shards.size() == 1) {
+            return send(shards.get(0), hits);
+        }
+        var groups = new LinkedHashMap<Shard, List<Integer>>();
+        for (int i = 0; i < hits.size(); i++) {
+            groups.computeIfAbsent(ring.node(hits.get(i).uri()), shard -> new ArrayList<>()).add(i);
+        }
+        var sent = new LinkedHashMap<List<Integer>, CompletableFuture<List<Boolean>>>();
+        groups.forEach((shard, indexes) -> sent.put(indexes, CompletableFuture.supplyAsync(
+                () -> send(shard, indexes.stream().map(hits::get).toList()), scatterExecutor)));
+        var uniqueFlags = new ArrayList<>(Collections.nCopies(hits.size(), false));
+        sent.forEach((indexes, result) -> {
+            var shardFlags = result.join();
+            for (int i = 0; i < indexes.size() && i < shardFlags.size(); i++) {
+                uniqueFlags.set(indexes.get(i), Boolean.TRUE.equals(shardFlags.get(i)));
+            }
+        });
+        return uniqueFlags;
+    }
+
+    /**
+     * Получить статистику со всех узлов и объединить ее. Обращения к эндпоинту хранятся на одном узле,
+     * поэтому количества обращений, в том числе уникальных, складываются без повторного учета. Исключение -
+     * эндпоинты, сменившие узел после изменения состава узлов: их уникальные IP, обращавшиеся к обоим узлам,
+     * учитываются дважды. Ошибка любого из узлов прерывает запрос, чтобы не вернуть неполную статистику.
+     * Результаты повторяющихся запросов берутся из кеша {@link StatsQueryCache}.
+     *
+     * @return статистика, отсортированная по убыванию количества обращений
+     */
     public List<ViewStatsDto> getStats(String start, String end, List<String> uris, Boolean unique) {
-        String getStatsUri = UriComponentsBuilder.fromHttpUrl(statServerUrl.concat("/stats")).toUriString();
+        if (queryCache == null) {
+            return fetchStats(start, end, uris, unique);
+        }
+        return queryCache.get(start, end, uris, unique, () -> fetchStats(start, end, uris, unique));
+    }
+
+    private List<ViewStatsDto> fetchStats(String start, String end, List<String> uris, Boolean unique) {
+        if (shards.size() == 1) {
+            return getStats(shards.get(0), start, end, uris, unique);
+        }
+        var results = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(
+                        () -> getStats(shard, start, end, uris, unique), scatterExecutor))
+                .toList();
+        return merge(results.stream().map(StatsClientImpl::join).toList());
+    }
+
+    /**
+     * Получить статистику по пакету запросов одним запросом к каждому узлу: узел вычисляет все запросы пакета
+     * за один проход по БД. Результаты узлов объединяются так же, как в {@link #getStats}. Уникальные IP
+     * оцениваются сервисом статистики приближенно.
+     *
+     * @param queries запросы
+     * @return статистика каждого запроса в порядке следования запросов
+     */
+    public List<List<ViewStatsDto>> getStatsBatch(List<StatsQueryDto> queries) {
+        if (queries.isEmpty()) {
+            return List.of();
+        }
+        if (shards.size() == 1) {
+            return getStatsBatch(shards.get(0), queries);
+        }
+        var results = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> getStatsBatch(shard, queries), scatterExecutor))
+                .toList();
+        var shardResults = results.stream().map(StatsClientImpl::join).toList();
+        var merged = new ArrayList<List<ViewStatsDto>>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            int query = i;
+            merged.add(merge(shardResults.stream()
+                    .map(shardStats -> query < shardStats.size() ? shardStats.get(query) : List.<ViewStatsDto>of())
+                    .toList()));
+        }
+        return merged;
+    }
+
+    private List<Boolean> send(Shard shard, List<HitDto> hits) {
+        try {
+            return post(shard, hits);
+        } catch (RuntimeException exception) {
+            sendFailed(shard, hits, exception);
+            return Collections.nCopies(hits.size(), false);
+        }
+    }
+
+    /**
+     * Обращения, которые не удалось отправить, записываются в файл узла для повторной отправки. Пока
+     * предохранитель разомкнут, ошибка не пишется в журнал для каждого обращения.
+     */
+    private void sendFailed(Shard shard, List<HitDto> hits, RuntimeException exception) {
+        if (!(exception instanceof CircuitOpenException)) {
+            log.info(this.getClass().getName().concat(SEND_FAILED).concat(String.valueOf(exception.getMessage())));
+        }
+        if (shard.spool != null) {
+            try {
+                shard.spool.append(hits);
+            } catch (IOException spoolException) {
+                log.warn(SPOOL_FAILED, hits.size(), shard.url, spoolException.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Повторно отправить сохраненные обращения узлов, вызовы которых снова разрешены и которые не просили
+     * подождать. При ошибке узла неотправленные обращения остаются в файле.
+     */
+    private void replaySpools() {
+        for (var shard : shards) {
+            while (shard.spool != null && isReplayPermitted(shard) && !shard.spool.isEmpty()) {
+                if (!shard.spool.replay(replayBatchSize, batch -> replay(shard, batch))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isReplayPermitted(Shard shard) {
+        return (shard.breaker == null || shard.breaker.isCallPermitted())
+                && System.nanoTime() - shard.replayResumeNanos >= 0;
+    }
+
+    /**
+     * Повторно отправить пакет. Ответ 429 означает, что узел перегружен: пакет остается в файле, а следующая
+     * отправка откладывается на время из заголовка Retry-After. Пакет, отклоненный узлом как некорректный,
+     * отбрасывается, иначе он повторялся бы бесконечно.
+     */
+    private void replay(Shard shard, List<HitDto> hits) {
+        try {
+            replayed(hits, deliver(shard, hits));
+        } catch (HttpClientErrorException.TooManyRequests exception) {
+            var retryAfter = retryAfter(exception);
+            log.info(REPLAY_DEFERRED, shard.url, retryAfter);
+            shard.replayResumeNanos = System.nanoTime() + retryAfter.toNanos();
+            throw exception;
+        } catch (HttpClientErrorException exception) {
+            log.warn(REPLAY_REJECTED, shard.url, hits.size(), exception.getMessage());
+        }
+    }
+
+    /**
+     * Через сколько повторить отправку по ответу 429: заголовок Retry-After в секундах, без него - через
+     * интервал повторной отправки
+     */
+    private Duration retryAfter(HttpClientErrorException exception) {
+        var headers = exception.getResponseHeaders();
+        var value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value != null) {
+            try {
+                return Duration.ofSeconds(Math.max(0L, Long.parseLong(value.trim())));
+            } catch (NumberFormatException ignored) {
+                // дата вместо количества секунд не поддерживается
+            }
+        }
+        return replayInterval;
+    }
+
+    /**
+     * Передать признаки уникальности повторно отправленных обращений обработчику; его ошибка не должна
+     * считаться ошибкой отправки, иначе обращения были бы отправлены еще раз
+     */
+    private void replayed(List<HitDto> hits, List<Boolean> uniqueFlags) {
+        var listener = replayListener;
+        for (int i = 0; i < hits.size(); i++) {
+            try {
+                listener.accept(hits.get(i), i < uniqueFlags.size() && Boolean.TRUE.equals(uniqueFlags.get(i)));
+            } catch (RuntimeException exception) {
+                log.warn(LISTENER_FAILED, exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Вызов узла через его предохранитель. Ошибкой узла считаются только ошибки соединения, таймауты
+     * и ответы 5xx; ответ 4xx означает, что узел доступен.
+     */
+    private <T> T call(Shard shard, Supplier<T> request) {
+        if (shard.breaker == null) {
+            return request.get();
+        }
+        if (!shard.breaker.tryAcquire()) {
+            throw new CircuitOpenException(shard.url);
+        }
+        try {
+            var result = request.get();
+            shard.breaker.onSuccess();
+            return result;
+        } catch (ResourceAccessException | HttpServerErrorException exception) {
+            shard.breaker.onFailure();
+            throw exception;
+        } catch (RuntimeException exception) {
+            shard.breaker.onSuccess();
+            throw exception;
+        }
+    }
+
+    /**
+     * Отправить пакет из очереди фоновой отправки или файла повторной отправки. Ошибка отправки по HTTP
+     * передается вызывающему, который откладывает пакет в файл узла; двоичный протокол сам завершает
+     * неподтвержденные обращения признаком false.
+     */
+    private List<Boolean> deliver(Shard shard, List<HitDto> hits) {
+        if (shard.binaryTransport == null) {
+            return post(shard, hits);
+        }
+        var results = hits.stream().map(shard.binaryTransport::send).toList();
+        var uniqueFlags = results.stream().map(CompletableFuture::join).toList();
+        written(hits);
+        return uniqueFlags;
+    }
+
+    private List<Boolean> post(Shard shard, List<HitDto> hits) {
+        String hitsUri = UriComponentsBuilder.fromHttpUrl(shard.url.concat("/hits")).toUriString();
+        var uniqueFlags = call(shard, () -> restClient.post()
+                .uri(hitsUri)
+                .acceptCharset(StandardCharsets.UTF_8)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(hits)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<Boolean>>() {
+                }));
+        written(hits);
+        return uniqueFlags == null ? Collections.nCopies(hits.size(), false) : uniqueFlags;
+    }
+
+    /**
+     * Сообщить кешу запросов о принятых сервисом обращениях: отправленные с опозданием меняют статистику
+     * закрытых периодов
+     */
+    private void written(List<HitDto> hits) {
+        if (queryCache != null) {
+            queryCache.written(hits);
+        }
+    }
+
+    /**
+     * Файл отложенных обращений узла: у каждого узла свой подкаталог, чтобы отложенные обращения
+     * отправлялись на тот же узел
+     */
+    private HitSpillFile hitSpillFile(int shardIndex) {
+        try {
+            return new HitSpillFile(spoolDir.resolve("shard-" + shardIndex), spoolSegmentSize.toBytes(),
+                    spoolMaxSize.toBytes());
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private List<ViewStatsDto> getStats(Shard shard, String start, String end, List<String> uris, Boolean unique) {
+        String getStatsUri = UriComponentsBuilder.fromHttpUrl(shard.url.concat("/stats")).toUriString();
         var request = UriComponentsBuilder
                 .fromHttpUrl(getStatsUri)
                 .queryParam("start", start)
@@ -52,12 +526,86 @@ public class StatsClientImpl {
                 .queryParamIfPresent("uris", Optional.ofNullable(uris))
                 .queryParamIfPresent("unique", Optional.ofNullable(unique))
                 .build().encode(StandardCharsets.UTF_8).toUri();
-        return restClient.get()
+        var stats = call(shard, () -> restClient.get()
                 .uri(request)
                 .acceptCharset(StandardCharsets.UTF_8)
                 .accept(MediaType.APPLICATION_JSON)
                 .retrieve()
-                .body(ParameterizedTypeReference.forType(ViewStatsDto.class));
+                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {
+                }));
+        return stats == null ? List.of() : stats;
+    }
+
+    private List<List<ViewStatsDto>> getStatsBatch(Shard shard, List<StatsQueryDto> queries) {
+        String batchUri = UriComponentsBuilder.fromHttpUrl(shard.url.concat("/stats/batch")).toUriString();
+        var stats = call(shard, () -> restClient.post()
+                .uri(batchUri)
+                .acceptCharset(StandardCharsets.UTF_8)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(queries)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<List<ViewStatsDto>>>() {
+                }));
+        return stats == null ? List.of() : stats;
+    }
+
+    /**
+     * Сложить статистику узлов по эндпоинтам
+     *
+     * @return статистика, отсортированная по убыванию количества обращений
+     */
+    private static List<ViewStatsDto> merge(List<List<ViewStatsDto>> shardStats) {
+        var totals = new HashMap<ViewKey, Long>();
+        shardStats.forEach(stats -> stats.forEach(
+                view -> totals.merge(new ViewKey(view.app(), view.uri()), view.hits(), Long::sum)));
+        var merged = new ArrayList<ViewStatsDto>(totals.size());
+        totals.forEach((key, hits) -> merged.add(new ViewStatsDto(key.app(), key.uri(), hits)));
+        merged.sort(Comparator.comparingLong(ViewStatsDto::hits).reversed()
+                .thenComparing(ViewStatsDto::app)
+                .thenComparing(ViewStatsDto::uri));
+        return merged;
     }
 
+    /**
+     * Дождаться ответа узла; ошибка узла передается вызывающему без обертки
+     */
+    private static <T> T join(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Узел сервиса статистики вместе со средствами отправки обращений на него
+     */
+    private static final class Shard {
+        private final String url;
+        private StatsHitDispatcher dispatcher;
+        private BinaryHitTransport binaryTransport;
+        private CircuitBreaker breaker;
+        private HitSpillFile spool;
+        private volatile long replayResumeNanos = System.nanoTime();
+
+        private Shard(String url) {
+            this.url = url;
+        }
+    }
+
+    private record ViewKey(String app, String uri) {
+    }
+
+    /**
+     * Вызов отклонен разомкнутым предохранителем узла
+     */
+    private static final class CircuitOpenException extends ResourceAccessException {
+        private CircuitOpenException(String url) {
+            super(CIRCUIT_OPEN + url);
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package ru.practicum.ewm.statsserver.client;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Асинхронная отправка обращений: вызывающий поток только ставит обращение в ограниченную очередь
+ * на capacity обращений, а senders потоков забирают из нее все накопившееся, но не больше batchSize,
+ * и отправляют одним пакетом. Признак уникальности передается в обработчик завершения, который выполняется
+ * в потоке отправки и должен быть коротким. Если места в очереди нет, поступает согласно {@link OverflowPolicy}.
+ * <p>
+ * Обработчик завершения получает false, если обращение отброшено, отложено в файл или его не удалось отправить.
+ * Пакеты, которые не удалось отправить, записываются в файл повторной отправки узла, если он есть, иначе
+ * отбрасываются. Отложенные обращения отправляет повторно владелец файла.
+ */
+@Slf4j
+class StatsHitDispatcher implements AutoCloseable {
+    private static final String THREAD_NAME = "stats-hit-sender-";
+    private static final String SEND_FAILED = "Ошибка клиента при отправке пакета статистики из {} записей: {}";
+    private static final String DROPPED = "Обращения не отправлены в сервис статистики и отброшены, всего: {}";
+    private static final String CALLBACK_FAILED = "Ошибка обработчика отправленного обращения: {}";
+    private static final String SPILL_FAILED = "Не удалось отложить {} обращений в файл: {}";
+    private static final long DROPPED_LOG_EVERY = 1_000L;
+    private static final long IDLE_POLL_MILLIS = 500L;
+    private final Function<List<HitDto>, List<Boolean>> sender;
+    private final BlockingQueue<PendingHit> queue;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+    private final HitSpillFile spool;
+    private final List<Thread> senders;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param sender отправка пакета; исключение означает, что пакет не отправлен
+     * @param spool файл повторной отправки узла для пакетов, которые не удалось отправить, и для обращений
+     *              сверх очереди при политике {@link OverflowPolicy#SPILL}; обязателен для нее
+     */
+    StatsHitDispatcher(Function<List<HitDto>, List<Boolean>> sender, int capacity, int senders, int batchSize,
+                       OverflowPolicy overflowPolicy, Duration blockTimeout, HitSpillFile spool) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spool == null) {
+            throw new IllegalArgumentException("Для политики SPILL нужен файл отложенных обращений");
+        }
+        this.sender = sender;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.spool = spool;
+        this.senders = new ArrayList<>(senders);
+        for (int i = 0; i < senders; i++) {
+            var thread = new Thread(this::sendLoop, THREAD_NAME + i);
+            thread.setDaemon(true);
+            this.senders.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Поставить обращение в очередь отправки
+     *
+     * @param hit обращение
+     * @param onComplete обработчик признака уникальности обращения
+     */
+    void dispatch(HitDto hit, Consumer<Boolean> onComplete) {
+        var pending = new PendingHit(hit, onComplete);
+        boolean isQueued;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                isQueued = queue.offer(pending, blockTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                isQueued = false;
+            }
+        } else {
+            isQueued = queue.offer(pending);
+        }
+        if (!isQueued) {
+            if (overflowPolicy == OverflowPolicy.SPILL) {
+                spool(List.of(pending));
+            } else {
+                drop(List.of(pending));
+            }
+        }
+    }
+
+    /**
+     * Прекратить прием, дождаться отправки уже поставленных в очередь обращений не дольше timeout.
+     * Неотправленные обращения записываются в файл повторной отправки, если он есть.
+     */
+    void close(Duration timeout) {
+        running = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (var thread : senders) {
+            try {
+                thread.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        var rest = new ArrayList<PendingHit>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            spool(rest);
+        }
+    }
+
+    @Override
+    public void close() {
+        close(Duration.ofSeconds(5));
+    }
+
+    private void sendLoop() {
+        var batch = new ArrayList<PendingHit>(batchSize);
+        while (running || !queue.isEmpty()) {
+            PendingHit first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    private void send(List<PendingHit> batch) {
+        List<Boolean> uniqueFlags;
+        try {
+            uniqueFlags = sender.apply(batch.stream().map(PendingHit::hit).toList());
+        } catch (RuntimeException exception) {
+            log.info(SEND_FAILED, batch.size(), exception.getMessage());
+            spool(batch);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), i < uniqueFlags.size() && Boolean.TRUE.equals(uniqueFlags.get(i)));
+        }
+    }
+
+    /**
+     * Отложить обращения в файл повторной отправки; без файла или при ошибке записи они отбрасываются
+     */
+    private void spool(List<PendingHit> hits) {
+        if (spool != null) {
+            try {
+                spool.append(hits.stream().map(PendingHit::hit).toList());
+                hits.forEach(hit -> complete(hit, false));
+                return;
+            } catch (IOException exception) {
+                log.warn(SPILL_FAILED, hits.size(), exception.getMessage());
+            }
+        }
+        drop(hits);
+    }
+
+    private void drop(List<PendingHit> hits) {
+        long total = dropped.addAndGet(hits.size());
+        if (total / DROPPED_LOG_EVERY != (total - hits.size()) / DROPPED_LOG_EVERY || total == hits.size()) {
+            log.warn(DROPPED, total);
+        }
+        hits.forEach(hit -> complete(hit, false));
+    }
+
+    private static void complete(PendingHit pending, boolean isUnique) {
+        try {
+            pending.onComplete().accept(isUnique);
+        } catch (RuntimeException exception) {
+            log.warn(CALLBACK_FAILED, exception.getMessage());
+        }
+    }
+
+    private record PendingHit(HitDto hit, Consumer<Boolean> onComplete) {
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.ewm.statsserver.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP-транспорт клиента статистики на {@link HttpClient} JDK. Клиент один на все узлы и держит
+ * keep-alive соединения с ними; с узлами, поддерживающими HTTP/2, запросы мультиплексируются в одном соединении.
+ * <p>
+ * Ограничения по времени: соединение устанавливается не дольше connectTimeout, ответ ожидается не дольше
+ * readTimeout, а одновременно выполняется не больше maxConcurrent запросов - запрос, не получивший разрешения
+ * за acquireTimeout, сразу завершается ошибкой. Так медленный узел не может занять все потоки ewm-service.
+ * Занятые и ожидающие разрешения запросы и отказы публикуются в {@link MeterRegistry} с тегом client=stats.
+ */
+final class StatsHttpTransport implements AutoCloseable {
+    private static final String METRIC_PREFIX = "stats.client.http.";
+    private static final String REJECTED = "Превышено число одновременных запросов к сервису статистики: ";
+    private final HttpClient httpClient;
+    private final RestClient restClient;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final Duration acquireTimeout;
+    private final Counter rejected;
+
+    StatsHttpTransport(boolean http2Enabled, Duration connectTimeout, Duration readTimeout, int maxConcurrent,
+                       Duration acquireTimeout, MeterRegistry meterRegistry) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(http2Enabled ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeout = acquireTimeout;
+        this.restClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .requestInterceptor((request, body, execution) -> {
+                    acquire();
+                    try {
+                        return new PermitReleasingResponse(execution.execute(request, body));
+                    } catch (IOException | RuntimeException exception) {
+                        permits.release();
+                        throw exception;
+                    }
+                })
+                .build();
+        this.rejected = Counter.builder(METRIC_PREFIX + "rejected")
+                .description("Запросы, не дождавшиеся разрешения на выполнение")
+                .tag("client", "stats")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "active", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .description("Выполняющиеся запросы")
+                .tag("client", "stats")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "pending", permits, Semaphore::getQueueLength)
+                .description("Запросы, ожидающие разрешения на выполнение")
+                .tag("client", "stats")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "max", () -> maxConcurrent)
+                .description("Предел одновременных запросов")
+                .tag("client", "stats")
+                .register(meterRegistry);
+    }
+
+    RestClient restClient() {
+        return restClient;
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    private void acquire() {
+        boolean isAcquired;
+        try {
+            isAcquired = permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            isAcquired = false;
+        }
+        if (!isAcquired) {
+            rejected.increment();
+            throw new ResourceAccessException(REJECTED + maxConcurrent);
+        }
+    }
+
+    /**
+     * Ответ, возвращающий разрешение при закрытии: RestClient закрывает ответ после чтения тела,
+     * поэтому разрешение занято, пока тело не прочитано
+     */
+    private final class PermitReleasingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitReleasingResponse(ClientHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        }
+    }
+}
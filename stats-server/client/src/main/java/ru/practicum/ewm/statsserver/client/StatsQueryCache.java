@@ -0,0 +1,227 @@
+package ru.practicum.ewm.statsserver.client;
+
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Кеш результатов запросов статистики на стороне клиента, ограниченный суммарным числом строк статистики
+ * maxRows (пустой результат считается за одну строку). При переполнении вытесняются давно не запрашивавшиеся
+ * результаты.
+ * <p>
+ * Результат за закрытый период, конец которого раньше текущего момента более чем на closedAfter, хранится
+ * до вытеснения. Обращения, отправленные этим клиентом с опозданием больше closedAfter, например повторно
+ * из файла отложенных обращений, удаляют из кеша результаты закрытых периодов, в которые они попадают;
+ * результат, запрошенный одновременно с такой отправкой, хранится как результат открытого периода. Обращения
+ * других клиентов кеш не видит, поэтому closedAfter должен быть не меньше наибольшей задержки записи обращений
+ * в сервис статистики. Результат за период, включающий текущий момент, хранится openWindowTtl,
+ * нулевое значение отключает кеширование таких запросов. Одинаковые запросы, выполняющиеся одновременно,
+ * объединяются: узлы опрашивает только первый, остальные получают его результат или его ошибку.
+ * Ошибки не кешируются.
+ */
+final class StatsQueryCache {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final long maxRows;
+    private final Duration openWindowTtl;
+    private final Duration closedAfter;
+    private final Clock clock;
+    private final LinkedHashMap<QueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<QueryKey, CompletableFuture<List<ViewStatsDto>>> inFlight = new ConcurrentHashMap<>();
+    private long rows;
+    private long lateWrites;
+
+    StatsQueryCache(long maxRows, Duration openWindowTtl, Duration closedAfter, Clock clock) {
+        this.maxRows = maxRows;
+        this.openWindowTtl = openWindowTtl;
+        this.closedAfter = closedAfter;
+        this.clock = clock;
+    }
+
+    /**
+     * Получить результат из кеша, дождаться такого же выполняющегося запроса или выполнить запрос
+     * и сохранить результат. Запрос с границами периода в неизвестном формате выполняется без кеша,
+     * чтобы ошибку вернул сервис статистики.
+     *
+     * @param loader запрос к узлам сервиса статистики
+     * @return неизменяемый список со статистикой
+     */
+    List<ViewStatsDto> get(String start, String end, List<String> uris, Boolean unique,
+                           Supplier<List<ViewStatsDto>> loader) {
+        QueryKey key;
+        try {
+            key = QueryKey.of(start, end, uris, unique);
+        } catch (DateTimeParseException exception) {
+            return loader.get();
+        }
+        var cached = cached(key);
+        if (cached != null) {
+            return cached;
+        }
+        var loading = new CompletableFuture<List<ViewStatsDto>>();
+        var running = inFlight.putIfAbsent(key, loading);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            long lateWritesBefore = lateWrites();
+            cached = cached(key);
+            var stats = cached != null ? cached : List.copyOf(loader.get());
+            if (cached == null) {
+                store(key, stats, lateWritesBefore);
+            }
+            loading.complete(stats);
+            return stats;
+        } catch (RuntimeException | Error exception) {
+            loading.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    /**
+     * Учесть отправленные обращения. Если среди них есть отправленные с опозданием больше closedAfter,
+     * из кеша удаляются результаты закрытых периодов, пересекающихся с периодом таких обращений.
+     * Обращения со временем в неизвестном формате пропускаются.
+     *
+     * @param hits обращения, принятые сервисом статистики
+     */
+    void written(List<HitDto> hits) {
+        Instant from = null;
+        Instant to = null;
+        for (var hit : hits) {
+            try {
+                var timestamp = QueryKey.parse(hit.timestamp());
+                if (timestamp != null) {
+                    from = from == null || timestamp.isBefore(from) ? timestamp : from;
+                    to = to == null || timestamp.isAfter(to) ? timestamp : to;
+                }
+            } catch (DateTimeParseException ignored) {
+                // такое обращение сервис статистики не примет
+            }
+        }
+        if (from != null && from.isBefore(clock.instant().minus(closedAfter))) {
+            invalidate(from, to);
+        }
+    }
+
+    private synchronized void invalidate(Instant from, Instant to) {
+        lateWrites++;
+        var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getValue().expiresAt() != null) {
+                continue;
+            }
+            var key = entry.getKey();
+            if ((key.start() == null || !key.start().isAfter(to)) && (key.end() == null || !key.end().isBefore(from))) {
+                rows -= weight(entry.getValue().stats());
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized long lateWrites() {
+        return lateWrites;
+    }
+
+    private synchronized List<ViewStatsDto> cached(QueryKey key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() == null || clock.instant().isBefore(entry.expiresAt())) {
+            return entry.stats();
+        }
+        remove(key);
+        return null;
+    }
+
+    private synchronized void store(QueryKey key, List<ViewStatsDto> stats, long lateWritesBefore) {
+        var now = clock.instant();
+        boolean isClosed = key.end() != null && key.end().isBefore(now.minus(closedAfter))
+                && lateWrites == lateWritesBefore;
+        if (weight(stats) <= maxRows && (isClosed || openWindowTtl.isPositive())) {
+            put(key, new Entry(stats, isClosed ? null : now.plus(openWindowTtl)));
+        }
+    }
+
+    private synchronized void put(QueryKey key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        rows += weight(entry.stats());
+        var iterator = entries.values().iterator();
+        while (rows > maxRows && iterator.hasNext()) {
+            rows -= weight(iterator.next().stats());
+            iterator.remove();
+        }
+    }
+
+    private void remove(QueryKey key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            rows -= weight(removed.stats());
+        }
+    }
+
+    private static List<ViewStatsDto> await(CompletableFuture<List<ViewStatsDto>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    private static long weight(List<ViewStatsDto> stats) {
+        return stats.size() + 1L;
+    }
+
+    /**
+     * Нормализованные параметры запроса: одинаковые по смыслу запросы получают равные ключи
+     *
+     * @param start начало периода, null - с начала времен
+     * @param end конец периода, null - период до текущего момента
+     * @param uris отсортированный список различных эндпоинтов, пустой - статистика по всем эндпоинтам
+     * @param unique подсчет только уникальных IP
+     */
+    private record QueryKey(Instant start, Instant end, List<String> uris, boolean unique) {
+        private static QueryKey of(String start, String end, List<String> uris, Boolean unique) {
+            return new QueryKey(
+                    parse(start),
+                    parse(end),
+                    uris == null ? List.of() : uris.stream().distinct().sorted().toList(),
+                    Boolean.TRUE.equals(unique));
+        }
+
+        private static Instant parse(String dateTime) {
+            return dateTime == null ? null
+                    : LocalDateTime.parse(dateTime, DATE_TIME_FORMATTER).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    /**
+     * Результат запроса в кеше
+     *
+     * @param stats статистика
+     * @param expiresAt момент устаревания, null - результат за закрытый период не устаревает
+     */
+    private record Entry(List<ViewStatsDto> stats, Instant expiresAt) {
+    }
+}
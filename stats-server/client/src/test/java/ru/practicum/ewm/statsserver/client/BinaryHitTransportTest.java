@@ -0,0 +1,129 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.binary.HitFrame;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+
+@DisplayName("Модульное тестирование отправки статистики по двоичному протоколу")
+class BinaryHitTransportTest {
+    private static final String TIMESTAMP = "2024-01-01 00:00:00";
+    private final List<HitFrame> received = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private BinaryHitTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        var acceptor = new Thread(this::accept);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        transport = new BinaryHitTransport("localhost", serverSocket.getLocalPort(), Duration.ofSeconds(1),
+                Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        transport.close();
+        serverSocket.close();
+    }
+
+    @Test
+    @DisplayName("Словарь передается один раз на соединение, подтверждения завершают обращения")
+    void hitsAcknowledgedTest() {
+        var first = transport.send(hit("/events/1"));
+        var second = transport.send(hit("/events/1"));
+
+        assertThat(first.join(), equalTo(true));
+        assertThat(second.join(), equalTo(false));
+        assertThat(received.stream().map(frame -> frame.getClass().getSimpleName()).toList(),
+                contains("Dict", "Dict", "Hit", "Hit"));
+    }
+
+    @Test
+    @DisplayName("Ошибка подключения завершает обращения признаком false, не задерживая вызывающий поток")
+    void connectFailedTest() throws IOException {
+        serverSocket.close();
+
+        var result = transport.send(hit("/events/1"));
+
+        assertThat(result.orTimeout(5, TimeUnit.SECONDS).join(), equalTo(false));
+    }
+
+    @Test
+    @DisplayName("При заполнении словаря обращения передаются через новое соединение")
+    void dictOverflowOpensNewConnectionTest() {
+        var results = new ArrayList<CompletableFuture<Boolean>>();
+        for (int i = 0; i <= BinaryHitTransport.MAX_DICT_ENTRIES; i++) {
+            results.add(transport.send(hit("/events/" + i)));
+        }
+
+        assertThat(results.stream().map(CompletableFuture::join).toList(), everyItem(equalTo(true)));
+        assertThat(connections.get(), equalTo(2));
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                var socket = serverSocket.accept();
+                connections.incrementAndGet();
+                var reader = new Thread(() -> serve(socket));
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException ignored) {
+            // сервер остановлен
+        }
+    }
+
+    /**
+     * Подтверждать обращения соединения: первое обращение к эндпоинту уникально, повторные - нет
+     */
+    private void serve(Socket socket) {
+        var seen = new HashSet<Integer>();
+        try (socket) {
+            var input = new DataInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            while (true) {
+                var payload = new byte[input.readInt()];
+                input.readFully(payload);
+                var frame = HitFrame.decode(ByteBuffer.wrap(payload));
+                received.add(frame);
+                if (frame instanceof HitFrame.Hit hit) {
+                    byte status = seen.add(hit.uriId()) ? HitFrame.Ack.UNIQUE : HitFrame.Ack.NOT_UNIQUE;
+                    output.write(new HitFrame.Ack(hit.seq(), status).encode());
+                    output.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // соединение закрыто
+        }
+    }
+
+    private static HitDto hit(String uri) {
+        return new HitDto("ewm-main-service", uri, "10.0.0.1", TIMESTAMP);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@DisplayName("Модульное тестирование предохранителя вызовов узла")
+class CircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(10);
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final CircuitBreaker breaker = new CircuitBreaker("http://localhost:9090", 3, OPEN_DURATION, clock);
+
+    @Test
+    @DisplayName("Предохранитель размыкается только после failure-threshold ошибок подряд")
+    void opensAfterThresholdTest() {
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire(), equalTo(true));
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire(), equalTo(true));
+
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire(), equalTo(false));
+        assertThat(breaker.isCallPermitted(), equalTo(false));
+    }
+
+    @Test
+    @DisplayName("После open-duration пропускается один пробный вызов, его успех замыкает предохранитель")
+    void halfOpenSuccessTest() {
+        open();
+        clock.advance(OPEN_DURATION);
+
+        assertThat(breaker.isCallPermitted(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(false));
+        assertThat(breaker.isCallPermitted(), equalTo(false));
+        breaker.onSuccess();
+
+        assertThat(breaker.tryAcquire(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+    }
+
+    @Test
+    @DisplayName("Ошибка пробного вызова снова размыкает предохранитель на open-duration")
+    void halfOpenFailureTest() {
+        open();
+        clock.advance(OPEN_DURATION);
+        assertThat(breaker.tryAcquire(), equalTo(true));
+
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire(), equalTo(false));
+        clock.advance(OPEN_DURATION.minusMillis(1));
+        assertThat(breaker.tryAcquire(), equalTo(false));
+        clock.advance(Duration.ofMillis(1));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+    }
+
+    @Test
+    @DisplayName("Проверка разрешения вызова не переводит предохранитель в полуоткрытое состояние")
+    void isCallPermittedKeepsStateTest() {
+        open();
+        clock.advance(OPEN_DURATION);
+
+        assertThat(breaker.isCallPermitted(), equalTo(true));
+        assertThat(breaker.isCallPermitted(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование кольца согласованного хеширования")
+class ConsistentHashRingTest {
+    private static final int KEYS = 30_000;
+    private static final List<String> NODES = List.of("http://stats-1:9090", "http://stats-2:9090",
+            "http://stats-3:9090");
+    private static final List<String> URIS = IntStream.range(0, KEYS).mapToObj(i -> "/events/" + i).toList();
+
+    @Test
+    @DisplayName("Узел ключа определяется только именами узлов и одинаков на разных экземплярах кольца")
+    void deterministicTest() {
+        var ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        var other = new ConsistentHashRing<>(NODES, NODES, 128);
+
+        for (var key : URIS) {
+            assertThat(other.node(key), equalTo(ring.node(key)));
+        }
+    }
+
+    @Test
+    @DisplayName("Ключи распределяются между узлами примерно поровну")
+    void distributionTest() {
+        var ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        var counts = new HashMap<String, Integer>();
+
+        URIS.forEach(key -> counts.merge(ring.node(key), 1, Integer::sum));
+
+        assertThat(counts.size(), equalTo(NODES.size()));
+        for (var count : counts.values()) {
+            assertThat(count, greaterThan(KEYS / 4));
+            assertThat(count, lessThan(KEYS * 5 / 12));
+        }
+    }
+
+    @Test
+    @DisplayName("При добавлении узла на него переходит около 1/N ключей, остальные остаются на своих узлах")
+    void addNodeTest() {
+        var ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        var grown = List.of("http://stats-1:9090", "http://stats-2:9090", "http://stats-3:9090",
+                "http://stats-4:9090");
+        var grownRing = new ConsistentHashRing<>(grown, grown, 128);
+        int moved = 0;
+
+        for (var key : URIS) {
+            var node = grownRing.node(key);
+            if (!node.equals(ring.node(key))) {
+                assertThat(node, equalTo("http://stats-4:9090"));
+                moved++;
+            }
+        }
+
+        assertThat(moved, greaterThan(KEYS / 6));
+        assertThat(moved, lessThan(KEYS / 3));
+    }
+
+    @Test
+    @DisplayName("Кольцу нужен хотя бы один узел, имя для каждого узла и хотя бы одна точка на узел")
+    void invalidArgumentsTest() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<>(List.of(), List.of(), 128));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<>(NODES, NODES.subList(0, 2), 128));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<>(NODES, NODES, 0));
+    }
+}
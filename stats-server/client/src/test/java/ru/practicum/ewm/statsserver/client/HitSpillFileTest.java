@@ -0,0 +1,93 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование файла повторной отправки обращений")
+class HitSpillFileTest {
+    private static final String TIMESTAMP = "2024-01-01 00:00:00";
+    @TempDir
+    private Path dir;
+
+    @Test
+    @DisplayName("Обращения отправляются пакетами в порядке записи, отправленный сегмент удаляется")
+    void replayTest() throws IOException {
+        var spool = new HitSpillFile(dir, 1024 * 1024, 1024 * 1024);
+        spool.append(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3")));
+        var batches = new ArrayList<List<String>>();
+
+        var isReplayed = spool.replay(2, batch -> batches.add(batch.stream().map(HitDto::uri).toList()));
+
+        assertThat(isReplayed, equalTo(true));
+        assertThat(batches, contains(List.of("/events/1", "/events/2"), List.of("/events/3")));
+        assertThat(spool.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    @DisplayName("При ошибке отправки в файле остаются только неотправленные обращения")
+    void replayFailedTest() throws IOException {
+        var spool = new HitSpillFile(dir, 1024 * 1024, 1024 * 1024);
+        spool.append(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3")));
+        var sent = new ArrayList<String>();
+
+        var isReplayed = spool.replay(1, batch -> {
+            if (!sent.isEmpty()) {
+                throw new IllegalStateException("Узел недоступен");
+            }
+            sent.add(batch.get(0).uri());
+        });
+
+        assertThat(isReplayed, equalTo(false));
+        assertThat(sent, contains("/events/1"));
+        assertThat(replayed(spool), contains("/events/2", "/events/3"));
+    }
+
+    @Test
+    @DisplayName("Обращения, не помещающиеся в max-size, не записываются; место освобождается после отправки")
+    void maxSizeTest() throws IOException {
+        var spool = new HitSpillFile(dir, 1024 * 1024, 150);
+        spool.append(List.of(hit("/events/1")));
+
+        assertThrows(IOException.class, () -> spool.append(List.of(hit("/events/2"), hit("/events/3"))));
+        assertThat(replayed(spool), contains("/events/1"));
+        spool.append(List.of(hit("/events/2")));
+        assertThat(replayed(spool), contains("/events/2"));
+    }
+
+    @Test
+    @DisplayName("Сегменты, оставшиеся после перезапуска, отправляются и учитываются в max-size")
+    void restartTest() throws IOException {
+        var spool = new HitSpillFile(dir, 1024 * 1024, 150);
+        spool.append(List.of(hit("/events/1")));
+        spool.close();
+
+        var restarted = new HitSpillFile(dir, 1024 * 1024, 150);
+
+        assertThrows(IOException.class, () -> restarted.append(List.of(hit("/events/2"))));
+        assertThat(replayed(restarted), contains("/events/1"));
+    }
+
+    private static List<String> replayed(HitSpillFile spool) {
+        var uris = new ArrayList<String>();
+        while (!spool.isEmpty()) {
+            spool.replay(100, batch -> batch.forEach(hit -> uris.add(hit.uri())));
+        }
+        return uris;
+    }
+
+    private static HitDto hit(String uri) {
+        return new HitDto("ewm-main-service", uri, "10.0.0.1", TIMESTAMP);
+    }
+}
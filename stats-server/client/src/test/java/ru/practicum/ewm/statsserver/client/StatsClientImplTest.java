@@ -0,0 +1,168 @@
+package ru.practicum.ewm.statsserver.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.HttpServerErrorException;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Клиент с двумя узлами сервиса статистики, запущенными в тесте: первый узел отвечает, что все обращения
+ * уникальны, второй - что нет, поэтому по признакам видно, какой узел принял обращение
+ */
+@SpringBootTest(classes = StatsClientImpl.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"stats-server.http.http2-enabled=false", "stats-server.circuit-breaker.enabled=false",
+                "stats-server.query-cache.enabled=false"})
+@DisplayName("Модульное тестирование распределения запросов клиента статистики по узлам")
+class StatsClientImplTest {
+    private static final String TIMESTAMP = "2024-01-01 00:00:00";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final FakeNode FIRST = new FakeNode(true);
+    private static final FakeNode SECOND = new FakeNode(false);
+    @Autowired
+    private StatsClientImpl statsClient;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("stats-server.url", () -> FIRST.url() + "," + SECOND.url());
+    }
+
+    @AfterEach
+    void tearDown() {
+        FIRST.reset();
+        SECOND.reset();
+    }
+
+    @AfterAll
+    static void stop() {
+        FIRST.server.stop(0);
+        SECOND.server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Статистика узлов складывается по эндпоинтам и сортируется по убыванию количества обращений")
+    void getStatsMergeTest() {
+        FIRST.stats = List.of(new ViewStatsDto("ewm-main-service", "/events/1", 5L),
+                new ViewStatsDto("ewm-main-service", "/events/2", 1L));
+        SECOND.stats = List.of(new ViewStatsDto("ewm-main-service", "/events/3", 7L),
+                new ViewStatsDto("ewm-main-service", "/events/2", 2L));
+
+        var stats = statsClient.getStats(TIMESTAMP, "2024-01-02 00:00:00", null, false);
+
+        assertThat(stats, contains(new ViewStatsDto("ewm-main-service", "/events/3", 7L),
+                new ViewStatsDto("ewm-main-service", "/events/1", 5L),
+                new ViewStatsDto("ewm-main-service", "/events/2", 3L)));
+    }
+
+    @Test
+    @DisplayName("Ошибка одного из узлов прерывает запрос статистики")
+    void getStatsNodeFailedTest() {
+        FIRST.stats = List.of(new ViewStatsDto("ewm-main-service", "/events/1", 5L));
+        SECOND.failed = true;
+
+        assertThrows(HttpServerErrorException.class,
+                () -> statsClient.getStats(TIMESTAMP, "2024-01-02 00:00:00", null, false));
+    }
+
+    @Test
+    @DisplayName("Пакет обращений делится по узлам, признаки уникальности возвращаются в порядке обращений")
+    void hitsScatterTest() {
+        var hits = IntStream.range(0, 40)
+                .mapToObj(i -> new HitDto("ewm-main-service", "/events/" + i % 20, "10.0.0." + i, TIMESTAMP))
+                .toList();
+
+        var uniqueFlags = statsClient.hits(hits);
+
+        assertThat(FIRST.uris(), not(empty()));
+        assertThat(SECOND.uris(), not(empty()));
+        assertThat(FIRST.uris().size() + SECOND.uris().size(), equalTo(hits.size()));
+        for (int i = 0; i < hits.size(); i++) {
+            var uri = hits.get(i).uri();
+            assertThat(FIRST.uris().contains(uri), equalTo(!SECOND.uris().contains(uri)));
+            assertThat(uniqueFlags.get(i), equalTo(FIRST.uris().contains(uri)));
+        }
+    }
+
+    /**
+     * Узел сервиса статистики: отдает заданную статистику и на каждое обращение отвечает признаком isUnique
+     */
+    private static final class FakeNode {
+        private final HttpServer server;
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        private volatile List<ViewStatsDto> stats = List.of();
+        private volatile boolean failed;
+
+        private FakeNode(boolean isUnique) {
+            try {
+                server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            server.createContext("/stats", exchange -> {
+                if (failed) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+                respond(exchange, stats);
+            });
+            server.createContext("/hits", exchange -> {
+                List<HitDto> hits = MAPPER.readValue(exchange.getRequestBody(), new TypeReference<List<HitDto>>() {
+                });
+                hits.forEach(hit -> received.add(hit.uri()));
+                respond(exchange, Collections.nCopies(hits.size(), isUnique));
+            });
+            server.start();
+        }
+
+        private String url() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        private List<String> uris() {
+            synchronized (received) {
+                return List.copyOf(received);
+            }
+        }
+
+        private void reset() {
+            received.clear();
+            stats = List.of();
+            failed = false;
+        }
+
+        private static void respond(HttpExchange exchange, Object body) throws IOException {
+            var bytes = MAPPER.writeValueAsBytes(body);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (var output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+    }
+}
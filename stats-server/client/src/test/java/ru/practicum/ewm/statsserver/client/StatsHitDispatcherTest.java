@@ -0,0 +1,209 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование фоновой отправки обращений")
+class StatsHitDispatcherTest {
+    private static final String TIMESTAMP = "2024-01-01 00:00:00";
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final List<HitDto> sent = Collections.synchronizedList(new ArrayList<>());
+    @TempDir
+    private Path spoolDir;
+    private HitSpillFile spool;
+    private StatsHitDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    @DisplayName("При политике DROP обращение, для которого нет места в очереди, сразу завершается признаком false")
+    void dropOverflowTest() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.DROP, Duration.ZERO, null);
+        var first = dispatch("/events/1");
+        started.await();
+        var second = dispatch("/events/2");
+        var dropped = dispatch("/events/3");
+
+        assertThat(dropped.getNow(true), equalTo(false));
+        release.countDown();
+        assertThat(join(first), equalTo(true));
+        assertThat(join(second), equalTo(true));
+        assertThat(uris(), contains("/events/1", "/events/2"));
+    }
+
+    @Test
+    @DisplayName("При политике BLOCK обращение ждет места в очереди и отправляется")
+    void blockWaitsForSpaceTest() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, Duration.ofSeconds(5), null);
+        dispatch("/events/1");
+        started.await();
+        dispatch("/events/2");
+        var releaser = new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        });
+        releaser.start();
+
+        var blocked = dispatch("/events/3");
+
+        assertThat(join(blocked), equalTo(true));
+        assertThat(uris(), contains("/events/1", "/events/2", "/events/3"));
+    }
+
+    @Test
+    @DisplayName("При политике BLOCK обращение отбрасывается, если место в очереди не освободилось за block-timeout")
+    void blockTimeoutTest() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, Duration.ofMillis(50), null);
+        dispatch("/events/1");
+        started.await();
+        dispatch("/events/2");
+
+        var dropped = dispatch("/events/3");
+
+        assertThat(dropped.getNow(true), equalTo(false));
+    }
+
+    @Test
+    @DisplayName("При политике SPILL обращение, для которого нет места в очереди, откладывается в файл")
+    void spillOverflowTest() throws IOException, InterruptedException {
+        spool = new HitSpillFile(spoolDir, 1024, 1024 * 1024);
+        dispatcher = dispatcher(OverflowPolicy.SPILL, Duration.ZERO, spool);
+        dispatch("/events/1");
+        started.await();
+        dispatch("/events/2");
+        var spilled = dispatch("/events/3");
+
+        assertThat(spilled.getNow(true), equalTo(false));
+        assertThat(spooled(), contains("/events/3"));
+    }
+
+    @Test
+    @DisplayName("Политика SPILL требует файл повторной отправки")
+    void spillWithoutSpoolTest() {
+        assertThrows(IllegalArgumentException.class, () -> dispatcher(OverflowPolicy.SPILL, Duration.ZERO, null));
+    }
+
+    @Test
+    @DisplayName("Пакет, который не удалось отправить, отбрасывается при политике DROP")
+    void failedSendDroppedTest() {
+        failures.set(1);
+        release.countDown();
+        dispatcher = dispatcher(OverflowPolicy.DROP, Duration.ZERO, null);
+
+        var failed = dispatch("/events/1");
+
+        assertThat(join(failed), equalTo(false));
+        assertThat(uris(), contains("/events/1"));
+    }
+
+    @Test
+    @DisplayName("Пакет, который не удалось отправить, откладывается в файл повторной отправки при любой политике")
+    void failedSendSpooledTest() throws IOException {
+        failures.set(1);
+        release.countDown();
+        spool = new HitSpillFile(spoolDir, 1024, 1024 * 1024);
+        dispatcher = dispatcher(OverflowPolicy.DROP, Duration.ZERO, spool);
+
+        var failed = dispatch("/events/1");
+
+        assertThat(join(failed), equalTo(false));
+        assertThat(spooled(), contains("/events/1"));
+    }
+
+    @Test
+    @DisplayName("При остановке обращения, оставшиеся в очереди, откладываются в файл повторной отправки")
+    void closeSpoolsQueuedTest() throws IOException, InterruptedException {
+        spool = new HitSpillFile(spoolDir, 1024, 1024 * 1024);
+        dispatcher = dispatcher(OverflowPolicy.DROP, Duration.ZERO, spool);
+        dispatch("/events/1");
+        started.await();
+        var queued = dispatch("/events/2");
+
+        dispatcher.close(Duration.ofMillis(50));
+
+        assertThat(queued.getNow(true), equalTo(false));
+        assertThat(spooled(), contains("/events/2"));
+    }
+
+    /**
+     * Очередь на одно обращение с одним потоком отправки: первое обращение забирается потоком, который ждет
+     * release, второе занимает очередь, третье в нее не помещается
+     */
+    private StatsHitDispatcher dispatcher(OverflowPolicy policy, Duration blockTimeout, HitSpillFile spool) {
+        return new StatsHitDispatcher(this::send, 1, 1, 1, policy, blockTimeout, spool);
+    }
+
+    /**
+     * Обращения, отложенные в файл повторной отправки
+     */
+    private List<String> spooled() {
+        var hits = new ArrayList<HitDto>();
+        spool.replay(100, hits::addAll);
+        return hits.stream().map(HitDto::uri).toList();
+    }
+
+    private List<Boolean> send(List<HitDto> hits) {
+        sent.addAll(hits);
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (failures.getAndDecrement() > 0) {
+            throw new IllegalStateException("Узел недоступен");
+        }
+        return Collections.nCopies(hits.size(), true);
+    }
+
+    private CompletableFuture<Boolean> dispatch(String uri) {
+        var result = new CompletableFuture<Boolean>();
+        dispatcher.dispatch(new HitDto("ewm-main-service", uri, "10.0.0.1", TIMESTAMP), result::complete);
+        return result;
+    }
+
+    private List<String> uris() {
+        synchronized (sent) {
+            return sent.stream().map(HitDto::uri).toList();
+        }
+    }
+
+    private static Boolean join(CompletableFuture<Boolean> result) {
+        return result.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
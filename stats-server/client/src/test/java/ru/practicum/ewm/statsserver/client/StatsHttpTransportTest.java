@@ -0,0 +1,105 @@
+package ru.practicum.ewm.statsserver.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование ограничения одновременных запросов HTTP-транспорта")
+class StatsHttpTransportTest {
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private StatsHttpTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/slow", exchange -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200);
+        });
+        server.createContext("/fast", exchange -> respond(exchange, 200));
+        server.createContext("/missing", exchange -> respond(exchange, 404));
+        server.start();
+        transport = new StatsHttpTransport(false, Duration.ofSeconds(1), Duration.ofSeconds(5), 1,
+                Duration.ofMillis(100), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        transport.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Запрос сверх max-concurrent-requests, не дождавшийся разрешения за acquire-timeout, отклоняется")
+    void rejectedOverLimitTest() throws InterruptedException {
+        var slow = CompletableFuture.supplyAsync(() -> get("/slow"));
+        assertThat(entered.await(5, TimeUnit.SECONDS), equalTo(true));
+
+        assertThrows(ResourceAccessException.class, () -> get("/fast"));
+        assertThat(meterRegistry.get("stats.client.http.rejected").counter().count(), equalTo(1.0));
+        assertThat(meterRegistry.get("stats.client.http.active").gauge().value(), equalTo(1.0));
+
+        release.countDown();
+        assertThat(slow.orTimeout(5, TimeUnit.SECONDS).join(), equalTo("true"));
+        assertThat(get("/fast"), equalTo("true"));
+        assertThat(meterRegistry.get("stats.client.http.active").gauge().value(), equalTo(0.0));
+    }
+
+    @Test
+    @DisplayName("Разрешение возвращается и после ответа с ошибкой")
+    void permitReleasedOnErrorTest() {
+        assertThrows(HttpClientErrorException.class, () -> get("/missing"));
+
+        assertThat(get("/fast"), equalTo("true"));
+        assertThat(meterRegistry.get("stats.client.http.active").gauge().value(), equalTo(0.0));
+        assertThat(meterRegistry.get("stats.client.http.rejected").counter().count(), equalTo(0.0));
+    }
+
+    private String get(String path) {
+        return transport.restClient().get()
+                .uri("http://localhost:" + server.getAddress().getPort() + path)
+                .retrieve()
+                .body(String.class);
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        var bytes = "true".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.practicum.ewm.statsserver.client;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование кеша запросов статистики клиента")
+class StatsQueryCacheTest {
+    private static final String START = "2024-01-01 00:00:00";
+    private static final String END = "2024-01-02 00:00:00";
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-03T00:00:00Z"));
+    private final StatsQueryCache cache = new StatsQueryCache(100, Duration.ofSeconds(5), Duration.ofMinutes(1), clock);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("Результат за закрытый период не устаревает, одинаковые по смыслу запросы используют его")
+    void closedWindowIsCachedTest() {
+        cache.get(START, END, List.of("/b", "/a"), null, loader());
+        clock.advance(Duration.ofDays(1));
+        cache.get(START, END, List.of("/a", "/b", "/a"), false, loader());
+
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    @DisplayName("Результат за открытый период хранится open-window-ttl")
+    void openWindowExpiresTest() {
+        var end = "2024-01-03 00:00:30";
+        cache.get(START, end, null, true, loader());
+        clock.advance(Duration.ofSeconds(4));
+        cache.get(START, end, null, true, loader());
+        assertThat(loads.get(), equalTo(1));
+
+        clock.advance(Duration.ofSeconds(2));
+        cache.get(START, end, null, true, loader());
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    @DisplayName("Отправка обращений с опозданием удаляет результаты закрытых периодов, в которые они попадают")
+    void lateWriteInvalidatesClosedWindowTest() {
+        cache.get(START, END, null, null, loader());
+        cache.get("2024-01-02 00:00:01", "2024-01-02 12:00:00", null, null, loader());
+
+        cache.written(List.of(new HitDto("app", "/a", "10.0.0.1", "2024-01-01 10:00:00")));
+        cache.get(START, END, null, null, loader());
+        cache.get("2024-01-02 00:00:01", "2024-01-02 12:00:00", null, null, loader());
+
+        assertThat(loads.get(), equalTo(3));
+    }
+
+    @Test
+    @DisplayName("Отправка обращений с опозданием не ломается о результат без конца периода и не удаляет его")
+    void lateWriteKeepsOpenEndedWindowTest() {
+        cache.get(null, null, null, null, loader());
+
+        cache.written(List.of(new HitDto("app", "/a", "10.0.0.1", "2024-01-01 10:00:00")));
+        cache.get(null, null, null, null, loader());
+
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    @DisplayName("Ошибка запроса не кешируется, запрос с неизвестным форматом даты выполняется без кеша")
+    void errorsAreNotCachedTest() {
+        assertThrows(IllegalStateException.class, () -> cache.get(START, END, null, null, () -> {
+            throw new IllegalStateException("узел недоступен");
+        }));
+        cache.get(START, END, null, null, loader());
+        cache.get("2024-01-01", END, null, null, loader());
+        cache.get("2024-01-01", END, null, null, loader());
+
+        assertThat(loads.get(), equalTo(3));
+    }
+
+    private Supplier<List<ViewStatsDto>> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return List.of(new ViewStatsDto("app", "/a", 1L));
+        };
+    }
+}
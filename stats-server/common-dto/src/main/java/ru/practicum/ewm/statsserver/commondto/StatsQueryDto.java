@@ -0,0 +1,20 @@
+package ru.practicum.ewm.statsserver.commondto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * DTO одного запроса статистики в пакете запросов POST /stats/batch. Параметры совпадают с параметрами GET /stats
+ *
+ * @param start начало периода статистики (включительно), null вместе с end - за все время
+ * @param end конец периода статистики (включительно)
+ * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+ * @param unique true - подсчитывать только запросы с уникальных IP (оценка), false или null - все запросы
+ */
+public record StatsQueryDto(
+        String start,
+        String end,
+        List<String> uris,
+        Boolean unique
+) implements Serializable {
+}
@@ -0,0 +1,25 @@
+package ru.practicum.ewm.statsserver.commondto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.io.Serializable;
+
+/**
+ * DTO одной точки временного ряда статистики GET /stats/timeseries: поля {@link ViewStatsDto}
+ * за одну корзину времени
+ *
+ * @param app компонент, обработавший запрос
+ * @param uri на какой эндпоинт был запрос
+ * @param bucket начало корзины в UTC в формате yyyy-MM-dd HH:mm:ss
+ * @param hits количество запросов за корзину
+ * @param uniqueHits оценка количества уникальных IP за корзину, null - не запрашивалась
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TimeSeriesPointDto(
+        String app,
+        String uri,
+        String bucket,
+        Long hits,
+        Long uniqueHits
+) implements Serializable {
+}
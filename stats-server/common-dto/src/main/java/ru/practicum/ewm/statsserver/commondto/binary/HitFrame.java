@@ -0,0 +1,128 @@
+package ru.practicum.ewm.statsserver.commondto.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Кадры двоичного протокола приема обращений по постоянному TCP-соединению. Кадр - длина (int) и данные,
+ * первый байт данных - тип кадра. Все числа передаются в порядке big-endian.
+ * <ul>
+ *     <li>{@link Dict} (клиент - сервер): назначение компоненту или эндпоинту идентификатора, действующего
+ *     до конца соединения;</li>
+ *     <li>{@link Hit} (клиент - сервер): обращение с идентификаторами компонента и эндпоинта, IP-адресом
+ *     в представлении {@link PackedIp} и временем в миллисекундах от начала эпохи;</li>
+ *     <li>{@link Ack} (сервер - клиент): результат приема обращения с тем же порядковым номером.</li>
+ * </ul>
+ * Подтверждения приходят асинхронно, в порядке следования обращений.
+ */
+public sealed interface HitFrame {
+    int LENGTH_BYTES = Integer.BYTES;
+    int MAX_FRAME_BYTES = 128 * 1024;
+    byte DICT = 1;
+    byte HIT = 2;
+    byte ACK = 3;
+
+    /**
+     * Кадр вместе с длиной
+     *
+     * @return байты для отправки
+     */
+    byte[] encode();
+
+    /**
+     * Разобрать данные кадра без длины
+     *
+     * @param payload данные кадра
+     * @return кадр
+     */
+    static HitFrame decode(ByteBuffer payload) {
+        byte type = payload.get();
+        return switch (type) {
+            case DICT -> {
+                byte kind = payload.get();
+                int id = payload.getInt();
+                var name = new byte[Short.toUnsignedInt(payload.getShort())];
+                payload.get(name);
+                yield new Dict(kind, id, new String(name, StandardCharsets.UTF_8));
+            }
+            case HIT -> {
+                long seq = payload.getLong();
+                int appId = payload.getInt();
+                int uriId = payload.getInt();
+                var ip = new byte[Byte.toUnsignedInt(payload.get())];
+                payload.get(ip);
+                yield new Hit(seq, appId, uriId, ip, payload.getLong());
+            }
+            case ACK -> new Ack(payload.getLong(), payload.get());
+            default -> throw new IllegalArgumentException("Неизвестный тип кадра " + type);
+        };
+    }
+
+    /**
+     * Идентификатор компонента или эндпоинта
+     *
+     * @param kind {@link #APP} или {@link #URI}
+     * @param id идентификатор, назначенный клиентом
+     * @param name название компонента или эндпоинт
+     */
+    record Dict(byte kind, int id, String name) implements HitFrame {
+        public static final byte APP = 1;
+        public static final byte URI = 2;
+
+        @Override
+        public byte[] encode() {
+            var bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Слишком длинное значение для словаря: " + name);
+            }
+            return frame(Byte.BYTES * 2 + Integer.BYTES + Short.BYTES + bytes.length)
+                    .put(DICT).put(kind).putInt(id).putShort((short) bytes.length).put(bytes)
+                    .array();
+        }
+    }
+
+    /**
+     * Обращение к эндпоинту
+     *
+     * @param seq порядковый номер обращения в соединении
+     * @param appId идентификатор компонента
+     * @param uriId идентификатор эндпоинта
+     * @param ip IP-адрес в представлении {@link PackedIp}
+     * @param epochMilli время обращения в миллисекундах от начала эпохи
+     */
+    record Hit(long seq, int appId, int uriId, byte[] ip, long epochMilli) implements HitFrame {
+
+        @Override
+        public byte[] encode() {
+            if (ip.length > 0xFF) {
+                throw new IllegalArgumentException("Слишком длинный IP-адрес");
+            }
+            return frame(Byte.BYTES * 2 + Long.BYTES * 2 + Integer.BYTES * 2 + ip.length)
+                    .put(HIT).putLong(seq).putInt(appId).putInt(uriId)
+                    .put((byte) ip.length).put(ip).putLong(epochMilli)
+                    .array();
+        }
+    }
+
+    /**
+     * Подтверждение приема обращения
+     *
+     * @param seq порядковый номер обращения
+     * @param status {@link #NOT_UNIQUE}, {@link #UNIQUE}, {@link #REJECTED} или {@link #FAILED}
+     */
+    record Ack(long seq, byte status) implements HitFrame {
+        public static final byte NOT_UNIQUE = 0;
+        public static final byte UNIQUE = 1;
+        public static final byte REJECTED = 2;
+        public static final byte FAILED = 3;
+
+        @Override
+        public byte[] encode() {
+            return frame(Byte.BYTES * 2 + Long.BYTES).put(ACK).putLong(seq).put(status).array();
+        }
+    }
+
+    private static ByteBuffer frame(int length) {
+        return ByteBuffer.allocate(LENGTH_BYTES + length).putInt(length);
+    }
+}
@@ -0,0 +1,202 @@
+package ru.practicum.ewm.statsserver.commondto.binary;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Компактное двоичное представление IP-адреса: 4 байта для IPv4, 16 байт для IPv6. Строка, не являющаяся
+ * IP-адресом, хранится без изменений как нулевой байт и текст в UTF-8; если длина при этом совпала бы
+ * с длиной адреса, добавляется байт 0xFF, не встречающийся в UTF-8. Одинаковые адреса в разной записи,
+ * например IPv6 с сокращением нулей, дают одно представление. Для сравнения без учета регистра, как
+ * при определении уникальности обращений, представление приводится {@link #foldCase(byte[])}.
+ */
+public final class PackedIp {
+    private static final int IPV4_BYTES = 4;
+    private static final int IPV6_BYTES = 16;
+    private static final int IPV4_MAPPED_PREFIX = 10;
+    private static final byte TEXT_MARKER = 0;
+    private static final byte TEXT_PADDING = (byte) 0xFF;
+
+    private PackedIp() {
+    }
+
+    /**
+     * Упаковать IP-адрес. Разбор выполняется без обращения к DNS: IPv6 распознается только в виде литерала
+     * из шестнадцатеричных групп с не более чем одним сокращением {@code ::}, остальное, например
+     * {@code host:8080}, хранится как текст. IPv4, отображенный в IPv6, упаковывается как IPv4.
+     *
+     * @param ip IP-адрес в текстовом виде
+     * @return двоичное представление
+     */
+    public static byte[] pack(String ip) {
+        var ipv4 = parseIpv4(ip);
+        if (ipv4 != null) {
+            return ipv4;
+        }
+        var ipv6 = parseIpv6(ip);
+        return ipv6 != null ? ipv6 : packText(ip);
+    }
+
+    /**
+     * Привести представление к виду, не зависящему от регистра: текст переводится в верхний регистр,
+     * адреса не меняются
+     *
+     * @param packed двоичное представление
+     * @return представление для сравнения без учета регистра
+     */
+    public static byte[] foldCase(byte[] packed) {
+        if (packed.length == IPV4_BYTES || packed.length == IPV6_BYTES) {
+            return packed;
+        }
+        return packText(unpack(packed).toUpperCase(Locale.ROOT));
+    }
+
+    private static byte[] packText(String ip) {
+        var text = ip.getBytes(StandardCharsets.UTF_8);
+        int length = text.length + 1;
+        boolean isPadded = length == IPV4_BYTES || length == IPV6_BYTES;
+        var packed = new byte[isPadded ? length + 1 : length];
+        packed[0] = TEXT_MARKER;
+        System.arraycopy(text, 0, packed, 1, text.length);
+        if (isPadded) {
+            packed[length] = TEXT_PADDING;
+        }
+        return packed;
+    }
+
+    /**
+     * Восстановить IP-адрес из двоичного представления. Упаковка результата дает то же представление.
+     *
+     * @param packed двоичное представление
+     * @return IP-адрес в текстовом виде
+     */
+    public static String unpack(byte[] packed) {
+        if (packed.length == IPV4_BYTES || packed.length == IPV6_BYTES) {
+            try {
+                return InetAddress.getByAddress(packed).getHostAddress();
+            } catch (UnknownHostException exception) {
+                throw new IllegalArgumentException(exception);
+            }
+        }
+        if (packed.length == 0 || packed[0] != TEXT_MARKER) {
+            throw new IllegalArgumentException("Некорректное представление IP-адреса");
+        }
+        int length = packed[packed.length - 1] == TEXT_PADDING ? packed.length - 2 : packed.length - 1;
+        return new String(packed, 1, length, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        var address = new byte[IPV4_BYTES];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char symbol = i < ip.length() ? ip.charAt(i) : '.';
+            if (symbol == '.') {
+                if (digits == 0 || part == IPV4_BYTES) {
+                    return null;
+                }
+                address[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else if (symbol >= '0' && symbol <= '9' && digits < 3) {
+                value = value * 10 + (symbol - '0');
+                digits++;
+                if (value > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return part == IPV4_BYTES ? address : null;
+    }
+
+    private static byte[] parseIpv6(String ip) {
+        var text = ip.length() > 2 && ip.charAt(0) == '[' && ip.charAt(ip.length() - 1) == ']'
+                ? ip.substring(1, ip.length() - 1) : ip;
+        if (text.indexOf(':') < 0) {
+            return null;
+        }
+        var address = new byte[IPV6_BYTES];
+        int position = 0;
+        int gap = -1;
+        int i = 0;
+        if (text.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        } else if (text.startsWith(":")) {
+            return null;
+        }
+        while (i < text.length()) {
+            int start = i;
+            int value = 0;
+            while (i < text.length() && i - start <= 4 && hexDigit(text.charAt(i)) >= 0) {
+                value = (value << 4) | hexDigit(text.charAt(i++));
+            }
+            if (i < text.length() && text.charAt(i) == '.') {
+                var ipv4 = parseIpv4(text.substring(start));
+                if (ipv4 == null || position > IPV6_BYTES - IPV4_BYTES) {
+                    return null;
+                }
+                System.arraycopy(ipv4, 0, address, position, IPV4_BYTES);
+                position += IPV4_BYTES;
+                break;
+            }
+            if (i == start || i - start > 4 || position == IPV6_BYTES) {
+                return null;
+            }
+            address[position++] = (byte) (value >> 8);
+            address[position++] = (byte) value;
+            if (i == text.length()) {
+                break;
+            }
+            if (text.charAt(i++) != ':' || i == text.length()) {
+                return null;
+            }
+            if (text.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return null;
+                }
+                gap = position;
+                i++;
+            }
+        }
+        if (gap >= 0) {
+            if (position == IPV6_BYTES) {
+                return null;
+            }
+            int tail = position - gap;
+            System.arraycopy(address, gap, address, IPV6_BYTES - tail, tail);
+            Arrays.fill(address, gap, IPV6_BYTES - tail, (byte) 0);
+        } else if (position != IPV6_BYTES) {
+            return null;
+        }
+        return isIpv4Mapped(address) ? Arrays.copyOfRange(address, IPV6_BYTES - IPV4_BYTES, IPV6_BYTES) : address;
+    }
+
+    private static boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < IPV4_MAPPED_PREFIX; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[IPV4_MAPPED_PREFIX] == (byte) 0xFF && address[IPV4_MAPPED_PREFIX + 1] == (byte) 0xFF;
+    }
+
+    private static int hexDigit(char symbol) {
+        if (symbol >= '0' && symbol <= '9') {
+            return symbol - '0';
+        }
+        if (symbol >= 'a' && symbol <= 'f') {
+            return symbol - 'a' + 10;
+        }
+        if (symbol >= 'A' && symbol <= 'F') {
+            return symbol - 'A' + 10;
+        }
+        return -1;
+    }
+}
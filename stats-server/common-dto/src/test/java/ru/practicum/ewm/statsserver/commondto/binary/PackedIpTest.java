@@ -0,0 +1,72 @@
+package ru.practicum.ewm.statsserver.commondto.binary;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+@DisplayName("Модульное тестирование упаковки IP-адресов")
+class PackedIpTest {
+
+    @Test
+    @DisplayName("IPv4 упаковывается в 4 байта, IPv6 - в 16 байт независимо от формы записи")
+    void packAddressTest() {
+        assertThat(PackedIp.pack("192.168.0.1"), equalTo(new byte[]{(byte) 192, (byte) 168, 0, 1}));
+        assertThat(PackedIp.pack("2001:db8::1").length, equalTo(16));
+        assertThat(PackedIp.pack("2001:DB8:0:0:0:0:0:1"), equalTo(PackedIp.pack("2001:db8::1")));
+    }
+
+    @Test
+    @DisplayName("Строка, не являющаяся IP-адресом, хранится как текст без изменений и не совпадает с адресами")
+    void packTextTest() {
+        assertThat(PackedIp.unpack(PackedIp.pack("LocalHost")), equalTo("LocalHost"));
+        assertThat(PackedIp.pack("localhost"), not(equalTo(PackedIp.pack("LOCALHOST"))));
+        assertThat(PackedIp.pack("256.1.1.1").length, equalTo(10));
+        assertThat(PackedIp.pack("abc").length, not(equalTo(4)));
+        assertThat(PackedIp.pack("1.2.3.4.5").length, not(equalTo(4)));
+    }
+
+    @Test
+    @DisplayName("Литералы IPv6 в любой допустимой записи упаковываются так же, как их разбирает InetAddress")
+    void packIpv6LiteralTest() throws UnknownHostException {
+        for (var ip : new String[]{"::", "::1", "1::", "2001:db8::1", "2001:0db8:0000:0000:0000:ff00:0042:8329",
+                "fe80::1:2:3:4", "1:2:3:4:5:6:7:8", "[2001:db8::1]", "::1.2.3.4", "64:ff9b::192.0.2.33",
+                "::ffff:10.0.0.1", "::ffff:a00:1"}) {
+            assertThat(ip, PackedIp.pack(ip), equalTo(InetAddress.getByName(ip).getAddress()));
+        }
+        assertThat(PackedIp.pack("::ffff:10.0.0.1"), equalTo(PackedIp.pack("10.0.0.1")));
+    }
+
+    @Test
+    @DisplayName("Строка с двоеточием, не являющаяся литералом IPv6, хранится как текст без обращения к DNS")
+    void packColonTextTest() {
+        for (var ip : new String[]{"host:8080", "localhost:80", "10.0.0.1:8080", ":", ":::", "1:2", "1::2::3",
+                "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8", "12345::1", "::g", "1:", ":1", "::1.2.3", "1.2.3.4::",
+                "fe80::1%eth0", "::1:2:3:4:5:6:1.2.3.4"}) {
+            assertThat(ip, PackedIp.unpack(PackedIp.pack(ip)), equalTo(ip));
+        }
+    }
+
+    @Test
+    @DisplayName("Приведение регистра совмещает текст в разном регистре и не меняет адреса")
+    void foldCaseTest() {
+        assertThat(PackedIp.foldCase(PackedIp.pack("localhost")),
+                equalTo(PackedIp.foldCase(PackedIp.pack("LOCALHOST"))));
+        assertThat(PackedIp.foldCase(PackedIp.pack("abc")), equalTo(PackedIp.pack("ABC")));
+        assertThat(PackedIp.foldCase(PackedIp.pack("2001:db8::1")), equalTo(PackedIp.pack("2001:DB8::1")));
+    }
+
+    @Test
+    @DisplayName("Восстановленный из двоичного представления адрес упаковывается в то же представление")
+    void unpackTest() {
+        for (var ip : new String[]{"192.168.0.1", "2001:db8::1", "localhost", "abc", "a23456789012345"}) {
+            assertThat(PackedIp.pack(PackedIp.unpack(PackedIp.pack(ip))), equalTo(PackedIp.pack(ip)));
+        }
+        assertThat(PackedIp.unpack(PackedIp.pack("10.0.0.1")), equalTo("10.0.0.1"));
+    }
+}
@@ -2,8 +2,10 @@ package ru.practicum.ewm.statsserver.server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class StatsServiceApp {
     public static void main(String[] args) {
         SpringApplication.run(StatsServiceApp.class, args);
@@ -0,0 +1,32 @@
+package ru.practicum.ewm.statsserver.server;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройка Spring MVC сервиса статистики. JSON-конвертер дополнительно объявляет тип application/x-ndjson,
+ * чтобы ответ об ошибке на запрос статистики потоком NDJSON передавался одной JSON-строкой, а не подменялся
+ * ответом 406 Not Acceptable.
+ */
+@Configuration
+public class StatsWebConfig implements WebMvcConfigurer {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (var converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter jsonConverter) {
+                var mediaTypes = new ArrayList<>(jsonConverter.getSupportedMediaTypes());
+                mediaTypes.add(APPLICATION_NDJSON);
+                jsonConverter.setSupportedMediaTypes(mediaTypes);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ru.practicum.ewm.statsserver.server.binary;
+
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpServer;
+import ru.practicum.ewm.statsserver.commondto.binary.HitFrame;
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Прием обращений по двоичному протоколу {@link HitFrame} на постоянных TCP-соединениях. Клиент один раз
+ * сообщает идентификаторы компонентов и эндпоинтов кадрами {@link HitFrame.Dict}, после чего каждое обращение
+ * передается кадром {@link HitFrame.Hit} фиксированного формата: без разбора JSON и строковой даты.
+ * <p>
+ * Кадры читаются потоками событий Reactor Netty, обращения соединения собираются в пакеты до batch-size
+ * записей или на время batch-interval и записываются через {@link StatsService#addHits} в отдельном пуле
+ * потоков. Подтверждения {@link HitFrame.Ack} с признаком уникальности отправляются после записи пакета,
+ * в порядке следования обращений; соединение при этом продолжает принимать кадры.
+ * <p>
+ * Каждый словарь соединения хранит не более max-dict-entries идентификаторов: соединение, объявившее больше,
+ * закрывается, чтобы один клиент не мог занять память сервера.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BinaryIngestServer {
+    static final String LOOP_PREFIX = "stats-binary";
+    static final String STARTED = "Запущен прием статистики по двоичному протоколу: порт {}, потоков {}";
+    static final String STOPPED = "Прием статистики по двоичному протоколу остановлен";
+    static final String CONNECTION_FAILED = "Соединение двоичного протокола закрыто из-за ошибки: {}";
+    static final String DICT_OVERFLOW = "Словарь соединения превысил %d идентификаторов";
+    static final String BATCH_FAILED = "Ошибка записи пакета из {} обращений, принятых по двоичному протоколу: {}";
+    final StatsService statsService;
+    final boolean enabled;
+    final int port;
+    final int workerThreads;
+    final int batchSize;
+    final Duration batchInterval;
+    final int maxDictEntries;
+    LoopResources loops;
+    DisposableServer server;
+
+    public BinaryIngestServer(
+            StatsService statsService,
+            @Value("${stats-server.binary.enabled:false}") boolean enabled,
+            @Value("${stats-server.binary.port:9092}") int port,
+            @Value("${stats-server.binary.worker-threads:2}") int workerThreads,
+            @Value("${stats-server.binary.batch-size:500}") int batchSize,
+            @Value("${stats-server.binary.batch-interval:5ms}") Duration batchInterval,
+            @Value("${stats-server.binary.max-dict-entries:10000}") int maxDictEntries
+    ) {
+        this.statsService = statsService;
+        this.enabled = enabled;
+        this.port = port;
+        this.workerThreads = workerThreads;
+        this.batchSize = batchSize;
+        this.batchInterval = batchInterval;
+        this.maxDictEntries = maxDictEntries;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        loops = LoopResources.create(LOOP_PREFIX, 1, workerThreads, true);
+        server = TcpServer.create()
+                .port(port)
+                .runOn(loops)
+                .doOnConnection(connection -> connection.addHandlerLast(new LengthFieldBasedFrameDecoder(
+                        HitFrame.MAX_FRAME_BYTES, 0, HitFrame.LENGTH_BYTES, 0, HitFrame.LENGTH_BYTES)))
+                .handle(this::serve)
+                .bindNow();
+        log.info(STARTED, server.port(), workerThreads);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (server == null) {
+            return;
+        }
+        server.disposeNow();
+        loops.disposeLater().block();
+        log.info(STOPPED);
+    }
+
+    /**
+     * Обслужить соединение. Словари компонентов и эндпоинтов действуют в пределах соединения.
+     */
+    private Publisher<Void> serve(NettyInbound inbound, NettyOutbound outbound) {
+        Map<Integer, String> apps = new HashMap<>();
+        Map<Integer, String> uris = new HashMap<>();
+        var acks = inbound.receive()
+                .map(buffer -> HitFrame.decode(buffer.nioBuffer()))
+                .<ReceivedHit>handle((frame, sink) -> {
+                    if (frame instanceof HitFrame.Dict dict) {
+                        var names = dict.kind() == HitFrame.Dict.APP ? apps : uris;
+                        if (names.size() >= maxDictEntries && !names.containsKey(dict.id())) {
+                            sink.error(new IllegalStateException(DICT_OVERFLOW.formatted(maxDictEntries)));
+                        } else {
+                            names.put(dict.id(), dict.name());
+                        }
+                    } else if (frame instanceof HitFrame.Hit hit) {
+                        sink.next(receive(hit, apps, uris));
+                    } else {
+                        sink.error(new IllegalArgumentException("Неожиданный кадр " + frame));
+                    }
+                })
+                .bufferTimeout(batchSize, batchInterval, true)
+                .concatMap(batch -> Mono.fromCallable(() -> write(batch)).subscribeOn(Schedulers.boundedElastic()))
+                .doOnError(exception -> log.warn(CONNECTION_FAILED, exception.getMessage()));
+        return outbound.sendByteArray(acks);
+    }
+
+    private static ReceivedHit receive(HitFrame.Hit frame, Map<Integer, String> apps, Map<Integer, String> uris) {
+        var app = apps.get(frame.appId());
+        var uri = uris.get(frame.uriId());
+        if (app == null || uri == null) {
+            return new ReceivedHit(frame.seq(), null);
+        }
+        return new ReceivedHit(frame.seq(),
+                new HitRecord(app, uri, PackedIp.unpack(frame.ip()), Instant.ofEpochMilli(frame.epochMilli())));
+    }
+
+    /**
+     * Записать пакет обращений и подготовить подтверждения. Обращения с неизвестными идентификаторами
+     * подтверждаются как ошибочные, при заполнении буфера или журнала приема - как отклоненные: пакет
+     * принимается целиком или не принимается вовсе, поэтому отклоненные обращения можно отправить повторно.
+     *
+     * @return кадры подтверждений для всего пакета
+     */
+    private byte[] write(List<ReceivedHit> batch) {
+        var hits = batch.stream().map(ReceivedHit::hit).filter(Objects::nonNull).toList();
+        List<Boolean> uniqueFlags = null;
+        byte failure = HitFrame.Ack.FAILED;
+        try {
+            uniqueFlags = hits.isEmpty() ? List.of() : statsService.addHits(hits);
+        } catch (AppTooManyRequestsException exception) {
+            failure = HitFrame.Ack.REJECTED;
+        } catch (RuntimeException exception) {
+            log.error(BATCH_FAILED, hits.size(), exception.getMessage());
+        }
+        var acks = new ByteArrayOutputStream();
+        int index = 0;
+        for (var received : batch) {
+            byte status;
+            if (received.hit() == null) {
+                status = HitFrame.Ack.FAILED;
+            } else if (uniqueFlags == null) {
+                status = failure;
+            } else {
+                status = uniqueFlags.get(index++) ? HitFrame.Ack.UNIQUE : HitFrame.Ack.NOT_UNIQUE;
+            }
+            acks.writeBytes(new HitFrame.Ack(received.seq(), status).encode());
+        }
+        return acks.toByteArray();
+    }
+
+    private record ReceivedHit(long seq, HitRecord hit) {
+    }
+}
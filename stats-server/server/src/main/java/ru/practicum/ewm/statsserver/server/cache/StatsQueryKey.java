@@ -0,0 +1,41 @@
+package ru.practicum.ewm.statsserver.server.cache;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Нормализованные параметры запроса статистики, по которым кешируется результат
+ *
+ * @param begin начало периода (включительно)
+ * @param end конец периода (включительно) с точностью до секунды, null - период до текущего момента
+ * @param uris отсортированный список различных эндпоинтов, пустой - статистика по всем эндпоинтам
+ * @param unique подсчет только уникальных IP
+ * @param exact точный подсчет уникальных IP
+ */
+public record StatsQueryKey(
+        Instant begin,
+        Instant end,
+        List<String> uris,
+        boolean unique,
+        boolean exact
+) {
+    /**
+     * Нормализовать параметры запроса: одинаковые по смыслу запросы получают равные ключи
+     *
+     * @param begin начало периода
+     * @param end конец периода, null - период до текущего момента
+     * @param uris список эндпоинтов в любом порядке, возможно с повторами, null - все эндпоинты
+     * @param unique подсчет только уникальных IP, null - нет
+     * @param exact точный подсчет уникальных IP, null - нет
+     * @return ключ
+     */
+    public static StatsQueryKey of(Instant begin, Instant end, List<String> uris, Boolean unique, Boolean exact) {
+        return new StatsQueryKey(
+                begin,
+                end == null ? null : end.truncatedTo(ChronoUnit.SECONDS),
+                uris == null ? List.of() : uris.stream().distinct().sorted().toList(),
+                Boolean.TRUE.equals(unique),
+                Boolean.TRUE.equals(unique) && Boolean.TRUE.equals(exact));
+    }
+}
@@ -0,0 +1,171 @@
+package ru.practicum.ewm.statsserver.server.cache;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Кеш результатов запросов статистики, ограниченный суммарным числом строк статистики max-rows (пустой
+ * результат считается за одну строку). При переполнении вытесняются давно не запрашивавшиеся результаты.
+ * <p>
+ * Результат за закрытый период, конец которого раньше текущего момента более чем на closed-after, хранится
+ * до вытеснения. Обращения, записываемые этим экземпляром сервиса с опозданием больше closed-after (из буфера
+ * пакетной записи, журнала приема или повторной отправки клиентом), удаляют из кеша результаты закрытых
+ * периодов, в которые они попадают; результат, вычислявшийся одновременно с такой записью, сохраняется как
+ * результат открытого периода. Обращения, записываемые другими экземплярами, кеш не видит, поэтому closed-after
+ * должен быть не меньше наибольшей задержки записи обращений. Результат за открытый период хранится
+ * open-window-ttl, нулевое значение отключает кеширование таких запросов.
+ * <p>
+ * Одновременные запросы с одинаковыми параметрами, не найденные в кеше, вычисляются один раз: остальные
+ * запросы ждут результата первого.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsResultCache {
+    final long maxRows;
+    final Duration openWindowTtl;
+    final Duration closedAfter;
+    final LinkedHashMap<StatsQueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    final Map<StatsQueryKey, CompletableFuture<List<ViewStatsDto>>> loading = new HashMap<>();
+    long rows;
+    long lateWrites;
+
+    public StatsResultCache(
+            @Value("${stats-server.cache.max-rows:100000}") long maxRows,
+            @Value("${stats-server.cache.open-window-ttl:5s}") Duration openWindowTtl,
+            @Value("${stats-server.cache.closed-after:1m}") Duration closedAfter
+    ) {
+        this.maxRows = maxRows;
+        this.openWindowTtl = openWindowTtl;
+        this.closedAfter = closedAfter;
+    }
+
+    /**
+     * Получить результат из кеша или вычислить и сохранить его
+     *
+     * @param key нормализованные параметры запроса
+     * @param loader вычисление результата при отсутствии в кеше
+     * @return неизменяемый список со статистикой
+     */
+    public List<ViewStatsDto> get(StatsQueryKey key, Supplier<List<ViewStatsDto>> loader) {
+        var now = Instant.now(Clock.systemUTC());
+        CompletableFuture<List<ViewStatsDto>> pending;
+        long lateWritesBefore;
+        synchronized (this) {
+            var entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() == null || now.isBefore(entry.expiresAt())) {
+                    return entry.stats();
+                }
+                remove(key);
+            }
+            pending = loading.get(key);
+            if (pending == null) {
+                loading.put(key, new CompletableFuture<>());
+            }
+            lateWritesBefore = lateWrites;
+        }
+        if (pending != null) {
+            return await(pending);
+        }
+        List<ViewStatsDto> stats;
+        try {
+            stats = List.copyOf(loader.get());
+        } catch (RuntimeException | Error exception) {
+            complete(key).completeExceptionally(exception);
+            throw exception;
+        }
+        boolean isClosed = key.end() != null && key.end().isBefore(now.minus(closedAfter));
+        synchronized (this) {
+            isClosed = isClosed && lateWrites == lateWritesBefore;
+            if (weight(stats) <= maxRows && (isClosed || openWindowTtl.isPositive())) {
+                put(key, new Entry(stats, isClosed ? null : now.plus(openWindowTtl)));
+            }
+            complete(key).complete(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Учесть записанные обращения. Если среди них есть записанные с опозданием больше closed-after, из кеша
+     * удаляются результаты закрытых периодов, пересекающихся с периодом таких обращений. Вызывается после
+     * фиксации записи.
+     *
+     * @param from время самого раннего записанного обращения
+     * @param to время самого позднего записанного обращения
+     */
+    public synchronized void written(Instant from, Instant to) {
+        if (!from.isBefore(Instant.now(Clock.systemUTC()).minus(closedAfter))) {
+            return;
+        }
+        lateWrites++;
+        var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            var key = entry.getKey();
+            if (entry.getValue().expiresAt() == null && !key.begin().isAfter(to) && !key.end().isBefore(from)) {
+                rows -= weight(entry.getValue().stats());
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized CompletableFuture<List<ViewStatsDto>> complete(StatsQueryKey key) {
+        return loading.remove(key);
+    }
+
+    private static List<ViewStatsDto> await(CompletableFuture<List<ViewStatsDto>> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    private synchronized void put(StatsQueryKey key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        rows += weight(entry.stats());
+        var iterator = entries.values().iterator();
+        while (rows > maxRows && iterator.hasNext()) {
+            rows -= weight(iterator.next().stats());
+            iterator.remove();
+        }
+    }
+
+    private void remove(StatsQueryKey key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            rows -= weight(removed.stats());
+        }
+    }
+
+    private static long weight(List<ViewStatsDto> stats) {
+        return stats.size() + 1L;
+    }
+
+    /**
+     * Результат запроса в кеше
+     *
+     * @param stats статистика
+     * @param expiresAt момент устаревания, null - результат за закрытый период не устаревает
+     */
+    private record Entry(List<ViewStatsDto> stats, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.ewm.statsserver.server.compaction;
+
+import ru.practicum.ewm.statsserver.server.rollup.RollupGranularity;
+
+import java.time.Instant;
+
+/**
+ * Граница сжатия устаревших обращений: обращения раньше границы хранятся только в агрегатах
+ * не мельче указанной гранулярности
+ *
+ * @param compactedBefore граница сжатия (не включительно)
+ * @param granularity гранулярность самых мелких агрегатов, сохраненных до границы, null - сжатие не выполнялось
+ */
+public record CompactionWatermark(
+        Instant compactedBefore,
+        RollupGranularity granularity
+) {
+    public static final CompactionWatermark NONE = new CompactionWatermark(Instant.EPOCH, null);
+
+    /**
+     * Проверить, затрагивает ли диапазон, начинающийся с указанного момента, сжатые обращения
+     *
+     * @param from начало диапазона
+     * @return true, если часть диапазона хранится только в агрегатах
+     */
+    public boolean covers(Instant from) {
+        return granularity != null && from.isBefore(compactedBefore);
+    }
+}
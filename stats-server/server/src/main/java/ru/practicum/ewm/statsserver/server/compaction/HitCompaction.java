@@ -0,0 +1,267 @@
+package ru.practicum.ewm.statsserver.server.compaction;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.rollup.RollupGranularity;
+import ru.practicum.ewm.statsserver.server.sketch.HyperLogLog;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Сжатие устаревших обращений. Количество обращений в таблицах агрегатов обновляется при каждой записи
+ * обращений, а счетчики уникальных IP {@link HyperLogLog} при записи не строятся. Задача заполняет счетчики
+ * корзин до новой границы по исходным записям, переносит границу сжатия и затем удаляет исходные записи
+ * и агрегаты мельче гранулярности сжатия частями по chunk-size строк, не блокируя надолго запись новых
+ * обращений. Обращения, записанные с опозданием в корзину с уже заполненным счетчиком, учитываются только
+ * в количестве обращений.
+ * <p>
+ * Граница сжатия хранится в таблице stats_compaction и учитывается планировщиком запросов: часть диапазона
+ * до границы читается только из сохраненных агрегатов. Граница переносится раньше удаления, поэтому запрос,
+ * выполняемый одновременно с удалением, не читает частично удаленные исходные записи.
+ * <p>
+ * Запросы берут границу из памяти и перечитывают ее из БД не чаще раза в watermark-ttl. Экземпляр, перенесший
+ * границу, ждет watermark-ttl перед удалением, чтобы к его началу новую границу учитывали все экземпляры.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class HitCompaction {
+    static String SELECT_WATERMARK = "SELECT compacted_before, granularity FROM stats_compaction WHERE id = 1";
+    static String UPDATE_WATERMARK = """
+            UPDATE stats_compaction SET compacted_before = ?, granularity = ?
+            WHERE id = 1 AND compacted_before < ?""";
+    static String MISSING_SKETCH_BUCKETS = """
+            SELECT DISTINCT bucket FROM %s WHERE sketch IS NULL AND bucket < ? ORDER BY bucket""";
+    static String LOCK_MISSING_SKETCHES = """
+            SELECT app, uri FROM %s WHERE bucket = ? AND sketch IS NULL ORDER BY app, uri FOR UPDATE""";
+    static String RAW_VISITORS = """
+            SELECT DISTINCT app_id, uri_id, ip FROM "stats-db" WHERE epoch_second >= ? AND epoch_second < ?""";
+    static String UPDATE_SKETCH = """
+            UPDATE %s SET sketch = ? WHERE app = ? AND uri = ? AND bucket = ? AND sketch IS NULL""";
+    static String DELETE_RAW = """
+            DELETE FROM "stats-db"
+            WHERE epoch_second < ? AND id IN (SELECT id FROM "stats-db" WHERE epoch_second < ? LIMIT ?)""";
+    static String OLDEST_BUCKET = "SELECT MIN(bucket) FROM %s WHERE bucket < ?";
+    static String DELETE_BUCKETS = "DELETE FROM %s WHERE bucket >= ? AND bucket < ?";
+    static long DAY_SECONDS = RollupGranularity.DAY.getSeconds();
+    static String WATERMARK_MOVED = "Граница сжатия обращений перенесена на {}, гранулярность агрегатов {}";
+    static String SKETCHES_FILLED = "Заполнены счетчики уникальных IP {} корзин таблицы {}";
+    static String RAW_DELETED = "Удалено обращений старше границы сжатия {}: {}";
+    static String BUCKETS_DELETED = "Из таблицы {} удалено агрегатов старше границы сжатия {}: {}";
+    static String COMPACTION_FAILED = "Ошибка сжатия устаревших обращений: {}";
+    static String COMPACTION_INTERRUPTED = "Сжатие устаревших обращений прервано до удаления";
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    StatsDictionary dictionary;
+    Period after;
+    RollupGranularity granularity;
+    int chunkSize;
+    Duration watermarkTtl;
+    AtomicReference<CachedWatermark> cached = new AtomicReference<>();
+
+    public HitCompaction(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            StatsDictionary dictionary,
+            @Value("${stats-server.compaction.after:0d}") Period after,
+            @Value("${stats-server.compaction.granularity:hour}") RollupGranularity granularity,
+            @Value("${stats-server.compaction.chunk-size:10000}") int chunkSize,
+            @Value("${stats-server.compaction.watermark-ttl:5s}") Duration watermarkTtl
+    ) {
+        if (granularity == RollupGranularity.MINUTE) {
+            throw new IllegalStateException("Сжатие обращений возможно только до часовых или суточных агрегатов");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dictionary = dictionary;
+        this.after = after;
+        this.granularity = granularity;
+        this.chunkSize = chunkSize;
+        this.watermarkTtl = watermarkTtl;
+    }
+
+    /**
+     * Текущая граница сжатия. Хранится в памяти и перечитывается из БД по истечении watermark-ttl, поэтому
+     * граница, перенесенная задачей на другом экземпляре сервиса, учитывается не позже чем через watermark-ttl.
+     *
+     * @return граница сжатия
+     */
+    public CompactionWatermark watermark() {
+        var current = cached.get();
+        if (current != null && System.nanoTime() - current.expiresAt() < 0) {
+            return current.watermark();
+        }
+        return refresh();
+    }
+
+    private CompactionWatermark refresh() {
+        var watermark = jdbcTemplate.queryForObject(SELECT_WATERMARK, (resultSet, rowNum) -> {
+            var name = resultSet.getString("granularity");
+            return new CompactionWatermark(
+                    Instant.ofEpochSecond(resultSet.getLong("compacted_before")),
+                    name == null ? null : RollupGranularity.valueOf(name));
+        });
+        cached.set(new CachedWatermark(watermark, System.nanoTime() + watermarkTtl.toNanos()));
+        return watermark;
+    }
+
+    /**
+     * Сжать обращения старше after (0d - сжатие отключено). Граница сжатия выравнивается по началу суток UTC.
+     * Выполняется при запуске и далее с интервалом interval. Исходные записи, поступившие с опозданием
+     * и оказавшиеся до уже перенесенной границы, удаляются при следующем выполнении.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${stats-server.compaction.interval:PT1H}")
+    public void compact() {
+        if (after.isZero()) {
+            return;
+        }
+        try {
+            var current = refresh();
+            var cutoff = LocalDate.now(Clock.systemUTC()).minus(after).atStartOfDay(ZoneOffset.UTC).toInstant();
+            if (cutoff.isAfter(current.compactedBefore())) {
+                var target = current.granularity() == null
+                        || current.granularity().getSeconds() < granularity.getSeconds()
+                        ? granularity : current.granularity();
+                fillSketches(target, cutoff);
+                jdbcTemplate.update(UPDATE_WATERMARK, cutoff.getEpochSecond(), target.name(), cutoff.getEpochSecond());
+                log.info(WATERMARK_MOVED, cutoff, target);
+                current = refresh();
+                Thread.sleep(watermarkTtl.toMillis());
+            } else if (current.granularity() == null) {
+                return;
+            }
+            deleteRaw(current.compactedBefore());
+            for (var rollup : RollupGranularity.values()) {
+                if (rollup.getSeconds() < current.granularity().getSeconds()) {
+                    deleteBuckets(rollup, current.compactedBefore());
+                }
+            }
+        } catch (DataAccessException exception) {
+            log.error(COMPACTION_FAILED, exception.getMessage());
+        } catch (InterruptedException exception) {
+            log.warn(COMPACTION_INTERRUPTED);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Заполнить по исходным записям счетчики уникальных IP корзин до cutoff в агрегатах не мельче target
+     */
+    private void fillSketches(RollupGranularity target, Instant cutoff) {
+        for (var rollup : RollupGranularity.values()) {
+            if (rollup.getSeconds() < target.getSeconds()) {
+                continue;
+            }
+            var table = rollup.getTable();
+            var buckets = jdbcTemplate.queryForList(MISSING_SKETCH_BUCKETS.formatted(table), LocalDateTime.class,
+                    toDateTime(cutoff));
+            for (var bucket : buckets) {
+                transactionTemplate.executeWithoutResult(status -> fillBucket(rollup, bucket));
+            }
+            if (!buckets.isEmpty()) {
+                log.info(SKETCHES_FILLED, buckets.size(), table);
+            }
+        }
+    }
+
+    /**
+     * Заполнить счетчики уникальных IP корзины. Строки корзины блокируются до конца транзакции, поэтому
+     * заполнение на другом экземпляре сервиса дожидается его и пропускает уже заполненные строки.
+     */
+    private void fillBucket(RollupGranularity rollup, LocalDateTime bucket) {
+        var table = rollup.getTable();
+        var missing = new HashSet<ViewKey>();
+        jdbcTemplate.query(LOCK_MISSING_SKETCHES.formatted(table), (RowCallbackHandler) resultSet -> missing.add(
+                new ViewKey(resultSet.getString("app"), resultSet.getString("uri"))), bucket);
+        if (missing.isEmpty()) {
+            return;
+        }
+        var from = bucket.toEpochSecond(ZoneOffset.UTC);
+        var visitors = new HashMap<ViewKey, HyperLogLog>();
+        jdbcTemplate.query(RAW_VISITORS, (RowCallbackHandler) resultSet -> {
+            var key = new ViewKey(dictionary.app(resultSet.getInt("app_id")),
+                    dictionary.uri(resultSet.getInt("uri_id")));
+            if (missing.contains(key)) {
+                visitors.computeIfAbsent(key, k -> new HyperLogLog()).add(resultSet.getBytes("ip"));
+            }
+        }, from, from + rollup.getSeconds());
+        var keys = missing.stream().sorted().toList();
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH.formatted(table), keys, keys.size(), (statement, key) -> {
+            statement.setBytes(1, visitors.getOrDefault(key, new HyperLogLog()).toBytes());
+            statement.setString(2, key.app());
+            statement.setString(3, key.uri());
+            statement.setObject(4, bucket);
+        });
+    }
+
+    /**
+     * Удалить исходные записи до границы сжатия частями по chunkSize строк, каждая часть - отдельной транзакцией
+     */
+    private void deleteRaw(Instant compactedBefore) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_RAW,
+                    compactedBefore.getEpochSecond(), compactedBefore.getEpochSecond(), chunkSize);
+            total += deleted;
+        } while (deleted > 0);
+        if (total > 0) {
+            log.info(RAW_DELETED, compactedBefore, total);
+        }
+    }
+
+    /**
+     * Удалить агрегаты до границы сжатия по суткам, каждые сутки - отдельной транзакцией
+     */
+    private void deleteBuckets(RollupGranularity rollup, Instant compactedBefore) {
+        var table = rollup.getTable();
+        var oldest = jdbcTemplate.queryForObject(OLDEST_BUCKET.formatted(table), LocalDateTime.class,
+                toDateTime(compactedBefore));
+        if (oldest == null) {
+            return;
+        }
+        long total = 0;
+        var from = RollupGranularity.DAY.floor(oldest.toInstant(ZoneOffset.UTC));
+        while (from.isBefore(compactedBefore)) {
+            var to = from.plusSeconds(DAY_SECONDS);
+            total += jdbcTemplate.update(DELETE_BUCKETS.formatted(table), toDateTime(from),
+                    toDateTime(to.isAfter(compactedBefore) ? compactedBefore : to));
+            from = to;
+        }
+        log.info(BUCKETS_DELETED, table, compactedBefore, total);
+    }
+
+    private static LocalDateTime toDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private record CachedWatermark(CompactionWatermark watermark, long expiresAt) {
+    }
+
+    private record ViewKey(String app, String uri) implements Comparable<ViewKey> {
+        @Override
+        public int compareTo(ViewKey other) {
+            int byApp = app.compareTo(other.app);
+            return byApp != 0 ? byApp : uri.compareTo(other.uri);
+        }
+    }
+}
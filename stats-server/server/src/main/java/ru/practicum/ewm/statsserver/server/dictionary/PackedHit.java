@@ -0,0 +1,19 @@
+package ru.practicum.ewm.statsserver.server.dictionary;
+
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+
+/**
+ * Обращение к эндпоинту в том виде, в котором оно хранится в таблице обращений
+ *
+ * @param appId идентификатор компонента в словаре компонентов
+ * @param uriId идентификатор эндпоинта в словаре эндпоинтов
+ * @param ip IP-адрес, упакованный {@link PackedIp}
+ * @param epochSecond время выполнения запроса в секундах от начала эпохи Unix
+ */
+public record PackedHit(
+        int appId,
+        int uriId,
+        byte[] ip,
+        long epochSecond
+) {
+}
@@ -0,0 +1,185 @@
+package ru.practicum.ewm.statsserver.server.dictionary;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словари компонентов и эндпоинтов, на идентификаторы которых ссылается таблица обращений. Различных
+ * компонентов и эндпоинтов мало по сравнению с числом обращений, поэтому словари целиком кешируются в памяти,
+ * а обращения при записи кодируются, а при чтении статистики раскодируются без запросов к БД.
+ * <p>
+ * Новые значения добавляются в словарь в отдельной транзакции до записи обращений, поэтому в кеш попадают
+ * только идентификаторы, уже зафиксированные в БД.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StatsDictionary {
+    static String APP_TABLE = "stats_app";
+    static String URI_TABLE = "stats_uri";
+    NamedParameterJdbcTemplate jdbcTemplate;
+    TransactionTemplate newTransaction;
+    Dictionary apps = new Dictionary(APP_TABLE);
+    Dictionary uris = new Dictionary(URI_TABLE);
+
+    public StatsDictionary(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    void load() {
+        apps.loadAll();
+        uris.loadAll();
+    }
+
+    /**
+     * Закодировать обращения для записи, добавив в словари недостающие компоненты и эндпоинты.
+     * Вызывается до начала транзакции записи обращений.
+     *
+     * @param hits обращения
+     * @return закодированные обращения в том же порядке
+     */
+    public List<PackedHit> encode(List<HitRecord> hits) {
+        var appIds = apps.resolve(hits.stream().map(HitRecord::app).toList());
+        var uriIds = uris.resolve(hits.stream().map(HitRecord::uri).toList());
+        var packed = new ArrayList<PackedHit>(hits.size());
+        for (var hit : hits) {
+            packed.add(new PackedHit(
+                    appIds.get(hit.app()),
+                    uriIds.get(hit.uri()),
+                    hit.packedIp(),
+                    hit.timestamp().getEpochSecond()));
+        }
+        return packed;
+    }
+
+    /**
+     * Название компонента по идентификатору
+     *
+     * @param id идентификатор компонента
+     * @return название компонента
+     */
+    public String app(int id) {
+        return apps.name(id);
+    }
+
+    /**
+     * Эндпоинт по идентификатору
+     *
+     * @param id идентификатор эндпоинта
+     * @return эндпоинт
+     */
+    public String uri(int id) {
+        return uris.name(id);
+    }
+
+    /**
+     * Идентификаторы эндпоинтов для фильтра статистики. Эндпоинты, к которым не было обращений, в словаре
+     * отсутствуют и пропускаются.
+     *
+     * @param names эндпоинты
+     * @return идентификаторы известных эндпоинтов
+     */
+    public List<Integer> uriIds(Collection<String> names) {
+        return List.copyOf(uris.find(names).values());
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private final class Dictionary {
+        static String SELECT_ALL = "SELECT id, name FROM %s";
+        static String SELECT_BY_ID = "SELECT id, name FROM %s WHERE id = :id";
+        static String SELECT_BY_NAMES = "SELECT id, name FROM %s WHERE name IN (:names)";
+        static String INSERT_NAME = "INSERT INTO %s (name) VALUES (:name) ON CONFLICT DO NOTHING";
+        String table;
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        Map<Integer, String> names = new ConcurrentHashMap<>();
+
+        private Dictionary(String table) {
+            this.table = table;
+        }
+
+        private void loadAll() {
+            jdbcTemplate.query(SELECT_ALL.formatted(table), (RowCallbackHandler) resultSet ->
+                    put(resultSet.getInt("id"), resultSet.getString("name")));
+        }
+
+        private String name(int id) {
+            var name = names.get(id);
+            if (name == null) {
+                jdbcTemplate.query(SELECT_BY_ID.formatted(table), new MapSqlParameterSource("id", id),
+                        (RowCallbackHandler) resultSet -> put(resultSet.getInt("id"), resultSet.getString("name")));
+                name = names.get(id);
+            }
+            if (name == null) {
+                throw new IllegalStateException("Нет записи с идентификатором " + id + " в словаре " + table);
+            }
+            return name;
+        }
+
+        /**
+         * Найти идентификаторы значений, уже имеющихся в словаре
+         */
+        private Map<String, Integer> find(Collection<String> values) {
+            var found = new HashMap<String, Integer>();
+            var missing = new TreeSet<String>();
+            for (var value : values) {
+                var id = ids.get(value);
+                if (id == null) {
+                    missing.add(value);
+                } else {
+                    found.put(value, id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                jdbcTemplate.query(SELECT_BY_NAMES.formatted(table), new MapSqlParameterSource("names", missing),
+                        (RowCallbackHandler) resultSet -> {
+                            put(resultSet.getInt("id"), resultSet.getString("name"));
+                            found.put(resultSet.getString("name"), resultSet.getInt("id"));
+                        });
+            }
+            return found;
+        }
+
+        /**
+         * Получить идентификаторы значений, добавив недостающие в словарь. Значения добавляются в порядке
+         * возрастания, что исключает взаимные блокировки параллельных добавлений.
+         */
+        private Map<String, Integer> resolve(Collection<String> values) {
+            var found = find(values);
+            var missing = new TreeSet<String>(values);
+            missing.removeAll(found.keySet());
+            if (missing.isEmpty()) {
+                return found;
+            }
+            newTransaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    INSERT_NAME.formatted(table),
+                    missing.stream().map(name -> new MapSqlParameterSource("name", name))
+                            .toArray(MapSqlParameterSource[]::new)));
+            found.putAll(find(missing));
+            return found;
+        }
+
+        private void put(int id, String name) {
+            ids.put(name, id);
+            names.put(id, name);
+        }
+    }
+}
@@ -3,7 +3,9 @@ package ru.practicum.ewm.statsserver.server.exception;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -20,6 +22,7 @@ import java.util.Arrays;
 public class AppExceptionHandlers {
     static String SEPARATOR = ". ";
     static String BAD_REQUEST = "'400 Bad Request' ";
+    static String TOO_MANY_REQUESTS = "'429 Too Many Requests' ";
     static String INTERNAL_SERVER_ERROR = "'500 Internal Server Error' ";
     static String NOT_READABLE_BODY = "Тело запроса некорректное или отсутствует";
     static String SERVER_ERROR = "Сервер не смог обработать запрос";
@@ -76,6 +79,25 @@ public class AppExceptionHandlers {
         );
     }
 
+    /**
+     * Обработчик исключений для ответов TOO_MANY_REQUESTS, когда сервис временно не может принять данные.
+     * В заголовке Retry-After клиенту сообщается, через сколько секунд стоит повторить запрос.
+     *
+     * @param exception перехваченное исключение
+     * @return стандартный API-ответ об ошибке ErrorResponse с описанием ошибки и вероятных причинах
+     */
+    @ExceptionHandler({AppTooManyRequestsException.class})
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsResponse(final AppTooManyRequestsException exception) {
+        log.warn(LOG_RESPONSE_THREE, TOO_MANY_REQUESTS, exception.getError(), exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1L, exception.getRetryAfter().toSeconds())))
+                .body(new ErrorResponse(
+                        TOO_MANY_REQUESTS,
+                        exception.getError().concat(SEPARATOR).concat(exception.getMessage())
+                ));
+    }
+
     /**
      * Обработчик исключений для ответов StatsAppAcceptedException
      *
@@ -0,0 +1,16 @@
+package ru.practicum.ewm.statsserver.server.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class AppTooManyRequestsException extends AppException {
+    private final Duration retryAfter;
+
+    public AppTooManyRequestsException(String source, String error, String message, Duration retryAfter) {
+        super(source, error, message);
+        this.retryAfter = retryAfter;
+    }
+
+}
@@ -0,0 +1,170 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Индекс первых обращений: для каждой пары uri и упакованного ip, обоих без учета регистра, хранит ключ - MD5
+ * от пары.
+ * Уникальность обращения определяется атомарной вставкой ключа с ON CONFLICT DO NOTHING: обращение
+ * уникально, если его ключ был вставлен. Проверка выполняется по первичному ключу индекса и не зависит
+ * от объема таблицы обращений. Вместе с ключом хранится время первого обращения: при удалении обращений,
+ * вышедших за срок хранения, удаляются и ключи, первое обращение которых старше срока, и следующее
+ * обращение такой пары снова считается уникальным.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class FirstSeenIndex {
+    static int CHUNK_SIZE = 1000;
+    static String KEY_COLUMN = "visitor_key";
+    static byte KEY_SEPARATOR = '\n';
+    static String INSERT_KEYS = """
+            INSERT INTO stats_first_seen (visitor_key, first_second)
+            VALUES %s
+            ON CONFLICT DO NOTHING""";
+    static String KEY_VALUES = "(?, ?)";
+    static String DELETE_KEY = "DELETE FROM stats_first_seen WHERE visitor_key = ?";
+    static String DELETE_EXPIRED = "DELETE FROM stats_first_seen WHERE first_second < ?";
+    static String IS_EMPTY = """
+            SELECT NOT EXISTS (SELECT 1 FROM stats_first_seen)
+               AND EXISTS (SELECT 1 FROM "stats-db")""";
+    static String DISTINCT_VISITORS = """
+            SELECT u.name AS uri, h.ip, h.first_second
+            FROM (SELECT uri_id, ip, MIN(epoch_second) AS first_second FROM "stats-db" GROUP BY uri_id, ip) AS h
+            JOIN stats_uri u ON u.id = h.uri_id""";
+    static String BACKFILL_STARTED = "Заполнение индекса первых обращений по накопленной статистике";
+    static String BACKFILL_FINISHED = "Индекс первых обращений заполнен, пар uri и ip: {}";
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Заполнить индекс по уже накопленным обращениям, если он пуст. Выполняется до начала приема запросов.
+     */
+    @PostConstruct
+    void backfill() {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_EMPTY, Boolean.class))) {
+            return;
+        }
+        log.info(BACKFILL_STARTED);
+        var chunk = new TreeMap<UUID, Long>();
+        var total = new long[1];
+        jdbcTemplate.query(DISTINCT_VISITORS, (RowCallbackHandler) resultSet -> {
+            chunk.merge(visitorKey(resultSet.getString("uri"), resultSet.getBytes("ip")),
+                    resultSet.getLong("first_second"), Math::min);
+            if (chunk.size() == CHUNK_SIZE) {
+                total[0] += insert(chunk).size();
+                chunk.clear();
+            }
+        });
+        total[0] += insert(chunk).size();
+        log.info(BACKFILL_FINISHED, total[0]);
+    }
+
+    /**
+     * Зарегистрировать обращения в индексе. Повторы внутри пакета учитываются так же, как если бы
+     * обращения пришли по одному: уникальным считается только первое из них.
+     *
+     * @param hits обращения
+     * @return признаки уникальности в порядке следования обращений
+     */
+    public List<Boolean> register(List<HitRecord> hits) {
+        var keys = hits.stream().map(FirstSeenIndex::visitorKey).toList();
+        var firstSeconds = new TreeMap<UUID, Long>();
+        for (int i = 0; i < hits.size(); i++) {
+            firstSeconds.merge(keys.get(i), hits.get(i).timestamp().getEpochSecond(), Math::min);
+        }
+        var inserted = insert(firstSeconds);
+        var uniqueFlags = new ArrayList<Boolean>(keys.size());
+        for (var key : keys) {
+            uniqueFlags.add(inserted.remove(key));
+        }
+        return uniqueFlags;
+    }
+
+    /**
+     * Удалить из индекса ключ обращения, которое было зарегистрировано, но не было принято к записи
+     *
+     * @param hit обращение
+     */
+    public void forget(HitRecord hit) {
+        jdbcTemplate.update(DELETE_KEY, visitorKey(hit));
+    }
+
+    /**
+     * Удалить ключи, первое обращение которых раньше cutoff. Вызывается при удалении обращений,
+     * вышедших за срок хранения.
+     *
+     * @param cutoff граница срока хранения
+     * @return количество удаленных ключей
+     */
+    public int purgeExpired(Instant cutoff) {
+        return jdbcTemplate.update(DELETE_EXPIRED, cutoff.getEpochSecond());
+    }
+
+    /**
+     * Вставить ключи в индекс. Ключи вставляются в порядке возрастания, что исключает взаимные
+     * блокировки параллельных вставок.
+     *
+     * @param keys ключи и время первого обращения по каждому из них
+     * @return ключи, которых в индексе еще не было
+     */
+    private Set<UUID> insert(TreeMap<UUID, Long> keys) {
+        var inserted = new HashSet<UUID>();
+        var sorted = List.copyOf(keys.entrySet());
+        for (int from = 0; from < sorted.size(); from += CHUNK_SIZE) {
+            var chunk = sorted.subList(from, Math.min(from + CHUNK_SIZE, sorted.size()));
+            var sql = INSERT_KEYS.formatted(String.join(", ", Collections.nCopies(chunk.size(), KEY_VALUES)));
+            var keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                var statement = connection.prepareStatement(sql, new String[]{KEY_COLUMN});
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setObject(2 * i + 1, chunk.get(i).getKey());
+                    statement.setLong(2 * i + 2, chunk.get(i).getValue());
+                }
+                return statement;
+            }, keyHolder);
+            keyHolder.getKeyList().forEach(row -> inserted.add(UUID.fromString(String.valueOf(row.get(KEY_COLUMN)))));
+        }
+        return inserted;
+    }
+
+    private static UUID visitorKey(HitRecord hit) {
+        return visitorKey(hit.uri(), hit.packedIp());
+    }
+
+    private static UUID visitorKey(String uri, byte[] ip) {
+        try {
+            var md5 = MessageDigest.getInstance("MD5");
+            md5.update(uri.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            md5.update(KEY_SEPARATOR);
+            var digest = md5.digest(PackedIp.foldCase(ip));
+            var buffer = ByteBuffer.wrap(digest);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.dictionary.PackedHit;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+
+import java.util.List;
+
+/**
+ * Пакетная запись обращений к эндпоинтам в БД статистики.
+ * Обращения кодируются словарями {@link StatsDictionary} до начала транзакции записи и отправляются одним
+ * JDBC-пакетом; при включенном в драйвере PostgreSQL параметре reWriteBatchedInserts пакет уходит на сервер
+ * многострочными INSERT. В той же транзакции обновляются таблицы агрегатов, а после ее фиксации о записанных
+ * обращениях уведомляется кеш результатов {@link StatsResultCache}. Если запись выполняется внутри внешней
+ * транзакции (перенос журнала, перенос прежней таблицы), кеш уведомляется после фиксации внешней транзакции.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class HitBatchWriter {
+    static String INSERT_HIT = """
+            INSERT INTO "stats-db" (app_id, uri_id, ip, epoch_second)
+            VALUES (?, ?, ?, ?)""";
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    StatsDictionary dictionary;
+    HitRollupWriter rollupWriter;
+    FirstSeenIndex firstSeenIndex;
+    StatsResultCache resultCache;
+
+    public HitBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          StatsDictionary dictionary, HitRollupWriter rollupWriter, FirstSeenIndex firstSeenIndex,
+                          StatsResultCache resultCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dictionary = dictionary;
+        this.rollupWriter = rollupWriter;
+        this.firstSeenIndex = firstSeenIndex;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Записать пакет обращений в одной транзакции, определив уникальность каждого по индексу первых обращений
+     *
+     * @param batch записываемые обращения
+     * @return признаки уникальности в порядке следования обращений
+     */
+    public List<Boolean> write(List<HitRecord> batch) {
+        var packed = dictionary.encode(batch);
+        var uniqueFlags = transactionTemplate.execute(status -> {
+            var flags = firstSeenIndex.register(batch);
+            insert(batch, packed);
+            return flags;
+        });
+        notifyCache(batch);
+        return uniqueFlags;
+    }
+
+    /**
+     * Записать пакет обращений, уникальность которых уже определена, в одной транзакции
+     *
+     * @param batch записываемые обращения
+     */
+    public void append(List<HitRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var packed = dictionary.encode(batch);
+        transactionTemplate.executeWithoutResult(status -> insert(batch, packed));
+        notifyCache(batch);
+    }
+
+    private void insert(List<HitRecord> batch, List<PackedHit> packed) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT, packed, packed.size(), (statement, hit) -> {
+            statement.setInt(1, hit.appId());
+            statement.setInt(2, hit.uriId());
+            statement.setBytes(3, hit.ip());
+            statement.setLong(4, hit.epochSecond());
+        });
+        rollupWriter.add(batch);
+    }
+
+    /**
+     * Уведомить кеш результатов о записанных обращениях после фиксации транзакции, в которой они записаны:
+     * сразу, если транзакция записи уже зафиксирована, или после фиксации внешней транзакции
+     */
+    private void notifyCache(List<HitRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var first = batch.get(0).timestamp();
+        var last = first;
+        for (var hit : batch) {
+            first = hit.timestamp().isBefore(first) ? hit.timestamp() : first;
+            last = hit.timestamp().isAfter(last) ? hit.timestamp() : last;
+        }
+        var from = first;
+        var to = last;
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            resultCache.written(from, to);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                resultCache.written(from, to);
+            }
+        });
+    }
+}
@@ -0,0 +1,196 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограниченный буфер приема обращений к эндпоинтам для асинхронного режима {@link IngestMode#ASYNC}.
+ * Фоновый поток забирает обращения из буфера и записывает их в БД пакетами через {@link HitBatchWriter}:
+ * пакет уходит в БД, как только набрано batch-size записей или истек flush-interval с момента
+ * поступления первой записи пакета. Обращения, принятые без определения уникальности, регистрируются
+ * в индексе первых обращений при записи.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitIngestBuffer {
+    static final String WORKER_NAME = "stats-hit-writer";
+    static final String STARTED = "Запущена пакетная запись статистики: буфер {}, пакет {}, интервал {}";
+    static final String FLUSH_FAILED = "Ошибка записи пакета статистики из {} записей, попытка {}: {}";
+    static final String HITS_LOST = "Сервис остановлен, пакет статистики из {} записей не записан";
+    static final String STOPPED = "Пакетная запись статистики остановлена";
+    static final long MAX_RETRY_DELAY_MILLIS = 5_000L;
+    final HitBatchWriter writer;
+    final IngestMode mode;
+    final BlockingQueue<BufferedHit> queue;
+    final int batchSize;
+    final Duration flushInterval;
+    Thread worker;
+    volatile boolean running;
+
+    public HitIngestBuffer(
+            HitBatchWriter writer,
+            @Value("${stats-server.ingest.mode:sync}") IngestMode mode,
+            @Value("${stats-server.ingest.buffer-capacity:100000}") int capacity,
+            @Value("${stats-server.ingest.batch-size:1000}") int batchSize,
+            @Value("${stats-server.ingest.flush-interval:200ms}") Duration flushInterval
+    ) {
+        this.writer = writer;
+        this.mode = mode;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    @PostConstruct
+    void start() {
+        if (mode != IngestMode.ASYNC) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::drainLoop, WORKER_NAME);
+        worker.setDaemon(true);
+        worker.start();
+        log.info(STARTED, queue.remainingCapacity(), batchSize, flushInterval);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.join(flushInterval.multipliedBy(2).plusSeconds(30).toMillis());
+        log.info(STOPPED);
+    }
+
+    /**
+     * Поместить в буфер обращения, уже зарегистрированные в индексе первых обращений, без ожидания.
+     * Обращения помещаются все или ни одного.
+     *
+     * @param hits обращения
+     * @return false, если места в буфере недостаточно и обращения не приняты
+     */
+    public boolean offerRegistered(List<HitRecord> hits) {
+        return offerAll(hits, true);
+    }
+
+    /**
+     * Поместить в буфер обращения, уникальность которых еще не определена, без ожидания.
+     * Обращения помещаются все или ни одного.
+     *
+     * @param hits обращения
+     * @return false, если места в буфере недостаточно и обращения не приняты
+     */
+    public boolean offerUnregistered(List<HitRecord> hits) {
+        return offerAll(hits, false);
+    }
+
+    /**
+     * Проверить, поместится ли в буфер указанное количество обращений. Проверка предварительная: место может
+     * закончиться до постановки обращений в буфер, поэтому результат постановки все равно нужно проверять.
+     *
+     * @param count количество обращений
+     * @return true, если свободного места в буфере достаточно
+     */
+    public boolean hasCapacityFor(int count) {
+        return queue.remainingCapacity() >= count;
+    }
+
+    /**
+     * Цикл фонового потока записи. Прерывание потока воспринимается как команда остановки:
+     * оставшиеся в буфере обращения дописываются в БД, после чего поток завершается.
+     */
+    private void drainLoop() {
+        List<BufferedHit> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException exception) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<BufferedHit> batch) throws InterruptedException {
+        var first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<BufferedHit> batch) {
+        var registered = new ArrayList<HitRecord>(batch.size());
+        var unregistered = new ArrayList<HitRecord>();
+        batch.forEach(hit -> (hit.registered() ? registered : unregistered).add(hit.hit()));
+        int attempt = 0;
+        while (true) {
+            try {
+                writer.append(registered);
+                registered.clear();
+                if (!unregistered.isEmpty()) {
+                    writer.write(unregistered);
+                }
+                return;
+            } catch (DataAccessException exception) {
+                attempt++;
+                log.error(FLUSH_FAILED, batch.size(), attempt, exception.getMessage());
+                if (!running) {
+                    log.error(HITS_LOST, batch.size());
+                    return;
+                }
+                pause(Math.min(MAX_RETRY_DELAY_MILLIS, flushInterval.toMillis() * attempt));
+            }
+        }
+    }
+
+    private synchronized boolean offerAll(List<HitRecord> hits, boolean registered) {
+        if (queue.remainingCapacity() < hits.size()) {
+            return false;
+        }
+        hits.forEach(hit -> queue.offer(new BufferedHit(hit, registered)));
+        return true;
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            running = false;
+        }
+    }
+
+    private record BufferedHit(HitRecord hit, boolean registered) {
+    }
+}
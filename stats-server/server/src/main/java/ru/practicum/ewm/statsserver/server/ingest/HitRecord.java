@@ -0,0 +1,29 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+
+import java.time.Instant;
+
+/**
+ * Внутреннее представление зафиксированного обращения к эндпоинту, подготовленное к записи в БД
+ *
+ * @param app компонент, обработавший запрос
+ * @param uri на какой эндпоинт был запрос
+ * @param ip с какого IP был выполнен запрос
+ * @param timestamp дата и время выполнения запроса (UTC)
+ */
+public record HitRecord(
+        String app,
+        String uri,
+        String ip,
+        Instant timestamp
+) {
+    /**
+     * IP-адрес в том виде, в котором он хранится в таблице обращений
+     *
+     * @return упакованный IP-адрес
+     */
+    public byte[] packedIp() {
+        return PackedIp.pack(ip);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+/**
+ * Режим приема статистики сервисом
+ */
+public enum IngestMode {
+    /**
+     * Каждое обращение записывается в БД в рамках обработки запроса
+     */
+    SYNC,
+    /**
+     * Обращения помещаются в ограниченный буфер в памяти и записываются в БД пакетами фоновым потоком
+     */
+    ASYNC,
+    /**
+     * Обращения записываются в журнал на диске, отображенный в память, и переносятся в БД пакетами фоновым потоком
+     */
+    JOURNAL
+}
@@ -0,0 +1,100 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Перенос обращений из таблицы прежнего формата "stats-db_legacy", в которую схема БД переименовывает
+ * таблицу обращений с компонентом, эндпоинтом и IP-адресом в текстовом виде. Обращения переносятся
+ * до начала приема запросов порциями в порядке записи: каждая порция записывается {@link HitBatchWriter}
+ * вместе с регистрацией в индексе первых обращений и обновлением агрегатов и удаляется из прежней таблицы
+ * в одной транзакции, поэтому прерванный перенос продолжается при следующем запуске. После переноса
+ * прежняя таблица удаляется.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LegacyHitMigration {
+    static int CHUNK_SIZE = 5000;
+    static String LEGACY_EXISTS = """
+            SELECT COUNT(*)
+            FROM information_schema.tables
+            WHERE table_schema = CURRENT_SCHEMA
+              AND table_name = 'stats-db_legacy'""";
+    static String SELECT_CHUNK = """
+            SELECT id, app, uri, ip, timestamp
+            FROM "stats-db_legacy"
+            ORDER BY id
+            LIMIT ?""";
+    static String DELETE_CHUNK = "DELETE FROM \"stats-db_legacy\" WHERE id <= ?";
+    static String DROP_LEGACY = "DROP TABLE \"stats-db_legacy\"";
+    static String DROP_LEGACY_SEQUENCE = "DROP SEQUENCE IF EXISTS \"stats-db_legacy_id_seq\"";
+    static String MIGRATION_STARTED = "Перенос обращений из таблицы прежнего формата";
+    static String MIGRATION_PROGRESS = "Перенесено обращений: {}";
+    static String MIGRATION_FINISHED = "Перенос обращений завершен, перенесено: {}";
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    HitBatchWriter writer;
+
+    public LegacyHitMigration(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              HitBatchWriter writer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writer = writer;
+    }
+
+    /**
+     * Перенести обращения, если таблица прежнего формата существует
+     */
+    @PostConstruct
+    void migrate() {
+        var exists = jdbcTemplate.queryForObject(LEGACY_EXISTS, Long.class);
+        if (exists == null || exists == 0) {
+            return;
+        }
+        log.info(MIGRATION_STARTED);
+        long total = 0;
+        int moved;
+        while ((moved = migrateChunk()) > 0) {
+            total += moved;
+            log.info(MIGRATION_PROGRESS, total);
+        }
+        jdbcTemplate.execute(DROP_LEGACY);
+        jdbcTemplate.execute(DROP_LEGACY_SEQUENCE);
+        log.info(MIGRATION_FINISHED, total);
+    }
+
+    /**
+     * Перенести очередную порцию обращений
+     *
+     * @return количество перенесенных обращений, 0 - обращений не осталось
+     */
+    private int migrateChunk() {
+        return transactionTemplate.execute(status -> {
+            var lastId = new long[1];
+            var chunk = jdbcTemplate.query(SELECT_CHUNK, (resultSet, rowNum) -> {
+                lastId[0] = resultSet.getLong("id");
+                return new HitRecord(
+                        resultSet.getString("app"),
+                        resultSet.getString("uri"),
+                        resultSet.getString("ip"),
+                        resultSet.getObject("timestamp", LocalDateTime.class).toInstant(ZoneOffset.UTC));
+            }, CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                return 0;
+            }
+            writer.write(chunk);
+            jdbcTemplate.update(DELETE_CHUNK, lastId[0]);
+            return chunk.size();
+        });
+    }
+}
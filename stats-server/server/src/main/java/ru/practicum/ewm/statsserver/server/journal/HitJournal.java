@@ -0,0 +1,365 @@
+package ru.practicum.ewm.statsserver.server.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал приема обращений для режима {@link IngestMode#JOURNAL}: последовательность сегментов фиксированного
+ * размера segment-size в каталоге dir, отображенных в память. Обращение считается принятым, как только его
+ * запись помещена в отображенный сегмент: запись переживает остановку процесса, а при force=true - и сбой
+ * операционной системы. В БД обращения переносит {@link HitJournalApplier}.
+ * <p>
+ * Запись журнала: длина данных (int), CRC32 данных (int), признак регистрации в индексе первых обращений
+ * (byte), затем данные - компонент, эндпоинт и IP в UTF-8 с длиной (unsigned short) и время обращения
+ * в секундах (long). Запись, не поместившаяся в сегмент, начинает следующий, а в конце заполненного
+ * сегмента ставится метка -1. Сегменты, полностью перенесенные в БД, удаляются. Если непримененных
+ * сегментов уже max-segments, новые обращения не принимаются.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitJournal {
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String SEGMENT_NAME = "%020d" + SEGMENT_SUFFIX;
+    static final int HEADER_BYTES = Integer.BYTES * 2 + Byte.BYTES;
+    static final int SEGMENT_END = -1;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+    static final byte REGISTERED = 1;
+    static final String OPENED = "Журнал приема открыт: каталог {}, сегмент {}, позиция записи {}";
+    static final String SEGMENT_DELETED = "Удален перенесенный в БД сегмент журнала {}";
+    final IngestMode mode;
+    final Path dir;
+    final int segmentSize;
+    final int maxSegments;
+    final boolean force;
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition appended = lock.newCondition();
+    MappedByteBuffer writeBuffer;
+    long writeSegment;
+    long firstSegment;
+    volatile JournalPosition written = JournalPosition.START;
+    MappedByteBuffer readBuffer;
+    long readSegment = -1L;
+
+    public HitJournal(
+            @Value("${stats-server.ingest.mode:sync}") IngestMode mode,
+            @Value("${stats-server.journal.dir:journal}") Path dir,
+            @Value("${stats-server.journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${stats-server.journal.max-segments:16}") int maxSegments,
+            @Value("${stats-server.journal.force:false}") boolean force
+    ) {
+        this.mode = mode;
+        this.dir = dir;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize.toBytes());
+        this.maxSegments = maxSegments;
+        this.force = force;
+    }
+
+    /**
+     * Открыть журнал: найти последний сегмент и восстановить позицию записи по последней целой записи.
+     * Оборванная при сбое запись отбрасывается и затирается следующей.
+     */
+    @PostConstruct
+    void open() throws IOException {
+        if (mode != IngestMode.JOURNAL) {
+            return;
+        }
+        Files.createDirectories(dir);
+        var segments = listSegments();
+        firstSegment = segments.isEmpty() ? 0L : segments.first();
+        writeSegment = segments.isEmpty() ? 0L : segments.last();
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        int offset = 0;
+        while (readRecord(writeBuffer, offset) > 0) {
+            offset += HEADER_BYTES + writeBuffer.getInt(offset);
+        }
+        written = new JournalPosition(writeSegment, offset);
+        log.info(OPENED, dir.toAbsolutePath(), writeSegment, offset);
+    }
+
+    @PreDestroy
+    void close() {
+        lock.lock();
+        try {
+            if (writeBuffer != null) {
+                writeBuffer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записать обращения в журнал. Обращения записываются все или ни одного.
+     *
+     * @param hits обращения
+     * @param registered true, если обращения уже зарегистрированы в индексе первых обращений
+     * @return false, если в журнале нет места и обращения не приняты
+     */
+    public boolean append(List<HitRecord> hits, boolean registered) {
+        var records = hits.stream().map(HitJournal::encode).toList();
+        lock.lock();
+        try {
+            if (!hasRoomFor(records)) {
+                return false;
+            }
+            for (var record : records) {
+                if (written.offset() + HEADER_BYTES + record.length > segmentSize) {
+                    roll();
+                }
+                int offset = written.offset();
+                var crc = new CRC32();
+                crc.update(record);
+                writeBuffer.put(offset + HEADER_BYTES, record);
+                writeBuffer.put(offset + Integer.BYTES * 2, registered ? REGISTERED : 0);
+                writeBuffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+                writeBuffer.putInt(offset, record.length);
+                written = new JournalPosition(writeSegment, offset + HEADER_BYTES + record.length);
+            }
+            if (force) {
+                writeBuffer.force();
+            }
+            appended.signalAll();
+            return true;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Прочитать из журнала не более limit обращений, начиная с позиции from. Вызывается только из потока
+     * {@link HitJournalApplier}.
+     *
+     * @param from позиция, с которой начинается чтение
+     * @param limit наибольшее число обращений
+     * @return прочитанные обращения и позиция сразу после них
+     */
+    public JournalBatch read(JournalPosition from, int limit) throws IOException {
+        var registered = new ArrayList<HitRecord>();
+        var unregistered = new ArrayList<HitRecord>();
+        var position = from;
+        var end = written;
+        while (registered.size() + unregistered.size() < limit && position.isBefore(end)) {
+            var buffer = readBuffer(position.segment());
+            int length = readRecord(buffer, position.offset());
+            if (length <= 0) {
+                if (position.segment() == end.segment()) {
+                    throw new IllegalStateException("Поврежденная запись в сегменте журнала " + position.segment()
+                            + " по смещению " + position.offset());
+                }
+                position = new JournalPosition(position.segment() + 1, 0);
+                continue;
+            }
+            var hit = decode(buffer.slice(position.offset() + HEADER_BYTES, length));
+            if (buffer.get(position.offset() + Integer.BYTES * 2) == REGISTERED) {
+                registered.add(hit);
+            } else {
+                unregistered.add(hit);
+            }
+            position = new JournalPosition(position.segment(), position.offset() + HEADER_BYTES + length);
+        }
+        return new JournalBatch(registered, unregistered, position);
+    }
+
+    /**
+     * Дождаться записи в журнал новых обращений после позиции from
+     *
+     * @param from позиция, до которой журнал уже прочитан
+     * @param timeoutNanos наибольшее время ожидания
+     */
+    public void await(JournalPosition from, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (!from.isBefore(written) && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Позиция, с которой следует продолжить перенос в БД. Если сохраненная позиция указывает на уже удаленный
+     * сегмент, перенос продолжается с первого имеющегося; если сегменты после нее утрачены, - с конца журнала.
+     *
+     * @param applied позиция, до которой обращения уже перенесены в БД
+     * @return позиция начала переноса
+     */
+    public JournalPosition recover(JournalPosition applied) {
+        lock.lock();
+        try {
+            if (applied.segment() < firstSegment) {
+                return new JournalPosition(firstSegment, 0);
+            }
+            if (written.isBefore(applied)) {
+                return written;
+            }
+            return applied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удалить сегменты, все обращения которых перенесены в БД
+     *
+     * @param applied позиция, до которой обращения перенесены в БД
+     */
+    public void release(JournalPosition applied) throws IOException {
+        lock.lock();
+        try {
+            while (firstSegment < applied.segment() && firstSegment < writeSegment) {
+                if (readSegment == firstSegment) {
+                    readBuffer = null;
+                    readSegment = -1L;
+                }
+                Files.deleteIfExists(segmentPath(firstSegment));
+                log.info(SEGMENT_DELETED, firstSegment);
+                firstSegment++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasRoomFor(List<byte[]> records) {
+        long segments = writeSegment - firstSegment + 1;
+        int offset = written.offset();
+        for (var record : records) {
+            if (HEADER_BYTES + record.length > segmentSize) {
+                throw new IllegalArgumentException("Запись обращения больше сегмента журнала");
+            }
+            if (offset + HEADER_BYTES + record.length > segmentSize) {
+                segments++;
+                offset = 0;
+            }
+            offset += HEADER_BYTES + record.length;
+        }
+        return segments <= maxSegments;
+    }
+
+    private void roll() throws IOException {
+        int offset = written.offset();
+        if (offset + Integer.BYTES <= segmentSize) {
+            writeBuffer.putInt(offset, SEGMENT_END);
+        }
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        written = new JournalPosition(writeSegment, 0);
+    }
+
+    private MappedByteBuffer readBuffer(long segment) throws IOException {
+        if (readSegment != segment) {
+            readBuffer = map(segment, FileChannel.MapMode.READ_ONLY);
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    /**
+     * Проверить запись по смещению offset
+     *
+     * @return длина данных целой записи; 0, если записи нет, сегмент закончен меткой -1,
+     *         запись оборвана или повреждена
+     */
+    private int readRecord(ByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+            return 0;
+        }
+        var crc = new CRC32();
+        crc.update(buffer.slice(offset + HEADER_BYTES, length));
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES) ? length : 0;
+    }
+
+    private MappedByteBuffer map(long segment, FileChannel.MapMode mapMode) throws IOException {
+        var options = mapMode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE};
+        try (var channel = FileChannel.open(segmentPath(segment), options)) {
+            return channel.map(mapMode, 0, segmentSize);
+        }
+    }
+
+    private TreeSet<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            var segments = new TreeSet<Long>();
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> segments.add(Long.parseLong(
+                            name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+            return segments;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return dir.resolve(SEGMENT_NAME.formatted(segment));
+    }
+
+    private static byte[] encode(HitRecord hit) {
+        var app = utf8(hit.app());
+        var uri = utf8(hit.uri());
+        var ip = utf8(hit.ip());
+        var buffer = ByteBuffer.allocate(Short.BYTES * 3 + app.length + uri.length + ip.length + Long.BYTES);
+        buffer.putShort((short) app.length).put(app);
+        buffer.putShort((short) uri.length).put(uri);
+        buffer.putShort((short) ip.length).put(ip);
+        buffer.putLong(hit.timestamp().getEpochSecond());
+        return buffer.array();
+    }
+
+    private static HitRecord decode(ByteBuffer buffer) {
+        var app = string(buffer);
+        var uri = string(buffer);
+        var ip = string(buffer);
+        return new HitRecord(app, uri, ip, Instant.ofEpochSecond(buffer.getLong()));
+    }
+
+    private static byte[] utf8(String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Слишком длинное значение для записи в журнал");
+        }
+        return bytes;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
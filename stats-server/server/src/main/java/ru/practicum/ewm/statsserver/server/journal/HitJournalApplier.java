@@ -0,0 +1,151 @@
+package ru.practicum.ewm.statsserver.server.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Фоновый перенос обращений из журнала {@link HitJournal} в БД пакетами до batch-size записей. Позиция,
+ * до которой журнал перенесен, хранится в таблице stats_journal_offset и обновляется в той же транзакции,
+ * что и запись пакета, поэтому после перезапуска перенос продолжается ровно с первого неперенесенного
+ * обращения. Пока БД недоступна, пакет повторяется с нарастающей паузой, а обращения копятся в журнале.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitJournalApplier {
+    static final String WORKER_NAME = "stats-journal-applier";
+    static final String SELECT_OFFSET = "SELECT segment, segment_offset FROM stats_journal_offset WHERE id = 1";
+    static final String UPDATE_OFFSET = "UPDATE stats_journal_offset SET segment = ?, segment_offset = ? WHERE id = 1";
+    static final String STARTED = "Запущен перенос журнала приема в БД с позиции {}";
+    static final String APPLY_FAILED = "Ошибка переноса в БД пакета журнала из {} записей, попытка {}: {}";
+    static final String READ_FAILED = "Ошибка чтения журнала приема: {}";
+    static final String STOPPED = "Перенос журнала приема в БД остановлен на позиции {}";
+    static final long MAX_RETRY_DELAY_MILLIS = 5_000L;
+    final HitJournal journal;
+    final HitBatchWriter writer;
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+    final IngestMode mode;
+    final int batchSize;
+    final Duration pollInterval;
+    Thread worker;
+    volatile boolean running;
+    volatile JournalPosition applied;
+
+    public HitJournalApplier(
+            HitJournal journal,
+            HitBatchWriter writer,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${stats-server.ingest.mode:sync}") IngestMode mode,
+            @Value("${stats-server.ingest.batch-size:1000}") int batchSize,
+            @Value("${stats-server.ingest.flush-interval:200ms}") Duration pollInterval
+    ) {
+        this.journal = journal;
+        this.writer = writer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+    }
+
+    @PostConstruct
+    void start() {
+        if (mode != IngestMode.JOURNAL) {
+            return;
+        }
+        var stored = jdbcTemplate.queryForObject(SELECT_OFFSET, (resultSet, rowNum) ->
+                new JournalPosition(resultSet.getLong("segment"), resultSet.getInt("segment_offset")));
+        applied = journal.recover(stored);
+        running = true;
+        worker = new Thread(this::applyLoop, WORKER_NAME);
+        worker.setDaemon(true);
+        worker.start();
+        log.info(STARTED, applied);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.join(pollInterval.plusSeconds(30).toMillis());
+        log.info(STOPPED, applied);
+    }
+
+    /**
+     * Цикл фонового потока переноса. Неперенесенные к остановке обращения остаются в журнале
+     * и переносятся после следующего запуска.
+     */
+    private void applyLoop() {
+        while (running) {
+            try {
+                var batch = journal.read(applied, batchSize);
+                if (batch.isEmpty()) {
+                    applied = batch.end();
+                    journal.await(applied, pollInterval.toNanos());
+                } else if (apply(batch)) {
+                    journal.release(applied);
+                }
+            } catch (InterruptedException exception) {
+                running = false;
+            } catch (IOException exception) {
+                log.error(READ_FAILED, exception.getMessage());
+                pause(MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Записать пакет в БД и сдвинуть сохраненную позицию журнала в одной транзакции. Обращения, принятые
+     * без регистрации в индексе первых обращений, регистрируются при записи.
+     *
+     * @return false, если перенос прерван остановкой сервиса
+     */
+    private boolean apply(JournalBatch batch) {
+        int size = batch.registered().size() + batch.unregistered().size();
+        int attempt = 0;
+        while (running) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    writer.append(batch.registered());
+                    if (!batch.unregistered().isEmpty()) {
+                        writer.write(batch.unregistered());
+                    }
+                    jdbcTemplate.update(UPDATE_OFFSET, batch.end().segment(), batch.end().offset());
+                });
+                applied = batch.end();
+                return true;
+            } catch (DataAccessException exception) {
+                attempt++;
+                log.error(APPLY_FAILED, size, attempt, exception.getMessage());
+                pause(Math.min(MAX_RETRY_DELAY_MILLIS, pollInterval.toMillis() * attempt));
+            }
+        }
+        return false;
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            running = false;
+        }
+    }
+}
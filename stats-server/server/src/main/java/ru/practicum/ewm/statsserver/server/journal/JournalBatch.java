@@ -0,0 +1,19 @@
+package ru.practicum.ewm.statsserver.server.journal;
+
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.util.List;
+
+/**
+ * Прочитанная из журнала порция обращений
+ *
+ * @param registered обращения, уникальность которых уже определена при приеме
+ * @param unregistered обращения, принятые без регистрации в индексе первых обращений из-за недоступности БД
+ * @param end позиция журнала сразу после порции
+ */
+public record JournalBatch(List<HitRecord> registered, List<HitRecord> unregistered, JournalPosition end) {
+
+    public boolean isEmpty() {
+        return registered.isEmpty() && unregistered.isEmpty();
+    }
+}
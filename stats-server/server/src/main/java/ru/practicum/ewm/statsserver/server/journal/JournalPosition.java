@@ -0,0 +1,15 @@
+package ru.practicum.ewm.statsserver.server.journal;
+
+/**
+ * Позиция в журнале приема: номер сегмента и смещение внутри него
+ *
+ * @param segment номер сегмента, сегменты нумеруются подряд
+ * @param offset смещение от начала сегмента в байтах
+ */
+public record JournalPosition(long segment, int offset) {
+    public static final JournalPosition START = new JournalPosition(0L, 0);
+
+    public boolean isBefore(JournalPosition other) {
+        return segment < other.segment || (segment == other.segment && offset < other.offset);
+    }
+}
@@ -0,0 +1,240 @@
+package ru.practicum.ewm.statsserver.server.live;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Рассылка приращений статистики подписчикам живой статистики. Принятые обращения суммируются в общую таблицу
+ * приращений по парам компонент-эндпоинт, раз в interval таблица забирается одним тиком и рассылается всем
+ * подписчикам: подписчики с одинаковым набором эндпоинтов получают один и тот же отфильтрованный список.
+ * Стоимость тика не зависит от количества подписчиков и не требует обращения к БД.
+ * <p>
+ * Тик не ждет подписчиков: приращения ставятся в очередь подписчика на subscriber-queue тиков и отправляются
+ * пулом из senders потоков, по одной отправке на подписчика одновременно. Подписчик, очередь которого
+ * заполнена, не успевает получать приращения и отключается, как и подписчик, получатель которого выбросил
+ * исключение; об отключении сообщается его обработчику.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LiveStatsHub {
+    static String LISTENER_FAILED = "Подписчик живой статистики отключен: {}";
+    static String SLOW_SUBSCRIBER = "Подписчик не успевает получать приращения живой статистики";
+    static String SENDER_NAME = "live-stats-sender-";
+    @Getter
+    Duration interval;
+    int maxSubscribers;
+    int queueCapacity;
+    Executor executor;
+    ConcurrentHashMap<ViewKey, Long> deltas = new ConcurrentHashMap<>();
+    Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    AtomicInteger subscriberCount = new AtomicInteger();
+
+    @Autowired
+    public LiveStatsHub(
+            @Value("${stats-server.live.interval:PT2S}") Duration interval,
+            @Value("${stats-server.live.max-subscribers:1000}") int maxSubscribers,
+            @Value("${stats-server.live.subscriber-queue:4}") int queueCapacity,
+            @Value("${stats-server.live.senders:4}") int senders
+    ) {
+        this(interval, maxSubscribers, queueCapacity, Executors.newFixedThreadPool(senders, new SenderFactory()));
+    }
+
+    LiveStatsHub(Duration interval, int maxSubscribers, int queueCapacity, Executor executor) {
+        this.interval = interval;
+        this.maxSubscribers = maxSubscribers;
+        this.queueCapacity = queueCapacity;
+        this.executor = executor;
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Учесть обращения в приращениях следующего тика. Пока подписчиков нет, обращения не учитываются.
+     *
+     * @param hits обращения
+     */
+    public void add(List<HitRecord> hits) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        hits.stream()
+                .collect(Collectors.groupingBy(hit -> new ViewKey(hit.app(), hit.uri()), Collectors.counting()))
+                .forEach((key, count) -> deltas.merge(key, count, Long::sum));
+    }
+
+    /**
+     * Подписаться на приращения статистики. Получатель вызывается после каждого тика потоком отправки, по одному
+     * вызову за раз и в порядке тиков: с приращениями за прошедший interval или с пустым списком, если обращений
+     * не было. Приращения учитывают обращения, принятые после подписки.
+     *
+     * @param uris список эндпоинтов, null или пустой список - все эндпоинты
+     * @param listener получатель приращений, отсортированных по убыванию количества обращений
+     * @param onDropped обработчик отключения подписчика: исключение получателя или переполнение его очереди
+     * @return отмена подписки или пустое значение, если достигнуто max-subscribers подписчиков
+     */
+    public Optional<Runnable> subscribe(List<String> uris, Consumer<List<ViewStatsDto>> listener,
+                                        Consumer<RuntimeException> onDropped) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return Optional.empty();
+        }
+        var subscriber = new Subscriber(uris == null || uris.isEmpty() ? null : Set.copyOf(uris), listener,
+                onDropped, new ArrayBlockingQueue<>(queueCapacity));
+        subscribers.add(subscriber);
+        return Optional.of(() -> unsubscribe(subscriber));
+    }
+
+    /**
+     * Забрать накопленные приращения и поставить их в очереди подписчиков
+     */
+    @Scheduled(fixedDelayString = "${stats-server.live.interval:PT2S}")
+    public void tick() {
+        var drained = new ArrayList<ViewStatsDto>();
+        for (var key : deltas.keySet()) {
+            var hits = deltas.remove(key);
+            if (hits != null) {
+                drained.add(new ViewStatsDto(key.app(), key.uri(), hits));
+            }
+        }
+        var snapshot = drained.stream()
+                .sorted(Comparator.comparingLong(ViewStatsDto::hits).reversed()
+                        .thenComparing(ViewStatsDto::app)
+                        .thenComparing(ViewStatsDto::uri))
+                .toList();
+        var filtered = new HashMap<Set<String>, List<ViewStatsDto>>();
+        Function<Set<String>, List<ViewStatsDto>> filter = uris -> snapshot.stream()
+                .filter(stats -> uris.contains(stats.uri()))
+                .toList();
+        for (var subscriber : subscribers) {
+            var delta = subscriber.uris == null ? snapshot : filtered.computeIfAbsent(subscriber.uris, filter);
+            if (!subscriber.pending.offer(delta)) {
+                drop(subscriber, new IllegalStateException(SLOW_SUBSCRIBER));
+            } else if (subscriber.isScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(() -> deliver(subscriber));
+                } catch (RejectedExecutionException exception) {
+                    drop(subscriber, exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Отправить подписчику накопленные приращения. Пока отправка выполняется, тик только пополняет очередь,
+     * а приращения, поставленные после ее опустошения, отправляет эта же или следующая отправка.
+     */
+    private void deliver(Subscriber subscriber) {
+        do {
+            List<ViewStatsDto> delta;
+            while ((delta = subscriber.pending.poll()) != null) {
+                if (!subscribers.contains(subscriber)) {
+                    return;
+                }
+                try {
+                    subscriber.listener.accept(delta);
+                } catch (RuntimeException exception) {
+                    drop(subscriber, exception);
+                    return;
+                }
+            }
+            subscriber.isScheduled.set(false);
+        } while (!subscriber.pending.isEmpty() && subscriber.isScheduled.compareAndSet(false, true));
+    }
+
+    private void drop(Subscriber subscriber, RuntimeException exception) {
+        if (!remove(subscriber)) {
+            return;
+        }
+        log.debug(LISTENER_FAILED, exception.getMessage());
+        try {
+            subscriber.onDropped.accept(exception);
+        } catch (RuntimeException dropException) {
+            log.debug(LISTENER_FAILED, dropException.getMessage());
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        remove(subscriber);
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return false;
+        }
+        subscriberCount.decrementAndGet();
+        subscriber.pending.clear();
+        return true;
+    }
+
+    private record ViewKey(String app, String uri) {
+    }
+
+    /**
+     * Подписчик: сравнивается по ссылке, чтобы одинаковые подписки разных клиентов не совпадали
+     */
+    private static final class Subscriber {
+        private final Set<String> uris;
+        private final Consumer<List<ViewStatsDto>> listener;
+        private final Consumer<RuntimeException> onDropped;
+        private final BlockingQueue<List<ViewStatsDto>> pending;
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+        private Subscriber(Set<String> uris, Consumer<List<ViewStatsDto>> listener,
+                           Consumer<RuntimeException> onDropped, BlockingQueue<List<ViewStatsDto>> pending) {
+            this.uris = uris;
+            this.listener = listener;
+            this.onDropped = onDropped;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * Потоки отправки приращений: демоны, чтобы не задерживать остановку сервиса
+     */
+    private static final class SenderFactory implements ThreadFactory {
+        private final AtomicInteger number = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            var thread = new Thread(task, SENDER_NAME + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
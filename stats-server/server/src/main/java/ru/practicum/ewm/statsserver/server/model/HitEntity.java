@@ -13,8 +13,6 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.FieldDefaults;
 
-import java.time.Instant;
-
 @Entity
 @Table(name = "stats-db")
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -27,16 +25,16 @@ public class HitEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
-    @Column(nullable = false)
-    String app;
+    @Column(name = "app_id", nullable = false)
+    Integer appId;
 
-    @Column(nullable = false)
-    String uri;
+    @Column(name = "uri_id", nullable = false)
+    Integer uriId;
 
     @Column(nullable = false)
-    String ip;
+    byte[] ip;
 
-    @Column(nullable = false)
-    Instant timestamp;
+    @Column(name = "epoch_second", nullable = false)
+    Long epochSecond;
 
 }
@@ -1,11 +1,14 @@
 package ru.practicum.ewm.statsserver.server.model;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -13,10 +16,18 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.StatsQueryDto;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
 import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.StatsWebConfig;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Контроллер обработки REST-запросов на API сервиса статистики
@@ -28,10 +39,22 @@ import java.util.List;
 @RestController
 public class StatsController {
     static String POST_REQUEST = "Запрос POST: сохранить статистику {}";
-    static String GET_REQUEST = "Запрос GET: получить статистику по набору критериев: {} {} {} {}";
-    static String OK_RESPONSE = "Ok 200 ";
+    static String POST_BATCH_REQUEST = "Запрос POST: сохранить пакет статистики из {} записей";
+    static String GET_REQUEST = "Запрос GET: получить статистику по набору критериев: {} {} {} {} {}";
+    static String GET_STREAM_REQUEST = "Запрос GET: получить статистику потоком по набору критериев: {} {} {} {} {}";
+    static String POST_STATS_BATCH_REQUEST = "Запрос POST: получить статистику по пакету из {} запросов";
+    static String GET_TIME_SERIES_REQUEST = "Запрос GET: получить временной ряд статистики: {} {} {} {} {}";
+    static String GET_TOP_REQUEST = "Запрос GET: получить {} самых посещаемых эндпоинтов за {}";
+    static String GET_LIVE_REQUEST = "Запрос GET: подписаться на живую статистику по эндпоинтам {}";
+    static String OK_RESPONSE = "Ok 200, записей статистики: {}";
     static String CREATE_RESPONSE = "Created 201 ";
+    static byte LINE_SEPARATOR = '\n';
+    static String LIVE_EVENT = "stats";
+    static String HEARTBEAT = "ping";
+    static String SUBSCRIBED = "subscribed";
+    static long NO_TIMEOUT = -1L;
     StatsService statsService;
+    ObjectMapper objectMapper;
 
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("/hit")
@@ -42,16 +65,160 @@ public class StatsController {
         return isUnique;
     }
 
-    @GetMapping("/stats")
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping("/hits")
+    public List<Boolean> hits(@RequestBody List<@Valid HitDto> dtos) {
+        log.info(POST_BATCH_REQUEST, dtos.size());
+        var uniqueFlags = statsService.addAll(dtos);
+        log.info(CREATE_RESPONSE);
+        return uniqueFlags;
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_JSON_VALUE)
     public List<ViewStatsDto> getStats(
             @RequestParam(value = "start", required = false) String start,
             @RequestParam(value = "end", required = false) String end,
             @RequestParam(value = "uris", required = false) List<String> uris,
-            @RequestParam(value = "unique", defaultValue = "false") boolean unique
+            @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+            @RequestParam(value = "exact", defaultValue = "false") boolean exact
+    ) {
+        log.info(GET_REQUEST, start, end, uris, unique, exact);
+        var result = statsService.getStats(start, end, uris, unique, exact);
+        log.info(OK_RESPONSE, result.size());
+        return result;
+    }
+
+    /**
+     * Получение статистики по пакету запросов за один проход по БД. Ответ - списки статистики
+     * в порядке следования запросов
+     */
+    @PostMapping(value = "/stats/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<List<ViewStatsDto>> getStatsBatch(@RequestBody List<StatsQueryDto> queries) {
+        log.info(POST_STATS_BATCH_REQUEST, queries.size());
+        var result = statsService.getStatsBatch(queries);
+        log.info(OK_RESPONSE, result.stream().mapToInt(List::size).sum());
+        return result;
+    }
+
+    /**
+     * Получение самых посещаемых эндпоинтов за последний период без обращения к БД
+     */
+    @GetMapping("/stats/top")
+    public List<ViewStatsDto> getTop(
+            @RequestParam(value = "k", defaultValue = "10") Integer k,
+            @RequestParam(value = "window", defaultValue = "1h") String window
     ) {
-        log.info(GET_REQUEST, start, end, uris, unique);
-        var result = statsService.getStats(start, end, uris, unique);
-        log.info(OK_RESPONSE.concat(result.toString()));
+        log.info(GET_TOP_REQUEST, k, window);
+        var result = statsService.getTop(k, window);
+        log.info(OK_RESPONSE, result.size());
         return result;
     }
+
+    /**
+     * Подписка на живую статистику потоком Server-Sent Events: первым приходит комментарий subscribed, затем
+     * на каждом тике - событие stats с приращениями {@link ViewStatsDto} за интервал тика или комментарий ping,
+     * если обращений не было. Итоговые значения клиент получает один раз из /stats, запрошенной после комментария
+     * subscribed, и дальше прибавляет к ним приращения: обращения, принятые между подпиской и чтением /stats,
+     * учитываются дважды, но не теряются. В режимах приема async и journal обращения, принятые до подписки и еще
+     * не записанные в БД, не попадают ни в /stats, ни в приращения. Подписчик, не успевающий получать приращения,
+     * отключается с ошибкой.
+     */
+    @GetMapping(value = "/stats/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeLive(@RequestParam(value = "uris", required = false) List<String> uris) {
+        log.info(GET_LIVE_REQUEST, uris);
+        var emitter = new SseEmitter(NO_TIMEOUT);
+        var isAnnounced = new AtomicBoolean();
+        var unsubscribe = statsService.subscribeLive(uris,
+                delta -> sendLive(emitter, isAnnounced, delta.isEmpty() ? SseEmitter.event().comment(HEARTBEAT)
+                        : SseEmitter.event().name(LIVE_EVENT).data(delta, MediaType.APPLICATION_JSON)),
+                emitter::completeWithError);
+        sendLive(emitter, isAnnounced, null);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(exception -> unsubscribe.run());
+        return emitter;
+    }
+
+    /**
+     * Отправить событие живой статистики. Первым событием подписки отправляется комментарий subscribed, даже
+     * если приращения первого тика пришли раньше, чем о подписке было объявлено.
+     *
+     * @param event событие или null, если нужно только объявить о подписке
+     */
+    private static void sendLive(SseEmitter emitter, AtomicBoolean isAnnounced, SseEmitter.SseEventBuilder event) {
+        synchronized (isAnnounced) {
+            try {
+                if (!isAnnounced.getAndSet(true)) {
+                    emitter.send(SseEmitter.event().comment(SUBSCRIBED));
+                }
+                if (event != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+
+    /**
+     * Получение статистики потоком NDJSON (Accept: application/x-ndjson): по одной записи {@link ViewStatsDto}
+     * в строке, записи передаются клиенту по мере чтения из БД без накопления ответа в памяти
+     */
+    @GetMapping(value = "/stats", produces = StatsWebConfig.APPLICATION_NDJSON_VALUE)
+    public void streamStats(
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "uris", required = false) List<String> uris,
+            @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+            @RequestParam(value = "exact", defaultValue = "false") boolean exact,
+            HttpServletResponse response
+    ) throws IOException {
+        log.info(GET_STREAM_REQUEST, start, end, uris, unique, exact);
+        writeNdjson(response, ViewStatsDto.class,
+                action -> statsService.streamStats(start, end, uris, unique, exact, action));
+    }
+
+    /**
+     * Получение временного ряда статистики потоком NDJSON: по одной точке {@link TimeSeriesPointDto}
+     * за корзину minute, hour или day в строке, в порядке корзин
+     */
+    @GetMapping(value = "/stats/timeseries", produces = StatsWebConfig.APPLICATION_NDJSON_VALUE)
+    public void streamTimeSeries(
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "uris", required = false) List<String> uris,
+            @RequestParam(value = "granularity", defaultValue = "hour") String granularity,
+            @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+            HttpServletResponse response
+    ) throws IOException {
+        log.info(GET_TIME_SERIES_REQUEST, start, end, uris, granularity, unique);
+        writeNdjson(response, TimeSeriesPointDto.class,
+                action -> statsService.streamTimeSeries(start, end, uris, granularity, unique, action));
+    }
+
+    /**
+     * Записать в ответ записи, передаваемые источником, по одной в строке по мере их получения
+     */
+    private <T> void writeNdjson(HttpServletResponse response, Class<T> type, Consumer<Consumer<T>> source)
+            throws IOException {
+        var writer = objectMapper.writerFor(type);
+        var count = new long[1];
+        response.setContentType(StatsWebConfig.APPLICATION_NDJSON_VALUE);
+        var output = response.getOutputStream();
+        try {
+            source.accept(dto -> {
+                try {
+                    output.write(writer.writeValueAsBytes(dto));
+                    output.write(LINE_SEPARATOR);
+                    count[0]++;
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        output.flush();
+        log.info(OK_RESPONSE, count[0]);
+    }
 }
\ No newline at end of file
@@ -1,9 +1,13 @@
 package ru.practicum.ewm.statsserver.server.model;
 
 import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.StatsQueryDto;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
 import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс сервиса статистики
@@ -12,5 +16,24 @@ public interface StatsService {
 
     boolean add(HitDto endpointHitEntity);
 
-    List<ViewStatsDto> getStats(String start, String end, List<String> uris, Boolean unique);
+    List<Boolean> addAll(List<HitDto> endpointHits);
+
+    List<Boolean> addHits(List<HitRecord> hits);
+
+    void enqueue(List<HitDto> endpointHits);
+
+    List<ViewStatsDto> getStats(String start, String end, List<String> uris, Boolean unique, Boolean exact);
+
+    void streamStats(String start, String end, List<String> uris, Boolean unique, Boolean exact,
+                     Consumer<ViewStatsDto> action);
+
+    List<List<ViewStatsDto>> getStatsBatch(List<StatsQueryDto> queries);
+
+    void streamTimeSeries(String start, String end, List<String> uris, String granularity, Boolean unique,
+                          Consumer<TimeSeriesPointDto> action);
+
+    List<ViewStatsDto> getTop(Integer k, String window);
+
+    Runnable subscribeLive(List<String> uris, Consumer<List<ViewStatsDto>> listener,
+                           Consumer<RuntimeException> onDropped);
 }
@@ -1,28 +1,85 @@
 package ru.practicum.ewm.statsserver.server.model;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.StatsQueryDto;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
 import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.cache.StatsQueryKey;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.compaction.HitCompaction;
 import ru.practicum.ewm.statsserver.server.exception.AppBadRequestException;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitIngestBuffer;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+import ru.practicum.ewm.statsserver.server.journal.HitJournal;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+import ru.practicum.ewm.statsserver.server.rollup.BatchQuery;
+import ru.practicum.ewm.statsserver.server.rollup.RollupGranularity;
+import ru.practicum.ewm.statsserver.server.rollup.RollupStatsRepository;
+import ru.practicum.ewm.statsserver.server.rollup.StatsQueryPlanner;
+import ru.practicum.ewm.statsserver.server.topk.TopUriTracker;
+import ru.practicum.ewm.statsserver.server.window.SlidingWindowCounters;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Реализация интерфейса {@link StatsService}
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class StatsServiceImpl implements StatsService {
-    private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
-    private final StatsRepository statsRepository;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String UNREGISTERED =
+            "БД недоступна, {} обращений записаны в журнал без определения уникальности: {}";
+    private static final long REGISTER_AVAILABLE = Long.MIN_VALUE;
+    private final RollupStatsRepository rollupStatsRepository;
+    private final HitIngestBuffer ingestBuffer;
+    private final HitBatchWriter hitBatchWriter;
+    private final HitJournal journal;
+    private final FirstSeenIndex firstSeenIndex;
+    private final StatsResultCache resultCache;
+    private final TopUriTracker topUriTracker;
+    private final SlidingWindowCounters windowCounters;
+    private final LiveStatsHub liveStatsHub;
+    private final HitCompaction compaction;
+    private final TransactionTemplate transactionTemplate;
+    @Value("${stats-server.ingest.mode:sync}")
+    private IngestMode ingestMode;
+    @Value("${stats-server.ingest.retry-after:1s}")
+    private Duration retryAfter;
+    @Value("${stats-server.batch-query.max-queries:1000}")
+    private int maxBatchQueries;
+    @Value("${stats-server.batch-query.max-sketches:4096}")
+    private int maxBatchSketches;
+    @Value("${stats-server.journal.register-backoff:5s}")
+    private Duration registerBackoff;
+    private final AtomicLong registerResumeNanos = new AtomicLong(REGISTER_AVAILABLE);
 
     /**
      * Запись в репозиторий информации об успешной обработке обращения по конкретному эндпоинту основного сервиса
@@ -32,16 +89,152 @@ public class StatsServiceImpl implements StatsService {
      */
     @Override
     public boolean add(HitDto hitDto) {
-        var isUniqueHit = !statsRepository.isHitExists(hitDto.uri(), hitDto.ip());
-        statsRepository.save(new HitEntity(0L, hitDto.app(), hitDto.uri(), hitDto.ip(),
-                Instant.from(LocalDateTime.parse(
-                        hitDto.timestamp(),
-                        DateTimeFormatter.ofPattern(DATE_TIME_PATTERN)).atZone(ZoneId.of("UTC")))));
-        return isUniqueHit;
+        return addAll(List.of(hitDto)).get(0);
     }
 
     /**
-     * Метод получает из БД статистику о запросах пользователей
+     * Запись в репозиторий пакета обращений к эндпоинтам основного сервиса. Повторы внутри пакета
+     * учитываются при определении уникальности так же, как если бы обращения пришли по одному.
+     *
+     * @param hitDtos сохраняемая информация
+     * @return признаки уникальности в порядке следования обращений в пакете
+     */
+    @Override
+    public List<Boolean> addAll(List<HitDto> hitDtos) {
+        return addHits(hitDtos.stream().map(StatsServiceImpl::toHitRecord).toList());
+    }
+
+    /**
+     * Запись в репозиторий пакета уже разобранных обращений, например принятых по двоичному протоколу
+     * {@link ru.practicum.ewm.statsserver.server.binary.BinaryIngestServer}
+     *
+     * @param hits обращения
+     * @return признаки уникальности в порядке следования обращений в пакете
+     */
+    @Override
+    public List<Boolean> addHits(List<HitRecord> hits) {
+        var uniqueFlags = switch (ingestMode) {
+            case SYNC -> hitBatchWriter.write(hits);
+            case ASYNC -> addToBuffer(hits);
+            case JOURNAL -> addToJournal(hits);
+        };
+        topUriTracker.add(hits);
+        windowCounters.add(hits);
+        liveStatsHub.add(hits);
+        return uniqueFlags;
+    }
+
+    /**
+     * Прием пакета обращений без ожидания БД: обращения помещаются в журнал или буфер приема, а их уникальность
+     * определяется при записи в БД и клиенту не сообщается. Метод не выполняет блокирующих операций и
+     * используется неблокирующим приемом {@link ru.practicum.ewm.statsserver.server.reactive.ReactiveIngestServer}.
+     *
+     * @param hitDtos сохраняемая информация
+     */
+    @Override
+    public void enqueue(List<HitDto> hitDtos) {
+        var hits = hitDtos.stream().map(StatsServiceImpl::toHitRecord).toList();
+        boolean isAccepted = switch (ingestMode) {
+            case JOURNAL -> journal.append(hits, false);
+            case ASYNC -> ingestBuffer.offerUnregistered(hits);
+            case SYNC -> throw new IllegalStateException("Прием без ожидания БД недоступен в режиме " + ingestMode);
+        };
+        if (!isAccepted) {
+            throw tooManyRequests();
+        }
+        topUriTracker.add(hits);
+        windowCounters.add(hits);
+        liveStatsHub.add(hits);
+    }
+
+    /**
+     * Постановка обращений в буфер пакетной записи. Уникальность определяется сразу по индексу первых
+     * обращений, сами обращения записываются в БД позже. Пакет ставится в буфер целиком или не ставится вовсе;
+     * во втором случае регистрация его обращений в индексе отменяется, чтобы повтор запроса клиентом снова был
+     * признан уникальным.
+     *
+     * @param hits обращения
+     * @return признаки уникальности в порядке следования обращений
+     */
+    private List<Boolean> addToBuffer(List<HitRecord> hits) {
+        if (!ingestBuffer.hasCapacityFor(hits.size())) {
+            throw tooManyRequests();
+        }
+        var uniqueFlags = firstSeenIndex.register(hits);
+        if (!ingestBuffer.offerRegistered(hits)) {
+            forgetUnique(hits, uniqueFlags);
+            throw tooManyRequests();
+        }
+        return uniqueFlags;
+    }
+
+    /**
+     * Запись обращений в журнал приема. Уникальность определяется сразу по индексу первых обращений; если БД
+     * недоступна, обращения все равно принимаются в журнал и регистрируются в индексе при переносе в БД,
+     * а клиенту они возвращаются как неуникальные. После ошибки БД индекс не опрашивается register-backoff,
+     * чтобы прием не ждал недоступную БД на каждом запросе; затем опрос возобновляется одним запросом,
+     * остальные до его успеха продолжают писать в журнал без регистрации. Если в журнале нет места,
+     * регистрация обращений в индексе отменяется.
+     *
+     * @param hits обращения
+     * @return признаки уникальности в порядке следования обращений
+     */
+    private List<Boolean> addToJournal(List<HitRecord> hits) {
+        List<Boolean> uniqueFlags = Collections.nCopies(hits.size(), false);
+        boolean isRegistered = false;
+        if (claimRegister()) {
+            try {
+                uniqueFlags = firstSeenIndex.register(hits);
+                isRegistered = true;
+                registerResumeNanos.set(REGISTER_AVAILABLE);
+            } catch (DataAccessException exception) {
+                log.warn(UNREGISTERED, hits.size(), exception.getMessage());
+                registerResumeNanos.set(System.nanoTime() + registerBackoff.toNanos());
+            }
+        }
+        if (!journal.append(hits, isRegistered)) {
+            forgetUnique(hits, uniqueFlags);
+            throw tooManyRequests();
+        }
+        return uniqueFlags;
+    }
+
+    /**
+     * Проверить, можно ли опрашивать индекс первых обращений. По истечении паузы после ошибки БД право
+     * на пробный опрос получает только один запрос: он сдвигает паузу вперед до своего завершения.
+     *
+     * @return true, если индекс можно опросить
+     */
+    private boolean claimRegister() {
+        long resumeAt = registerResumeNanos.get();
+        if (resumeAt == REGISTER_AVAILABLE) {
+            return true;
+        }
+        long now = System.nanoTime();
+        return now - resumeAt >= 0 && registerResumeNanos.compareAndSet(resumeAt, now + registerBackoff.toNanos());
+    }
+
+    private void forgetUnique(List<HitRecord> hits, List<Boolean> uniqueFlags) {
+        for (int i = 0; i < hits.size(); i++) {
+            if (uniqueFlags.get(i)) {
+                firstSeenIndex.forget(hits.get(i));
+            }
+        }
+    }
+
+    private AppTooManyRequestsException tooManyRequests() {
+        return new AppTooManyRequestsException(
+                this.getClass().getName(),
+                "Сервис перегружен",
+                "Буфер или журнал приема статистики заполнен, повторите запрос позже",
+                retryAfter
+        );
+    }
+
+    /**
+     * Метод получает из БД статистику о запросах пользователей. Статистика всех обращений за период,
+     * начинающийся в последние сутки, считается по счетчикам {@link SlidingWindowCounters} без обращения к БД,
+     * если они покрывают период. Результаты остальных повторяющихся запросов берутся из кеша {@link StatsResultCache}.
      *
      * @param beginArg начало периода статистики (включительно)
      * @param endArg конец периода статистики (включительно)
@@ -49,11 +242,184 @@ public class StatsServiceImpl implements StatsService {
      *            для статистики по всем эндпоинтам
      * @param unique true - подсчитывать все запросы на эндпоинт, false или null - не подсчитывать повторные запросы с
      *               IP адресов, которые уже обращались к эндпоинту
+     * @param exact true - точный подсчет уникальных IP по исходным записям, false или null - оценка по счетчикам
+     *              HyperLogLog с погрешностью около 1%. Для периода, затрагивающего сжатые обращения
+     *              {@link HitCompaction}, всегда возвращается оценка
      * @return список со статистикой
      */
     @Override
-    public List<ViewStatsDto> getStats(String beginArg, String endArg, List<String> uris, Boolean unique) {
-        List<ViewStatsDto> stats;
+    public List<ViewStatsDto> getStats(String beginArg, String endArg, List<String> uris, Boolean unique,
+                                      Boolean exact) {
+        var range = parseRange(beginArg, endArg);
+        var windowStats = getWindowStats(range, uris, unique);
+        if (windowStats.isPresent()) {
+            return windowStats.get();
+        }
+        var key = StatsQueryKey.of(range.begin(), beginArg == null ? null : range.end(), uris, unique, exact);
+        return resultCache.get(key, () -> transactionTemplate.execute(status -> {
+            var stats = new ArrayList<ViewStatsDto>();
+            streamStats(range, uris, unique, exact, stats::add);
+            return stats;
+        }));
+    }
+
+    /**
+     * Метод передает статистику о запросах пользователей по мере чтения из БД, не накапливая ее в памяти.
+     * Статистика всех обращений и точная статистика уникальных IP читаются курсором, уже отсортированными
+     * в БД; оценка уникальных IP строится в памяти по счетчикам корзин и передается после сортировки.
+     * Некорректные параметры запроса обнаруживаются до передачи первой записи.
+     *
+     * @param beginArg начало периода статистики (включительно)
+     * @param endArg конец периода статистики (включительно)
+     * @param uris список эндпоинтов, null или пустой список - для статистики по всем эндпоинтам
+     * @param unique true - подсчитывать только запросы с уникальных IP
+     * @param exact true - точный подсчет уникальных IP по исходным записям
+     * @param action получатель статистики в порядке убывания количества обращений
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(String beginArg, String endArg, List<String> uris, Boolean unique, Boolean exact,
+                            Consumer<ViewStatsDto> action) {
+        var range = parseRange(beginArg, endArg);
+        var windowStats = getWindowStats(range, uris, unique);
+        if (windowStats.isPresent()) {
+            windowStats.get().forEach(action);
+            return;
+        }
+        streamStats(range, uris, unique, exact, action);
+    }
+
+    /**
+     * Метод вычисляет пакет запросов статистики за один проход по БД: периоды разных запросов, которые
+     * пересекаются, читаются один раз. Уникальные IP всегда оцениваются по счетчикам HyperLogLog.
+     * Некорректный запрос в пакете отклоняет весь пакет.
+     *
+     * @param queries запросы с параметрами, как у {@link #getStats(String, String, List, Boolean, Boolean)}
+     * @return статистика каждого запроса в порядке следования запросов
+     */
+    @Override
+    public List<List<ViewStatsDto>> getStatsBatch(List<StatsQueryDto> queries) {
+        if (queries.size() > maxBatchQueries || queries.contains(null)) {
+            throw new AppBadRequestException(
+                    this.getClass().getName(),
+                    "Неверные данные в запросе",
+                    "Пакет должен содержать не более " + maxBatchQueries + " запросов без пустых элементов"
+            );
+        }
+        var watermark = compaction.watermark();
+        var batch = queries.stream()
+                .map(query -> {
+                    var range = parseRange(query.start(), query.end());
+                    var plan = StatsQueryPlanner.plan(range.begin(),
+                            range.end().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1),
+                            watermark.compactedBefore(), watermark.granularity());
+                    return new BatchQuery(plan, query.uris(), Boolean.TRUE.equals(query.unique()));
+                })
+                .toList();
+        return transactionTemplate.execute(status -> rollupStatsRepository.getStatsBatch(batch, maxBatchSketches));
+    }
+
+    /**
+     * Метод передает временной ряд статистики: количество обращений к каждому эндпоинту за каждую корзину
+     * указанной гранулярности, читая готовые агрегаты этой гранулярности. Ряд покрывает корзины целиком,
+     * от корзины, содержащей начало периода, до корзины, содержащей его конец. Некорректные параметры
+     * обнаруживаются до передачи первой точки.
+     *
+     * @param beginArg начало периода (включительно)
+     * @param endArg конец периода (включительно)
+     * @param uris список эндпоинтов, null или пустой список - для всех эндпоинтов
+     * @param granularity гранулярность корзин: minute, hour или day
+     * @param unique true - дополнительно оценивать количество уникальных IP в каждой корзине
+     * @param action получатель точек ряда в порядке корзин
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTimeSeries(String beginArg, String endArg, List<String> uris, String granularity,
+                                 Boolean unique, Consumer<TimeSeriesPointDto> action) {
+        var bucket = parseGranularity(granularity);
+        var range = parseRange(beginArg, endArg);
+        var from = bucket.floor(range.begin());
+        var watermark = compaction.watermark();
+        if (watermark.covers(from) && watermark.granularity().getSeconds() > bucket.getSeconds()) {
+            throw new AppBadRequestException(
+                    this.getClass().getName(),
+                    "Неверные данные в запросе",
+                    "Обращения раньше " + watermark.compactedBefore() + " хранятся только в корзинах гранулярности "
+                            + watermark.granularity().name().toLowerCase(Locale.ROOT)
+            );
+        }
+        rollupStatsRepository.streamTimeSeries(bucket, from, bucket.floor(range.end()).plusSeconds(bucket.getSeconds()),
+                uris, Boolean.TRUE.equals(unique), action);
+    }
+
+    private RollupGranularity parseGranularity(String granularity) {
+        try {
+            return RollupGranularity.valueOf(String.valueOf(granularity).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            throw new AppBadRequestException(
+                    this.getClass().getName(),
+                    "Неверные данные в запросе",
+                    "Гранулярность должна быть одним из значений: minute, hour, day"
+            );
+        }
+    }
+
+    /**
+     * Метод возвращает самые посещаемые эндпоинты за последний период по счетчикам в памяти
+     * {@link TopUriTracker}, не обращаясь к БД. Количество обращений оценочное.
+     *
+     * @param k количество эндпоинтов
+     * @param window период, отсчитываемый от текущего момента, например 15m, 1h или PT6H
+     * @return список со статистикой, отсортированный по убыванию количества обращений
+     */
+    @Override
+    public List<ViewStatsDto> getTop(Integer k, String window) {
+        if (k == null || k < 1 || k > topUriTracker.getCapacity()) {
+            throw new AppBadRequestException(
+                    this.getClass().getName(),
+                    "Неверные данные в запросе",
+                    "Количество эндпоинтов должно быть от 1 до " + topUriTracker.getCapacity()
+            );
+        }
+        Duration period;
+        try {
+            period = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException exception) {
+            period = null;
+        }
+        if (period == null || period.isNegative() || period.isZero()
+                || period.compareTo(topUriTracker.getWindow()) > 0) {
+            throw new AppBadRequestException(
+                    this.getClass().getName(),
+                    "Неверные данные в запросе",
+                    "Период должен быть положительным и не больше " + topUriTracker.getWindow()
+            );
+        }
+        return topUriTracker.top(k, period);
+    }
+
+    /**
+     * Метод подписывает получателя на приращения статистики, которые {@link LiveStatsHub} рассылает всем
+     * подписчикам с общего тика без обращения к БД
+     *
+     * @param uris список эндпоинтов, null или пустой список - все эндпоинты
+     * @param listener получатель приращений за интервал тика, пустой список - обращений не было
+     * @param onDropped обработчик отключения подписчика, не успевающего получать приращения или получатель
+     *                  которого выбросил исключение
+     * @return отмена подписки
+     */
+    @Override
+    public Runnable subscribeLive(List<String> uris, Consumer<List<ViewStatsDto>> listener,
+                                  Consumer<RuntimeException> onDropped) {
+        return liveStatsHub.subscribe(uris, listener, onDropped).orElseThrow(() -> new AppTooManyRequestsException(
+                this.getClass().getName(),
+                "Сервис перегружен",
+                "Достигнуто максимальное количество подписчиков живой статистики, повторите запрос позже",
+                liveStatsHub.getInterval()
+        ));
+    }
+
+    private TimeRange parseRange(String beginArg, String endArg) {
         Instant end;
         Instant begin;
         if ((beginArg == null && endArg != null) || (beginArg != null && endArg == null)) {
@@ -66,12 +432,8 @@ public class StatsServiceImpl implements StatsService {
             begin = Instant.EPOCH;
             end = Instant.now(Clock.systemUTC());
         } else {
-            begin = Instant.from(LocalDateTime
-                    .parse(beginArg, DateTimeFormatter.ofPattern(DATE_TIME_PATTERN))
-                    .atZone(ZoneId.of("UTC")));
-            end = Instant.from(LocalDateTime
-                    .parse(endArg, DateTimeFormatter.ofPattern(DATE_TIME_PATTERN))
-                    .atZone(ZoneId.of("UTC")));
+            begin = parseDateTime(beginArg);
+            end = parseDateTime(endArg);
         }
         if (begin.isAfter(end)) {
             throw new AppBadRequestException(
@@ -81,18 +443,41 @@ public class StatsServiceImpl implements StatsService {
                             " начальная граница не может быть позже конечной"
             );
         }
-        if (uris == null || uris.isEmpty()) {
-            if (unique) {
-                stats = statsRepository.getStatsWithoutUrisAndWithUnique(begin, end);
-            } else {
-                stats = statsRepository.getStatsWithoutUris(begin, end);
-            }
-        } else if (unique) {
-            stats = statsRepository.getStatsWithUrisAndWithUnique(begin, end, uris);
-        } else {
-            stats = statsRepository.getStatsWithUris(begin, end, uris);
+        return new TimeRange(begin, end);
+    }
+
+    private Optional<List<ViewStatsDto>> getWindowStats(TimeRange range, List<String> uris, Boolean unique) {
+        if (Boolean.TRUE.equals(unique)) {
+            return Optional.empty();
+        }
+        return windowCounters.query(range.begin(), range.end(), uris);
+    }
+
+    private void streamStats(TimeRange range, List<String> uris, Boolean unique, Boolean exact,
+                             Consumer<ViewStatsDto> action) {
+        var begin = range.begin();
+        var end = range.end().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        var watermark = compaction.watermark();
+        var plan = StatsQueryPlanner.plan(begin, end, watermark.compactedBefore(), watermark.granularity());
+        if (!Boolean.TRUE.equals(unique)) {
+            rollupStatsRepository.streamStats(plan, uris, action);
+            return;
         }
-        stats.sort(Comparator.comparingLong(ViewStatsDto::hits).reversed());
-        return stats;
+        if (!Boolean.TRUE.equals(exact) || watermark.covers(begin)) {
+            rollupStatsRepository.getUniqueStats(plan, uris).forEach(action);
+            return;
+        }
+        rollupStatsRepository.streamExactUniqueStats(begin, end, uris, action);
+    }
+
+    private static HitRecord toHitRecord(HitDto hitDto) {
+        return new HitRecord(hitDto.app(), hitDto.uri(), hitDto.ip(), parseDateTime(hitDto.timestamp()));
+    }
+
+    private static Instant parseDateTime(String dateTime) {
+        return Instant.from(LocalDateTime.parse(dateTime, DATE_TIME_FORMATTER).atZone(ZoneId.of("UTC")));
+    }
+
+    private record TimeRange(Instant begin, Instant end) {
     }
 }
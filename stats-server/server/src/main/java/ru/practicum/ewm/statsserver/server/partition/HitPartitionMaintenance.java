@@ -0,0 +1,299 @@
+package ru.practicum.ewm.statsserver.server.partition;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.rollup.RollupGranularity;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Обслуживание секций таблицы обращений "stats-db" в PostgreSQL. Таблица секционирована по времени
+ * обращения epoch_second (см. schema-postgresql.sql): запросы за диапазон читают только пересекающиеся с ним секции,
+ * а устаревшие обращения удаляются целыми секциями без массового DELETE и последующей очистки таблицы.
+ * <p>
+ * Задача периодически создает секции на premake шагов вперед и удаляет секции, целиком вышедшие за срок
+ * хранения retention. Обращения, попавшие в секцию по умолчанию из-за отсутствия подходящей секции,
+ * переносятся в создаваемую секцию; секции создаются и для более ранних обращений секции по умолчанию,
+ * еще не вышедших за срок хранения. Несекционированная таблица обращений преобразуется в секционированную:
+ * она становится секцией по умолчанию новой таблицы, созданной по schema-postgresql.sql, и ее обращения
+ * переносятся в секции тем же выполнением задачи.
+ * <p>
+ * Вместе с обращениями за срок хранения выходят построенные по ним данные: строки таблиц агрегатов вместе
+ * со счетчиками уникальных IP и ключи индекса первых обращений. Граница срока хранения выравнивается по началу
+ * секции, чтобы агрегаты удалялись ровно за тот период, обращения которого удалены. На других СУБД таблица
+ * обращений не секционирована, и устаревшие обращения удаляются запросом DELETE.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class HitPartitionMaintenance {
+    static String POSTGRESQL = "PostgreSQL";
+    static String PARTITION_PREFIX = "stats-db_p";
+    static String DEFAULT_PARTITION = "stats-db_default";
+    static String IS_PARTITIONED = """
+            SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('"stats-db"'))""";
+    static String LIST_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = to_regclass('"stats-db"')""";
+    static String LIST_INDEXES = """
+            SELECT indexname FROM pg_indexes WHERE schemaname = current_schema() AND tablename = 'stats-db'""";
+    static String RENAME_INDEX = "ALTER INDEX \"%s\" RENAME TO \"%s\"";
+    static String RENAME_TO_DEFAULT = "ALTER TABLE \"stats-db\" RENAME TO \"stats-db_default\"";
+    static String ATTACH_DEFAULT = "ALTER TABLE \"stats-db\" ATTACH PARTITION \"stats-db_default\" DEFAULT";
+    static String OLDEST_DEFAULT = "SELECT MIN(epoch_second) FROM \"stats-db_default\"";
+    static String CREATE_PARTITION = """
+            CREATE TABLE "%s" (LIKE "stats-db" INCLUDING DEFAULTS INCLUDING CONSTRAINTS)""";
+    static String MOVE_FROM_DEFAULT = """
+            WITH moved AS (
+                DELETE FROM "stats-db_default" WHERE epoch_second >= ? AND epoch_second < ? RETURNING *
+            )
+            INSERT INTO "%s" SELECT * FROM moved""";
+    static String ATTACH_PARTITION = """
+            ALTER TABLE "stats-db" ATTACH PARTITION "%s" FOR VALUES FROM (%d) TO (%d)""";
+    static String DROP_PARTITION = "DROP TABLE \"%s\"";
+    static String PURGE_DEFAULT = "DELETE FROM \"stats-db_default\" WHERE epoch_second < ?";
+    static String PURGE_HITS = "DELETE FROM \"stats-db\" WHERE epoch_second < ?";
+    static String PURGE_BUCKETS = "DELETE FROM %s WHERE bucket < ?";
+    static String CONVERTED = "Таблица \"stats-db\" преобразована в секционированную, прежняя таблица - секция {}";
+    static String PARTITION_CREATED = "Создана секция {}, перенесено обращений из секции по умолчанию: {}";
+    static String PARTITION_DROPPED = "Удалена секция {} с обращениями старше {}";
+    static String DEFAULT_PURGED = "Из секции по умолчанию удалено обращений старше {}: {}";
+    static String HITS_PURGED = "Удалено обращений старше {}: {}";
+    static String BUCKETS_PURGED = "Из таблицы {} удалено агрегатов старше {}: {}";
+    static String FIRST_SEEN_PURGED = "Из индекса первых обращений удалено ключей старше {}: {}";
+    static String MAINTENANCE_FAILED = "Ошибка обслуживания секций таблицы обращений: {}";
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    FirstSeenIndex firstSeenIndex;
+    Resource schema;
+    PartitionInterval interval;
+    int premake;
+    Period retention;
+
+    public HitPartitionMaintenance(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            FirstSeenIndex firstSeenIndex,
+            @Value("classpath:schema-postgresql.sql") Resource schema,
+            @Value("${stats-server.partitions.interval:day}") PartitionInterval interval,
+            @Value("${stats-server.partitions.premake:7}") int premake,
+            @Value("${stats-server.partitions.retention:0d}") Period retention
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.firstSeenIndex = firstSeenIndex;
+        this.schema = schema;
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+    }
+
+    /**
+     * Создать недостающие секции и удалить устаревшие обращения вместе с построенными по ним данными.
+     * Выполняется при запуске и далее с интервалом maintenance-interval.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${stats-server.partitions.maintenance-interval:PT1H}")
+    public void maintain() {
+        try {
+            var today = LocalDate.now(Clock.systemUTC());
+            boolean isPostgresql = isPostgresql();
+            LocalDate cutoff = null;
+            if (!retention.isZero()) {
+                cutoff = isPostgresql ? interval.floor(today.minus(retention)) : today.minus(retention);
+            }
+            if (isPostgresql) {
+                maintainPartitions(today, cutoff);
+            } else if (cutoff != null) {
+                int purged = jdbcTemplate.update(PURGE_HITS, toEpochSecond(cutoff));
+                if (purged > 0) {
+                    log.info(HITS_PURGED, cutoff, purged);
+                }
+            }
+            if (cutoff != null) {
+                purgeDerived(cutoff);
+            }
+        } catch (DataAccessException exception) {
+            log.error(MAINTENANCE_FAILED, exception.getMessage());
+        }
+    }
+
+    private boolean isPostgresql() {
+        var product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return POSTGRESQL.equals(product);
+    }
+
+    /**
+     * Обслужить секции. Граница срока хранения выравнивается по началу секции, так как обращения удаляются
+     * целыми секциями.
+     */
+    private void maintainPartitions(LocalDate today, LocalDate cutoff) {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED, Boolean.class))) {
+            convert();
+        }
+        var existing = new HashSet<>(jdbcTemplate.queryForList(LIST_PARTITIONS, String.class));
+        createPartitions(today, cutoff, existing);
+        if (cutoff != null) {
+            dropExpired(cutoff, existing);
+        }
+    }
+
+    /**
+     * Преобразовать несекционированную таблицу обращений в секционированную в одной транзакции. Прежняя
+     * таблица вместе с индексами переименовывается и подключается секцией по умолчанию к таблице, созданной
+     * скриптом схемы; индексы секционированной таблицы подключают совпадающие индексы прежней таблицы.
+     */
+    private void convert() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (var index : jdbcTemplate.queryForList(LIST_INDEXES, String.class)) {
+                jdbcTemplate.execute(RENAME_INDEX.formatted(index, index + "_default"));
+            }
+            jdbcTemplate.execute(RENAME_TO_DEFAULT);
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(schema), jdbcTemplate.getDataSource());
+            jdbcTemplate.execute(ATTACH_DEFAULT);
+        });
+        log.warn(CONVERTED, DEFAULT_PARTITION);
+    }
+
+    /**
+     * Создать секции от самого раннего обращения секции по умолчанию, не вышедшего за срок хранения, до premake
+     * шагов вперед от текущей. Если часть шага уже покрыта секциями, созданными до смены шага секционирования,
+     * непокрытые сутки шага получают суточные секции: подключить секцию, пересекающую существующую, нельзя.
+     */
+    private void createPartitions(LocalDate today, LocalDate cutoff, Set<String> existing) {
+        var start = interval.floor(today);
+        var oldest = jdbcTemplate.queryForObject(OLDEST_DEFAULT, Long.class);
+        if (oldest != null) {
+            var oldestDate = LocalDate.ofInstant(Instant.ofEpochSecond(oldest), ZoneOffset.UTC);
+            if (cutoff != null && oldestDate.isBefore(cutoff)) {
+                oldestDate = cutoff;
+            }
+            if (oldestDate.isBefore(start)) {
+                start = interval.floor(oldestDate);
+            }
+        }
+        var last = interval.floor(today);
+        for (int i = 0; i < premake; i++) {
+            last = interval.next(last);
+        }
+        while (!start.isAfter(last)) {
+            var end = interval.next(start);
+            if (!overlaps(start, end, existing)) {
+                createPartition(interval, start, existing);
+            } else if (interval != PartitionInterval.DAY) {
+                for (var day = start; day.isBefore(end); day = PartitionInterval.DAY.next(day)) {
+                    if (!overlaps(day, PartitionInterval.DAY.next(day), existing)) {
+                        createPartition(PartitionInterval.DAY, day, existing);
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Создать секцию шага partitionInterval с началом from. Создание, перенос обращений из секции по умолчанию
+     * и подключение секции выполняются в одной транзакции.
+     */
+    private void createPartition(PartitionInterval partitionInterval, LocalDate from, Set<String> existing) {
+        var name = PARTITION_PREFIX + partitionInterval.suffix(from);
+        var to = partitionInterval.next(from);
+        var moved = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute(CREATE_PARTITION.formatted(name));
+            int count = jdbcTemplate.update(MOVE_FROM_DEFAULT.formatted(name), toEpochSecond(from), toEpochSecond(to));
+            jdbcTemplate.execute(ATTACH_PARTITION.formatted(name, toEpochSecond(from), toEpochSecond(to)));
+            return count;
+        });
+        existing.add(name);
+        log.info(PARTITION_CREATED, name, moved);
+    }
+
+    /**
+     * Проверить, пересекается ли полуинтервал [from, to) с какой-либо из секций. Границы секции задаются
+     * суффиксом ее имени, в том числе для секций другого шага.
+     */
+    private static boolean overlaps(LocalDate from, LocalDate to, Set<String> existing) {
+        for (var name : existing) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            var suffix = name.substring(PARTITION_PREFIX.length());
+            var partitionInterval = PartitionInterval.ofSuffix(suffix);
+            if (partitionInterval == null) {
+                continue;
+            }
+            var start = partitionInterval.parse(suffix);
+            if (start.isBefore(to) && from.isBefore(partitionInterval.next(start))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Удалить секции, все обращения которых старше cutoff. Удаление секции не зависит от числа обращений в ней.
+     */
+    private void dropExpired(LocalDate cutoff, Set<String> existing) {
+        for (var name : existing) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            var suffix = name.substring(PARTITION_PREFIX.length());
+            var partitionInterval = PartitionInterval.ofSuffix(suffix);
+            if (partitionInterval == null) {
+                continue;
+            }
+            if (!partitionInterval.next(partitionInterval.parse(suffix)).isAfter(cutoff)) {
+                jdbcTemplate.execute(DROP_PARTITION.formatted(name));
+                log.info(PARTITION_DROPPED, name, cutoff);
+            }
+        }
+        int purged = jdbcTemplate.update(PURGE_DEFAULT, toEpochSecond(cutoff));
+        if (purged > 0) {
+            log.info(DEFAULT_PURGED, cutoff, purged);
+        }
+    }
+
+    /**
+     * Удалить агрегаты со счетчиками уникальных IP за корзины раньше cutoff и ключи индекса первых обращений,
+     * первое обращение которых раньше cutoff
+     */
+    private void purgeDerived(LocalDate cutoff) {
+        var bucket = cutoff.atStartOfDay();
+        for (var granularity : RollupGranularity.values()) {
+            int purged = jdbcTemplate.update(PURGE_BUCKETS.formatted(granularity.getTable()), bucket);
+            if (purged > 0) {
+                log.info(BUCKETS_PURGED, granularity.getTable(), cutoff, purged);
+            }
+        }
+        int purged = firstSeenIndex.purgeExpired(cutoff.atStartOfDay(ZoneOffset.UTC).toInstant());
+        if (purged > 0) {
+            log.info(FIRST_SEEN_PURGED, cutoff, purged);
+        }
+    }
+
+    private static long toEpochSecond(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.practicum.ewm.statsserver.server.partition;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Шаг секционирования таблицы обращений. Секция покрывает полуинтервал [начало, начало следующей секции),
+ * а суффикс ее имени однозначно задает начало, поэтому обслуживание секций не хранит метаданных.
+ */
+@Getter
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public enum PartitionInterval {
+    DAY(ChronoUnit.DAYS, 8),
+    MONTH(ChronoUnit.MONTHS, 6);
+
+    ChronoUnit unit;
+    int suffixLength;
+
+    /**
+     * Начало секции, в которую попадает дата
+     *
+     * @param date дата
+     * @return начало секции
+     */
+    public LocalDate floor(LocalDate date) {
+        return this == MONTH ? date.withDayOfMonth(1) : date;
+    }
+
+    /**
+     * Начало секции, следующей за секцией с указанным началом
+     *
+     * @param start начало секции
+     * @return начало следующей секции
+     */
+    public LocalDate next(LocalDate start) {
+        return start.plus(1, unit);
+    }
+
+    /**
+     * Суффикс имени секции с указанным началом
+     *
+     * @param start начало секции
+     * @return суффикс, например 20240131 для суточной или 202401 для месячной секции
+     */
+    public String suffix(LocalDate start) {
+        return DateTimeFormatter.BASIC_ISO_DATE.format(start).substring(0, suffixLength);
+    }
+
+    /**
+     * Определить шаг секции по суффиксу ее имени. Суффиксы разных шагов различаются длиной, поэтому
+     * секции, созданные до смены шага секционирования, продолжают обслуживаться.
+     *
+     * @param suffix суффикс имени секции
+     * @return шаг секции или null, если суффикс не соответствует ни одному шагу
+     */
+    public static PartitionInterval ofSuffix(String suffix) {
+        if (!suffix.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        for (var interval : values()) {
+            if (suffix.length() == interval.suffixLength) {
+                return interval;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Начало секции по суффиксу ее имени
+     *
+     * @param suffix суффикс имени секции этого шага
+     * @return начало секции
+     */
+    public LocalDate parse(String suffix) {
+        return LocalDate.parse((suffix + "0101").substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+    }
+}
@@ -0,0 +1,190 @@
+package ru.practicum.ewm.statsserver.server.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.server.exception.AppBadRequestException;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.exception.ErrorResponse;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Неблокирующий прием обращений на отдельном порту: HTTP-сервер Reactor Netty с фиксированным числом потоков
+ * worker-threads обслуживает POST /hit и POST /hits, не занимая поток Tomcat и соединение с БД на время
+ * запроса. Тело запроса читается асинхронно, а обращения передаются в {@link StatsService#enqueue} - в журнал
+ * или буфер приема без ожидания записи в БД, поэтому сервер отвечает 202 Accepted без признака уникальности,
+ * а при заполнении журнала или буфера - 429 Too Many Requests с заголовком Retry-After. Запись в журнал может
+ * ждать диск, поэтому разбор и постановка обращений выполняются в пуле boundedElastic, а не в потоках Netty.
+ * <p>
+ * Работает только в режимах приема {@link IngestMode#ASYNC} и {@link IngestMode#JOURNAL}.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ReactiveIngestServer {
+    static final String LOOP_PREFIX = "stats-ingest";
+    static final String BAD_REQUEST = "'400 Bad Request' ";
+    static final String TOO_MANY_REQUESTS = "'429 Too Many Requests' ";
+    static final String INTERNAL_SERVER_ERROR = "'500 Internal Server Error' ";
+    static final String SERVER_FAILURE = "Сбой записи в журнал приема";
+    static final String SEPARATOR = ". ";
+    static final String NOT_READABLE_BODY = "Тело запроса некорректное или отсутствует";
+    static final String STARTED = "Запущен неблокирующий прием статистики: порт {}, потоков {}";
+    static final String STOPPED = "Неблокирующий прием статистики остановлен";
+    static final String REJECTED = "Ответ <= {} {}";
+    static final TypeReference<List<HitDto>> HIT_LIST = new TypeReference<>() {
+    };
+    final StatsService statsService;
+    final ObjectMapper objectMapper;
+    final IngestMode mode;
+    final boolean enabled;
+    final int port;
+    final int workerThreads;
+    LoopResources loops;
+    DisposableServer server;
+
+    public ReactiveIngestServer(
+            StatsService statsService,
+            ObjectMapper objectMapper,
+            @Value("${stats-server.ingest.mode:sync}") IngestMode mode,
+            @Value("${stats-server.reactive.enabled:false}") boolean enabled,
+            @Value("${stats-server.reactive.port:9091}") int port,
+            @Value("${stats-server.reactive.worker-threads:4}") int workerThreads
+    ) {
+        this.statsService = statsService;
+        this.objectMapper = objectMapper;
+        this.mode = mode;
+        this.enabled = enabled;
+        this.port = port;
+        this.workerThreads = workerThreads;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        if (mode == IngestMode.SYNC) {
+            throw new IllegalStateException(
+                    "Неблокирующий прием статистики требует stats-server.ingest.mode=async или journal");
+        }
+        loops = LoopResources.create(LOOP_PREFIX, 1, workerThreads, true);
+        server = HttpServer.create()
+                .port(port)
+                .runOn(loops)
+                .route(routes -> routes
+                        .post("/hit", (request, response) -> ingest(request, response, false))
+                        .post("/hits", (request, response) -> ingest(request, response, true)))
+                .bindNow();
+        log.info(STARTED, server.port(), workerThreads);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (server == null) {
+            return;
+        }
+        server.disposeNow();
+        loops.disposeLater().block();
+        log.info(STOPPED);
+    }
+
+    private Publisher<Void> ingest(HttpServerRequest request, HttpServerResponse response, boolean isBatch) {
+        return request.receive().aggregate().asByteArray()
+                .switchIfEmpty(Mono.error(() -> badRequest(NOT_READABLE_BODY)))
+                .publishOn(Schedulers.boundedElastic())
+                .map(body -> readHits(body, isBatch))
+                .flatMap(hits -> {
+                    statsService.enqueue(hits);
+                    return response.status(HttpResponseStatus.ACCEPTED).send();
+                })
+                .onErrorResume(AppBadRequestException.class, exception -> error(response,
+                        HttpResponseStatus.BAD_REQUEST, BAD_REQUEST,
+                        exception.getError().concat(SEPARATOR).concat(exception.getMessage())))
+                .onErrorResume(DateTimeParseException.class, exception -> error(response,
+                        HttpResponseStatus.BAD_REQUEST, BAD_REQUEST, exception.getMessage()))
+                .onErrorResume(IllegalArgumentException.class, exception -> error(response,
+                        HttpResponseStatus.BAD_REQUEST, BAD_REQUEST, exception.getMessage()))
+                .onErrorResume(UncheckedIOException.class, exception -> error(response,
+                        HttpResponseStatus.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR,
+                        SERVER_FAILURE.concat(SEPARATOR).concat(exception.getMessage())))
+                .onErrorResume(AppTooManyRequestsException.class, exception -> error(
+                        response.header(HttpHeaderNames.RETRY_AFTER,
+                                String.valueOf(Math.max(1L, exception.getRetryAfter().toSeconds()))),
+                        HttpResponseStatus.TOO_MANY_REQUESTS, TOO_MANY_REQUESTS,
+                        exception.getError().concat(SEPARATOR).concat(exception.getMessage())));
+    }
+
+    /**
+     * Разобрать тело запроса и проверить обязательные поля. Формат даты и времени обращения проверяется
+     * при приеме в {@link StatsService#enqueue}.
+     */
+    private List<HitDto> readHits(byte[] body, boolean isBatch) {
+        List<HitDto> hits;
+        try {
+            hits = isBatch
+                    ? objectMapper.readValue(body, HIT_LIST)
+                    : List.of(objectMapper.readValue(body, HitDto.class));
+        } catch (IOException exception) {
+            throw badRequest(NOT_READABLE_BODY);
+        }
+        for (var hit : hits) {
+            if (hit == null || isBlank(hit.app()) || isBlank(hit.uri()) || isBlank(hit.ip())
+                    || isBlank(hit.timestamp())) {
+                throw badRequest("Поля app, uri, ip и timestamp обязательны");
+            }
+        }
+        return hits;
+    }
+
+    private Mono<Void> error(HttpServerResponse response, HttpResponseStatus status, String error, String message) {
+        if (status.code() >= HttpResponseStatus.INTERNAL_SERVER_ERROR.code()) {
+            log.error(REJECTED, error, message);
+        } else {
+            log.warn(REJECTED, error, message);
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new ErrorResponse(error, message));
+        } catch (JsonProcessingException exception) {
+            body = new byte[0];
+        }
+        return response.status(status)
+                .header(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .sendByteArray(Mono.just(body))
+                .then();
+    }
+
+    private AppBadRequestException badRequest(String message) {
+        return new AppBadRequestException(this.getClass().getName(), "Неверные данные в запросе", message);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import java.util.List;
+
+/**
+ * Запрос статистики в пакете запросов, вычисляемом за один проход
+ * {@link RollupStatsRepository#getStatsBatch(List, int)}
+ *
+ * @param plan участки диапазона запроса, построенные {@link StatsQueryPlanner}
+ * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+ * @param unique true - оценка количества уникальных IP, false - количество всех обращений
+ */
+public record BatchQuery(
+        List<QuerySegment> plan,
+        List<String> uris,
+        boolean unique
+) {
+}
@@ -0,0 +1,75 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Инкрементальное обновление таблиц агрегатов при записи обращений. Обращения пакета сначала
+ * суммируются в памяти по корзинам, затем каждая затронутая строка агрегата обновляется один раз:
+ * недостающие строки создаются пустыми, а счетчик обращений увеличивается на прирост одним UPDATE без
+ * предварительного чтения и блокировки строк. Строки обновляются в едином порядке, поэтому одновременная
+ * запись пакетов не приводит к взаимной блокировке.
+ * <p>
+ * Счетчики уникальных IP {@link HyperLogLog} при записи не обновляются: новые строки создаются без счетчика,
+ * уникальные IP по ним считаются из исходных записей, а счетчики заполняет задача сжатия обращений перед
+ * удалением исходных записей.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class HitRollupWriter {
+    static String INSERT_BUCKET = """
+            INSERT INTO %s (app, uri, bucket, hits)
+            VALUES (?, ?, ?, 0)
+            ON CONFLICT DO NOTHING""";
+    static String UPDATE_BUCKET = """
+            UPDATE %s SET hits = hits + ?
+            WHERE app = ? AND uri = ? AND bucket = ?""";
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Учесть пакет обращений во всех таблицах агрегатов. Вызывается в транзакции записи самих обращений.
+     *
+     * @param hits записываемые обращения
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<HitRecord> hits) {
+        for (var granularity : RollupGranularity.values()) {
+            var increments = new TreeMap<RollupKey, Long>(RollupKey.ORDER);
+            for (var hit : hits) {
+                increments.merge(new RollupKey(hit.app(), hit.uri(), granularity.floor(hit.timestamp())), 1L,
+                        Long::sum);
+            }
+            var rows = new ArrayList<>(increments.entrySet());
+            var table = granularity.getTable();
+            jdbcTemplate.batchUpdate(INSERT_BUCKET.formatted(table), rows, rows.size(), (statement, row) -> {
+                statement.setString(1, row.getKey().app());
+                statement.setString(2, row.getKey().uri());
+                statement.setObject(3, toDateTime(row.getKey()));
+            });
+            jdbcTemplate.batchUpdate(UPDATE_BUCKET.formatted(table), rows, rows.size(), (statement, row) -> {
+                statement.setLong(1, row.getValue());
+                statement.setString(2, row.getKey().app());
+                statement.setString(3, row.getKey().uri());
+                statement.setObject(4, toDateTime(row.getKey()));
+            });
+        }
+    }
+
+    private static LocalDateTime toDateTime(RollupKey key) {
+        return LocalDateTime.ofInstant(key.bucket(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import java.time.Instant;
+
+/**
+ * Участок временного диапазона запроса статистики [from, to) и источник, из которого он читается:
+ * таблица агрегатов указанной гранулярности или, если гранулярность не задана, исходные записи обращений
+ *
+ * @param granularity гранулярность агрегатов, null - исходные записи
+ * @param from начало участка (включительно)
+ * @param to конец участка (не включительно)
+ */
+public record QuerySegment(
+        RollupGranularity granularity,
+        Instant from,
+        Instant to
+) {
+    public static QuerySegment raw(Instant from, Instant to) {
+        return new QuerySegment(null, from, to);
+    }
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
@@ -0,0 +1,45 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+/**
+ * Гранулярность предагрегированной статистики: в таблице агрегатов хранится количество обращений
+ * к каждому эндпоинту за каждый интервал (корзину) указанной длины. Границы корзин выровнены по UTC.
+ */
+@Getter
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public enum RollupGranularity {
+    MINUTE("stats_rollup_minute", 60L),
+    HOUR("stats_rollup_hour", 3_600L),
+    DAY("stats_rollup_day", 86_400L);
+
+    String table;
+    long seconds;
+
+    /**
+     * Начало корзины, в которую попадает момент времени
+     *
+     * @param instant момент времени
+     * @return начало корзины
+     */
+    public Instant floor(Instant instant) {
+        return Instant.ofEpochSecond(Math.floorDiv(instant.getEpochSecond(), seconds) * seconds);
+    }
+
+    /**
+     * Ближайшая граница корзины, не раньше указанного момента времени
+     *
+     * @param instant момент времени
+     * @return граница корзины
+     */
+    public Instant ceil(Instant instant) {
+        var floor = floor(instant);
+        return floor.equals(instant) ? floor : floor.plusSeconds(seconds);
+    }
+}
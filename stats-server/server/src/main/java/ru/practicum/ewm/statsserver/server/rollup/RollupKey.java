@@ -0,0 +1,25 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import java.time.Instant;
+import java.util.Comparator;
+
+/**
+ * Ключ строки таблицы агрегатов
+ *
+ * @param app компонент, обработавший запрос
+ * @param uri эндпоинт
+ * @param bucket начало корзины
+ */
+public record RollupKey(
+        String app,
+        String uri,
+        Instant bucket
+) {
+    /**
+     * Единый порядок обновления строк агрегатов, исключающий взаимные блокировки параллельных записей
+     */
+    public static final Comparator<RollupKey> ORDER = Comparator
+            .comparing(RollupKey::bucket)
+            .thenComparing(RollupKey::app)
+            .thenComparing(RollupKey::uri);
+}
@@ -0,0 +1,606 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.sketch.HyperLogLog;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий статистики, читающий диапазон по плану {@link StatsQueryPlanner}. Для подсчета всех обращений
+ * участки плана объединяются в один SQL-запрос, суммирование и сортировка выполняются в БД. Для подсчета
+ * уникальных IP объединяются счетчики {@link HyperLogLog} корзин, а на краях диапазона - IP из исходных записей.
+ * Исходные записи хранят компоненты и эндпоинты в виде идентификаторов {@link StatsDictionary}.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class RollupStatsRepository {
+    static String ROLLUP_PART = """
+            SELECT app, uri, SUM(hits) AS hits
+            FROM %s
+            WHERE bucket >= :from%d AND bucket < :to%d%s
+            GROUP BY app, uri""";
+    static String RAW_PART = """
+            SELECT a.name AS app, u.name AS uri, raw.hits
+            FROM (
+                SELECT app_id, uri_id, COUNT(*) AS hits
+                FROM "stats-db"
+                WHERE epoch_second >= :from%d AND epoch_second < :to%d%s
+                GROUP BY app_id, uri_id
+            ) AS raw
+            JOIN stats_app a ON a.id = raw.app_id
+            JOIN stats_uri u ON u.id = raw.uri_id""";
+    static String SKETCH_QUERY = """
+            SELECT app, uri, bucket, sketch
+            FROM %s
+            WHERE bucket >= :from AND bucket < :to%s""";
+    static String RAW_VISITORS_QUERY = """
+            SELECT DISTINCT app_id, uri_id, ip
+            FROM "stats-db"
+            WHERE epoch_second >= :from AND epoch_second < :to%s""";
+    static String EXACT_UNIQUE_QUERY = """
+            SELECT app_id, uri_id, COUNT(DISTINCT ip) AS visitors
+            FROM "stats-db"
+            WHERE epoch_second >= :from AND epoch_second < :to%s
+            GROUP BY app_id, uri_id
+            ORDER BY visitors DESC, app_id, uri_id""";
+    static String ROLLUP_BATCH_QUERY = """
+            SELECT bucket, app, uri, hits%s
+            FROM %s
+            WHERE bucket >= :from AND bucket < :to%s""";
+    static String RAW_BATCH_QUERY = """
+            SELECT app_id, uri_id, epoch_second, ip
+            FROM "stats-db"
+            WHERE epoch_second >= :from AND epoch_second < :to%s""";
+    static String SKETCH_COLUMN = ", sketch";
+    static String TIME_SERIES_QUERY = """
+            SELECT bucket, app, uri, hits%s
+            FROM %s
+            WHERE bucket >= :from AND bucket < :to%s
+            ORDER BY bucket, app, uri""";
+    static String MISSING_SKETCH_QUERY = """
+            SELECT app, uri, bucket
+            FROM %s
+            WHERE bucket >= :from AND bucket < :to AND sketch IS NULL%s""";
+    static String BUCKET_VISITORS_QUERY = """
+            SELECT app_id, uri_id, epoch_second / %d AS bucket_index, COUNT(DISTINCT ip) AS visitors
+            FROM "stats-db"
+            WHERE epoch_second >= :from AND epoch_second < :to%s
+            GROUP BY app_id, uri_id, epoch_second / %d""";
+    static DateTimeFormatter BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    static String URIS_FILTER = " AND uri IN (:uris)";
+    static String URI_IDS_FILTER = " AND uri_id IN (:uriIds)";
+    static String PARTS_SEPARATOR = "\nUNION ALL\n";
+    static String STATS_QUERY = """
+            SELECT app, uri, SUM(hits) AS total
+            FROM (%s) AS parts
+            GROUP BY app, uri
+            ORDER BY total DESC, app, uri""";
+    NamedParameterJdbcTemplate jdbcTemplate;
+    StatsDictionary dictionary;
+
+    /**
+     * Передать количество обращений к эндпоинтам за диапазон, разбитый на участки. Строки читаются курсором
+     * (размер выборки задан spring.jdbc.template.fetch-size) уже отсортированными в БД и передаются по одной.
+     *
+     * @param plan участки диапазона
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @param action получатель статистики в порядке убывания количества обращений
+     */
+    public void streamStats(List<QuerySegment> plan, List<String> uris, Consumer<ViewStatsDto> action) {
+        if (plan.isEmpty()) {
+            return;
+        }
+        var params = filterParams(uris);
+        if (params == null) {
+            return;
+        }
+        var isFiltered = params.hasValue("uris");
+        var parts = new StringJoiner(PARTS_SEPARATOR);
+        for (int i = 0; i < plan.size(); i++) {
+            var segment = plan.get(i);
+            if (segment.isRaw()) {
+                params.addValue("from" + i, segment.from().getEpochSecond());
+                params.addValue("to" + i, segment.to().getEpochSecond());
+                parts.add(RAW_PART.formatted(i, i, isFiltered ? URI_IDS_FILTER : ""));
+            } else {
+                params.addValue("from" + i, toDateTime(segment.from()));
+                params.addValue("to" + i, toDateTime(segment.to()));
+                parts.add(ROLLUP_PART.formatted(segment.granularity().getTable(), i, i, isFiltered ? URIS_FILTER : ""));
+            }
+        }
+        jdbcTemplate.query(STATS_QUERY.formatted(parts), params, (RowCallbackHandler) resultSet -> action.accept(
+                new ViewStatsDto(resultSet.getString("app"), resultSet.getString("uri"), resultSet.getLong("total"))));
+    }
+
+    /**
+     * Получить оценку количества уникальных IP, обращавшихся к эндпоинтам за диапазон, разбитый на участки.
+     * Корзины, для которых счетчик уникальных IP не сохранен, читаются из исходных записей. Повторный учет
+     * одних и тех же IP счетчиком не меняет оценку, поэтому пересечение участков на результат не влияет.
+     *
+     * @param plan участки диапазона
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @return статистика, отсортированная по убыванию количества уникальных IP
+     */
+    public List<ViewStatsDto> getUniqueStats(List<QuerySegment> plan, List<String> uris) {
+        var filterParams = filterParams(uris);
+        if (filterParams == null) {
+            return new ArrayList<>();
+        }
+        var isFiltered = filterParams.hasValue("uris");
+        var visitors = new HashMap<ViewKey, HyperLogLog>();
+        var rawSegments = new ArrayList<QuerySegment>();
+        for (var segment : plan) {
+            if (segment.isRaw()) {
+                rawSegments.add(segment);
+                continue;
+            }
+            var bucketSeconds = segment.granularity().getSeconds();
+            var params = new MapSqlParameterSource(filterParams.getValues())
+                    .addValue("from", toDateTime(segment.from()))
+                    .addValue("to", toDateTime(segment.to()));
+            jdbcTemplate.query(SKETCH_QUERY.formatted(segment.granularity().getTable(), isFiltered ? URIS_FILTER : ""),
+                    params, (RowCallbackHandler) resultSet -> {
+                        var sketch = resultSet.getBytes("sketch");
+                        if (sketch == null) {
+                            var bucket = resultSet.getObject("bucket", LocalDateTime.class).toInstant(ZoneOffset.UTC);
+                            rawSegments.add(QuerySegment.raw(bucket, bucket.plusSeconds(bucketSeconds)));
+                            return;
+                        }
+                        visitors.computeIfAbsent(
+                                new ViewKey(resultSet.getString("app"), resultSet.getString("uri")),
+                                key -> new HyperLogLog()
+                        ).merge(HyperLogLog.fromBytes(sketch));
+                    });
+        }
+        for (var segment : mergeAdjacent(rawSegments)) {
+            var params = new MapSqlParameterSource(filterParams.getValues())
+                    .addValue("from", segment.from().getEpochSecond())
+                    .addValue("to", segment.to().getEpochSecond());
+            jdbcTemplate.query(RAW_VISITORS_QUERY.formatted(isFiltered ? URI_IDS_FILTER : ""), params,
+                    (RowCallbackHandler) resultSet -> visitors.computeIfAbsent(
+                            new ViewKey(dictionary.app(resultSet.getInt("app_id")),
+                                    dictionary.uri(resultSet.getInt("uri_id"))),
+                            key -> new HyperLogLog()
+                    ).add(resultSet.getBytes("ip")));
+        }
+        return sortByHits(visitors);
+    }
+
+    /**
+     * Передать точное количество уникальных IP, обращавшихся к эндпоинтам за диапазон, подсчитанное по исходным
+     * записям. Строки читаются курсором уже отсортированными в БД и передаются по одной.
+     *
+     * @param from начало диапазона (включительно)
+     * @param to конец диапазона (не включительно)
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @param action получатель статистики в порядке убывания количества уникальных IP
+     */
+    public void streamExactUniqueStats(Instant from, Instant to, List<String> uris, Consumer<ViewStatsDto> action) {
+        var params = filterParams(uris);
+        if (params == null) {
+            return;
+        }
+        params.addValue("from", from.getEpochSecond()).addValue("to", to.getEpochSecond());
+        jdbcTemplate.query(EXACT_UNIQUE_QUERY.formatted(params.hasValue("uris") ? URI_IDS_FILTER : ""), params,
+                (RowCallbackHandler) resultSet -> action.accept(new ViewStatsDto(
+                        dictionary.app(resultSet.getInt("app_id")), dictionary.uri(resultSet.getInt("uri_id")),
+                        resultSet.getLong("visitors"))));
+    }
+
+    /**
+     * Передать временной ряд: количество обращений к каждому эндпоинту за каждую корзину гранулярности
+     * granularity, прочитанное из таблицы агрегатов этой гранулярности. Строки читаются курсором в порядке корзин
+     * и передаются по одной; корзины без обращений пропускаются. Уникальные IP оцениваются по счетчику
+     * {@link HyperLogLog} корзины, а для корзин без счетчика заранее подсчитываются по исходным записям
+     * одним запросом на каждый непрерывный участок таких корзин.
+     *
+     * @param granularity гранулярность корзин
+     * @param from начало первой корзины (включительно)
+     * @param to конец последней корзины (не включительно)
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @param unique true - дополнительно оценивать количество уникальных IP
+     * @param action получатель точек ряда в порядке корзин, затем компонентов и эндпоинтов
+     */
+    public void streamTimeSeries(RollupGranularity granularity, Instant from, Instant to, List<String> uris,
+                                 boolean unique, Consumer<TimeSeriesPointDto> action) {
+        var params = filterParams(uris);
+        if (params == null) {
+            return;
+        }
+        var rawVisitors = unique ? bucketVisitors(granularity, from, to, params) : Map.<BucketKey, Long>of();
+        params.addValue("from", toDateTime(from)).addValue("to", toDateTime(to));
+        var sql = TIME_SERIES_QUERY.formatted(unique ? SKETCH_COLUMN : "", granularity.getTable(),
+                params.hasValue("uris") ? URIS_FILTER : "");
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) resultSet -> {
+            var bucket = resultSet.getObject("bucket", LocalDateTime.class);
+            var app = resultSet.getString("app");
+            var uri = resultSet.getString("uri");
+            Long uniqueHits = null;
+            if (unique) {
+                var sketch = resultSet.getBytes("sketch");
+                uniqueHits = sketch != null ? HyperLogLog.fromBytes(sketch).estimate()
+                        : rawVisitors.getOrDefault(
+                                new BucketKey(app, uri, bucket.toInstant(ZoneOffset.UTC).getEpochSecond()), 0L);
+            }
+            action.accept(new TimeSeriesPointDto(app, uri, bucket.format(BUCKET_FORMATTER),
+                    resultSet.getLong("hits"), uniqueHits));
+        });
+    }
+
+    /**
+     * Подсчитать уникальные IP корзин временного ряда, для которых счетчик уникальных IP не сохранен. Сначала
+     * выбираются такие корзины, затем смыкающиеся корзины объединяются в участки, и каждый участок читается
+     * из исходных записей одним запросом с группировкой по корзинам.
+     *
+     * @param filterParams параметры фильтра по эндпоинтам
+     * @return количество уникальных IP для каждой корзины без счетчика
+     */
+    private Map<BucketKey, Long> bucketVisitors(RollupGranularity granularity, Instant from, Instant to,
+                                                MapSqlParameterSource filterParams) {
+        var isFiltered = filterParams.hasValue("uris");
+        var bucketSeconds = granularity.getSeconds();
+        var missing = new HashSet<BucketKey>();
+        var segments = new ArrayList<QuerySegment>();
+        var params = new MapSqlParameterSource(filterParams.getValues())
+                .addValue("from", toDateTime(from))
+                .addValue("to", toDateTime(to));
+        jdbcTemplate.query(MISSING_SKETCH_QUERY.formatted(granularity.getTable(), isFiltered ? URIS_FILTER : ""),
+                params, (RowCallbackHandler) resultSet -> {
+                    var bucket = resultSet.getObject("bucket", LocalDateTime.class).toInstant(ZoneOffset.UTC);
+                    missing.add(new BucketKey(resultSet.getString("app"), resultSet.getString("uri"),
+                            bucket.getEpochSecond()));
+                    segments.add(QuerySegment.raw(bucket, bucket.plusSeconds(bucketSeconds)));
+                });
+        var visitors = new HashMap<BucketKey, Long>();
+        var sql = BUCKET_VISITORS_QUERY.formatted(bucketSeconds, isFiltered ? URI_IDS_FILTER : "", bucketSeconds);
+        for (var segment : mergeAdjacent(segments)) {
+            var rawParams = new MapSqlParameterSource(filterParams.getValues())
+                    .addValue("from", segment.from().getEpochSecond())
+                    .addValue("to", segment.to().getEpochSecond());
+            jdbcTemplate.query(sql, rawParams, (RowCallbackHandler) resultSet -> {
+                var key = new BucketKey(dictionary.app(resultSet.getInt("app_id")),
+                        dictionary.uri(resultSet.getInt("uri_id")), resultSet.getLong("bucket_index") * bucketSeconds);
+                if (missing.contains(key)) {
+                    visitors.put(key, resultSet.getLong("visitors"));
+                }
+            });
+        }
+        return visitors;
+    }
+
+    /**
+     * Вычислить пакет запросов за один проход. Участки всех запросов группируются по источнику (таблица агрегатов
+     * или исходные записи), пересекающиеся и смыкающиеся участки объединяются в диапазоны {@link SegmentIndex},
+     * и каждый диапазон читается одним SQL-запросом. Каждая прочитанная строка учитывается во всех запросах,
+     * участки которых ее содержат. Поэтому пересекающиеся периоды разных запросов читаются из БД один раз.
+     * Уникальные IP оцениваются так же, как в {@link #getUniqueStats(List, List)}.
+     * <p>
+     * Одинаковые запросы пакета вычисляются один раз и получают общий результат. Счетчики уникальных IP
+     * заводятся на каждую пару запроса и эндпоинта, поэтому их число в пакете ограничено maxSketches: запрос,
+     * которому не хватило счетчиков, освобождает свои и после прохода вычисляется отдельно
+     * {@link #getUniqueStats(List, List)}, как одиночный запрос статистики.
+     *
+     * @param queries запросы
+     * @param maxSketches наибольшее число счетчиков уникальных IP, одновременно заведенных для пакета
+     * @return статистика каждого запроса в порядке следования запросов, отсортированная по убыванию количества
+     */
+    public List<List<ViewStatsDto>> getStatsBatch(List<BatchQuery> queries, int maxSketches) {
+        var distinct = new LinkedHashMap<BatchQuery, Integer>();
+        queries.forEach(query -> distinct.putIfAbsent(query, distinct.size()));
+        if (distinct.size() < queries.size()) {
+            var results = getStatsBatch(new ArrayList<>(distinct.keySet()), maxSketches);
+            return queries.stream().map(query -> results.get(distinct.get(query))).toList();
+        }
+        var budget = new SketchBudget(maxSketches);
+        var states = queries.stream().map(query -> batchState(query, budget)).toList();
+        var rollupSegments = new EnumMap<RollupGranularity, List<QuerySegment>>(RollupGranularity.class);
+        var rollupOwners = new EnumMap<RollupGranularity, List<Integer>>(RollupGranularity.class);
+        var rawSegments = new ArrayList<QuerySegment>();
+        var rawOwners = new ArrayList<Integer>();
+        for (int q = 0; q < queries.size(); q++) {
+            if (states.get(q).isEmpty) {
+                continue;
+            }
+            for (var segment : queries.get(q).plan()) {
+                if (segment.isRaw()) {
+                    rawSegments.add(segment);
+                    rawOwners.add(q);
+                } else {
+                    rollupSegments.computeIfAbsent(segment.granularity(), key -> new ArrayList<>()).add(segment);
+                    rollupOwners.computeIfAbsent(segment.granularity(), key -> new ArrayList<>()).add(q);
+                }
+            }
+        }
+        rollupSegments.forEach((granularity, segments) -> {
+            var index = new SegmentIndex(segments, rollupOwners.get(granularity));
+            for (var range : index.scanRanges(granularity)) {
+                scanRollup(range, index, states, rawSegments, rawOwners);
+            }
+        });
+        var rawIndex = new SegmentIndex(rawSegments, rawOwners);
+        for (var range : rawIndex.scanRanges(null)) {
+            scanRaw(range, rawIndex, states);
+        }
+        var results = new ArrayList<List<ViewStatsDto>>(queries.size());
+        for (int q = 0; q < queries.size(); q++) {
+            var state = states.get(q);
+            results.add(state.isOverflowed ? getUniqueStats(queries.get(q).plan(), queries.get(q).uris())
+                    : state.result());
+        }
+        return results;
+    }
+
+    /**
+     * Прочитать диапазон таблицы агрегатов для пакета запросов. Корзины без счетчика уникальных IP добавляются
+     * к участкам исходных записей с номером запроса -(q + 1): из них запрос q читает только IP.
+     */
+    private void scanRollup(QuerySegment range, SegmentIndex index, List<BatchState> states,
+                            List<QuerySegment> rawSegments, List<Integer> rawOwners) {
+        var involved = index.queriesIn(range);
+        var uris = uriFilter(involved, states);
+        boolean hasUnique = Arrays.stream(involved).anyMatch(q -> states.get(q).unique);
+        var params = new MapSqlParameterSource()
+                .addValue("from", toDateTime(range.from()))
+                .addValue("to", toDateTime(range.to()));
+        if (uris != null) {
+            params.addValue("uris", uris);
+        }
+        var bucketSeconds = range.granularity().getSeconds();
+        jdbcTemplate.query(ROLLUP_BATCH_QUERY.formatted(hasUnique ? SKETCH_COLUMN : "",
+                range.granularity().getTable(), uris != null ? URIS_FILTER : ""), params,
+                (RowCallbackHandler) resultSet -> {
+                    var bucket = resultSet.getObject("bucket", LocalDateTime.class).toInstant(ZoneOffset.UTC);
+                    var key = new ViewKey(resultSet.getString("app"), resultSet.getString("uri"));
+                    var hits = resultSet.getLong("hits");
+                    var sketchBytes = hasUnique ? resultSet.getBytes("sketch") : null;
+                    HyperLogLog sketch = null;
+                    for (int q : index.queriesAt(bucket.getEpochSecond())) {
+                        var state = states.get(q);
+                        if (!state.accepts(key.uri()) || state.isOverflowed) {
+                            continue;
+                        }
+                        if (!state.unique) {
+                            state.addHits(key, hits);
+                        } else if (sketchBytes == null) {
+                            rawSegments.add(QuerySegment.raw(bucket, bucket.plusSeconds(bucketSeconds)));
+                            rawOwners.add(-(q + 1));
+                        } else {
+                            var visitors = state.visitors(key);
+                            if (visitors == null) {
+                                continue;
+                            }
+                            if (sketch == null) {
+                                sketch = HyperLogLog.fromBytes(sketchBytes);
+                            }
+                            visitors.merge(sketch);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Прочитать диапазон исходных записей для пакета запросов: запрос q учитывает обращение и его IP,
+     * запрос с номером -(q + 1) - только IP
+     */
+    private void scanRaw(QuerySegment range, SegmentIndex index, List<BatchState> states) {
+        var involved = Arrays.stream(index.queriesIn(range)).map(q -> q >= 0 ? q : -q - 1).toArray();
+        var uris = uriFilter(involved, states);
+        var params = new MapSqlParameterSource()
+                .addValue("from", range.from().getEpochSecond())
+                .addValue("to", range.to().getEpochSecond());
+        if (uris != null) {
+            params.addValue("uriIds", dictionary.uriIds(uris));
+        }
+        jdbcTemplate.query(RAW_BATCH_QUERY.formatted(uris != null ? URI_IDS_FILTER : ""), params,
+                (RowCallbackHandler) resultSet -> {
+                    var key = new ViewKey(dictionary.app(resultSet.getInt("app_id")),
+                            dictionary.uri(resultSet.getInt("uri_id")));
+                    var ip = resultSet.getBytes("ip");
+                    for (int owner : index.queriesAt(resultSet.getLong("epoch_second"))) {
+                        var state = states.get(owner >= 0 ? owner : -owner - 1);
+                        if (!state.accepts(key.uri()) || state.isOverflowed) {
+                            continue;
+                        }
+                        if (state.unique) {
+                            var visitors = state.visitors(key);
+                            if (visitors != null) {
+                                visitors.add(ip);
+                            }
+                        } else {
+                            state.addHits(key, 1L);
+                        }
+                    }
+                });
+    }
+
+    private BatchState batchState(BatchQuery query, SketchBudget budget) {
+        if (query.uris() == null || query.uris().isEmpty()) {
+            return new BatchState(null, query.unique(), false, budget);
+        }
+        return new BatchState(new HashSet<>(query.uris()), query.unique(), dictionary.uriIds(query.uris()).isEmpty(),
+                budget);
+    }
+
+    /**
+     * Фильтр по эндпоинтам для диапазона, нужного нескольким запросам: объединение их эндпоинтов
+     *
+     * @return эндпоинты или null, если хотя бы одному запросу нужны все эндпоинты
+     */
+    private static Collection<String> uriFilter(int[] involved, List<BatchState> states) {
+        var uris = new HashSet<String>();
+        for (int q : involved) {
+            if (states.get(q).uris == null) {
+                return null;
+            }
+            uris.addAll(states.get(q).uris);
+        }
+        return uris;
+    }
+
+    /**
+     * Параметры фильтра по эндпоинтам: сами эндпоинты для таблиц агрегатов и их идентификаторы в словаре
+     * для таблицы обращений
+     *
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @return параметры фильтра или null, если ни к одному из эндпоинтов не было обращений
+     */
+    private MapSqlParameterSource filterParams(List<String> uris) {
+        var params = new MapSqlParameterSource();
+        if (uris == null || uris.isEmpty()) {
+            return params;
+        }
+        var uriIds = dictionary.uriIds(uris);
+        if (uriIds.isEmpty()) {
+            return null;
+        }
+        return params.addValue("uris", uris).addValue("uriIds", uriIds);
+    }
+
+    /**
+     * Объединить смыкающиеся участки исходных записей, чтобы прочитать их меньшим числом запросов
+     */
+    private static List<QuerySegment> mergeAdjacent(List<QuerySegment> segments) {
+        var sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparing(QuerySegment::from));
+        var merged = new ArrayList<QuerySegment>();
+        for (var segment : sorted) {
+            var last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && !segment.from().isAfter(last.to())) {
+                var to = segment.to().isAfter(last.to()) ? segment.to() : last.to();
+                merged.set(merged.size() - 1, QuerySegment.raw(last.from(), to));
+            } else {
+                merged.add(segment);
+            }
+        }
+        return merged;
+    }
+
+    private static List<ViewStatsDto> sortByHits(Map<ViewKey, HyperLogLog> visitors) {
+        var stats = new ArrayList<ViewStatsDto>(visitors.size());
+        visitors.forEach((key, sketch) -> stats.add(new ViewStatsDto(key.app(), key.uri(), sketch.estimate())));
+        stats.sort(Comparator.comparingLong(ViewStatsDto::hits).reversed()
+                .thenComparing(ViewStatsDto::app)
+                .thenComparing(ViewStatsDto::uri));
+        return stats;
+    }
+
+    private static LocalDateTime toDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private record ViewKey(String app, String uri) {
+    }
+
+    /**
+     * Корзина временного ряда эндпоинта
+     *
+     * @param bucket начало корзины (секунды от начала эпохи Unix)
+     */
+    private record BucketKey(String app, String uri, long bucket) {
+    }
+
+    /**
+     * Остаток счетчиков уникальных IP, которые еще можно завести для пакета
+     */
+    private static final class SketchBudget {
+        private int available;
+
+        private SketchBudget(int available) {
+            this.available = available;
+        }
+    }
+
+    /**
+     * Накапливаемый результат запроса пакета
+     */
+    private static final class BatchState {
+        private final Set<String> uris;
+        private final boolean unique;
+        private final boolean isEmpty;
+        private final SketchBudget budget;
+        private final Map<ViewKey, Long> hits = new HashMap<>();
+        private final Map<ViewKey, HyperLogLog> visitors = new HashMap<>();
+        private boolean isOverflowed;
+
+        /**
+         * @param uris эндпоинты запроса, null - все эндпоинты
+         * @param isEmpty к эндпоинтам запроса не было обращений, читать ничего не нужно
+         * @param budget счетчики уникальных IP, общие для запросов пакета
+         */
+        private BatchState(Set<String> uris, boolean unique, boolean isEmpty, SketchBudget budget) {
+            this.uris = uris;
+            this.unique = unique;
+            this.isEmpty = isEmpty;
+            this.budget = budget;
+        }
+
+        private boolean accepts(String uri) {
+            return uris == null || uris.contains(uri);
+        }
+
+        private void addHits(ViewKey key, long count) {
+            hits.merge(key, count, Long::sum);
+        }
+
+        /**
+         * Счетчик уникальных IP эндпоинта. Если счетчиков пакета не хватает, запрос освобождает свои счетчики
+         * и больше в проходе не участвует.
+         *
+         * @return счетчик или null, если запрос вычисляется отдельно
+         */
+        private HyperLogLog visitors(ViewKey key) {
+            var sketch = visitors.get(key);
+            if (sketch != null || isOverflowed) {
+                return sketch;
+            }
+            if (budget.available == 0) {
+                budget.available += visitors.size();
+                visitors.clear();
+                isOverflowed = true;
+                return null;
+            }
+            budget.available--;
+            sketch = new HyperLogLog();
+            visitors.put(key, sketch);
+            return sketch;
+        }
+
+        private List<ViewStatsDto> result() {
+            if (unique) {
+                return sortByHits(visitors);
+            }
+            var stats = new ArrayList<ViewStatsDto>(hits.size());
+            hits.forEach((key, count) -> stats.add(new ViewStatsDto(key.app(), key.uri(), count)));
+            stats.sort(Comparator.comparingLong(ViewStatsDto::hits).reversed()
+                    .thenComparing(ViewStatsDto::app)
+                    .thenComparing(ViewStatsDto::uri));
+            return stats;
+        }
+    }
+}
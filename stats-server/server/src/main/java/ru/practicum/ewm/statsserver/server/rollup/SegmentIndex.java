@@ -0,0 +1,93 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Индекс участков нескольких запросов, читаемых из одного источника: по моменту времени находит запросы,
+ * участки которых его содержат. Границы всех участков делят ось времени на элементарные интервалы, для каждого
+ * интервала хранится список запросов. Смыкающиеся интервалы, нужные хотя бы одному запросу, образуют диапазоны
+ * чтения: каждый диапазон читается из источника один раз для всех запросов.
+ */
+final class SegmentIndex {
+    private static final int[] NONE = new int[0];
+    private final long[] bounds;
+    private final int[][] queries;
+
+    /**
+     * @param segments участки запросов одного источника
+     * @param owners номера запросов, которым принадлежат участки, в том же порядке
+     */
+    SegmentIndex(List<QuerySegment> segments, List<Integer> owners) {
+        var points = new TreeSet<Long>();
+        for (var segment : segments) {
+            points.add(segment.from().getEpochSecond());
+            points.add(segment.to().getEpochSecond());
+        }
+        bounds = points.stream().mapToLong(Long::longValue).toArray();
+        var lists = new ArrayList<List<Integer>>(Math.max(bounds.length - 1, 0));
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            int first = Arrays.binarySearch(bounds, segments.get(i).from().getEpochSecond());
+            int last = Arrays.binarySearch(bounds, segments.get(i).to().getEpochSecond());
+            for (int interval = first; interval < last; interval++) {
+                lists.get(interval).add(owners.get(i));
+            }
+        }
+        queries = lists.stream()
+                .map(list -> list.stream().distinct().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new);
+    }
+
+    /**
+     * Запросы, участки которых содержат момент времени
+     *
+     * @param epochSecond момент времени в секундах от начала эпохи
+     * @return номера запросов, пустой массив - ни одного
+     */
+    int[] queriesAt(long epochSecond) {
+        int position = Arrays.binarySearch(bounds, epochSecond);
+        int interval = position >= 0 ? position : -position - 2;
+        return interval < 0 || interval >= queries.length ? NONE : queries[interval];
+    }
+
+    /**
+     * Диапазоны, которые нужно прочитать из источника: объединение участков всех запросов
+     *
+     * @return непересекающиеся диапазоны в порядке возрастания
+     */
+    List<QuerySegment> scanRanges(RollupGranularity granularity) {
+        var ranges = new ArrayList<QuerySegment>();
+        int interval = 0;
+        while (interval < queries.length) {
+            if (queries[interval].length == 0) {
+                interval++;
+                continue;
+            }
+            int first = interval;
+            while (interval < queries.length && queries[interval].length > 0) {
+                interval++;
+            }
+            ranges.add(new QuerySegment(granularity,
+                    Instant.ofEpochSecond(bounds[first]), Instant.ofEpochSecond(bounds[interval])));
+        }
+        return ranges;
+    }
+
+    /**
+     * Запросы, которым нужен хотя бы один момент диапазона
+     *
+     * @param range диапазон чтения, полученный из {@link #scanRanges(RollupGranularity)}
+     * @return номера запросов без повторов
+     */
+    int[] queriesIn(QuerySegment range) {
+        int first = Arrays.binarySearch(bounds, range.from().getEpochSecond());
+        int last = Arrays.binarySearch(bounds, range.to().getEpochSecond());
+        return Arrays.stream(queries, first, last).flatMapToInt(Arrays::stream).distinct().toArray();
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планировщик запросов статистики. Разбивает диапазон на участки так, чтобы максимальная его часть
+ * покрывалась самыми крупными выровненными корзинами агрегатов, а исходные записи обращений читались
+ * только на неровных краях диапазона, не покрываемых даже минутными корзинами.
+ * <p>
+ * Часть диапазона до границы сжатия читается только из агрегатов не мельче гранулярности сжатия: исходные
+ * записи и более мелкие агрегаты там уже удалены, поэтому неровные края этой части расширяются до целой корзины.
+ */
+public final class StatsQueryPlanner {
+    private static final RollupGranularity[] LEVELS = {
+            RollupGranularity.DAY, RollupGranularity.HOUR, RollupGranularity.MINUTE
+    };
+
+    private StatsQueryPlanner() {
+    }
+
+    /**
+     * Построить план чтения диапазона [from, to)
+     *
+     * @param from начало диапазона (включительно)
+     * @param to конец диапазона (не включительно)
+     * @return участки диапазона в хронологическом порядке
+     */
+    public static List<QuerySegment> plan(Instant from, Instant to) {
+        return plan(from, to, Instant.EPOCH, null);
+    }
+
+    /**
+     * Построить план чтения диапазона [from, to) с учетом сжатия устаревших обращений
+     *
+     * @param from начало диапазона (включительно)
+     * @param to конец диапазона (не включительно)
+     * @param compactedBefore граница сжатия: более ранние обращения хранятся только в агрегатах
+     * @param compacted гранулярность самых мелких агрегатов, сохраненных до границы сжатия,
+     *                  null - сжатие не выполнялось
+     * @return участки диапазона в хронологическом порядке
+     */
+    public static List<QuerySegment> plan(Instant from, Instant to, Instant compactedBefore,
+                                          RollupGranularity compacted) {
+        var segments = new ArrayList<QuerySegment>();
+        if (compacted == null || !from.isBefore(compactedBefore)) {
+            split(from, to, 0, LEVELS.length, segments);
+            return segments;
+        }
+        var boundary = to.isBefore(compactedBefore) ? to : compactedBefore;
+        split(from, boundary, 0, List.of(LEVELS).indexOf(compacted) + 1, segments);
+        split(boundary, to, 0, LEVELS.length, segments);
+        return segments;
+    }
+
+    private static void split(Instant from, Instant to, int level, int depth, List<QuerySegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == depth) {
+            if (depth == LEVELS.length) {
+                segments.add(QuerySegment.raw(from, to));
+            } else {
+                var finest = LEVELS[depth - 1];
+                segments.add(new QuerySegment(finest, finest.floor(from), finest.ceil(to)));
+            }
+            return;
+        }
+        var granularity = LEVELS[level];
+        var alignedFrom = granularity.ceil(from);
+        var alignedTo = granularity.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            split(from, alignedFrom, level + 1, depth, segments);
+            segments.add(new QuerySegment(granularity, alignedFrom, alignedTo));
+            split(alignedTo, to, level + 1, depth, segments);
+        } else {
+            split(from, to, level + 1, depth, segments);
+        }
+    }
+}
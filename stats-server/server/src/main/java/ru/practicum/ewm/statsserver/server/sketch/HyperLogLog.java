@@ -0,0 +1,309 @@
+package ru.practicum.ewm.statsserver.server.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Вероятностный счетчик количества различных значений HyperLogLog с точностью 2^14 регистров
+ * (стандартная ошибка оценки около 0.8%). Счетчики объединяются без потери точности, поэтому количество
+ * уникальных посетителей за любой диапазон получается объединением счетчиков его корзин.
+ * <p>
+ * Пока заполнено мало регистров, счетчик хранит только их в разреженном виде, что делает
+ * компактными счетчики редко посещаемых эндпоинтов и мелких корзин. Для оценки используется
+ * улучшенный алгоритм О. Эртля, не требующий таблиц поправок смещения.
+ */
+public final class HyperLogLog {
+    public static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final int MAX_RANK = Long.SIZE - PRECISION + 1;
+    private static final int RANK_BITS = 6;
+    private static final int RANK_MASK = (1 << RANK_BITS) - 1;
+    private static final int SPARSE_LIMIT = REGISTERS / 8;
+    private static final int DENSE_BYTES = REGISTERS * RANK_BITS / Byte.SIZE;
+    private static final byte SPARSE_FORMAT = 1;
+    private static final byte DENSE_FORMAT = 2;
+    private static final int HEADER_BYTES = 2;
+    private static final double ALPHA_INF = 1.0 / (2.0 * Math.log(2.0));
+    private int[] sparse = new int[8];
+    private int sparseSize;
+    private byte[] dense;
+
+    /**
+     * Учесть значение
+     *
+     * @param value значение, например IP-адрес посетителя
+     */
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Учесть значение в двоичном виде
+     *
+     * @param value значение, например упакованный IP-адрес посетителя
+     */
+    public void add(byte[] value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Учесть значение по его 64-битному хешу
+     *
+     * @param hash хеш значения
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        update(index, rank);
+    }
+
+    /**
+     * Объединить с другим счетчиком: результат учитывает значения обоих счетчиков
+     *
+     * @param other другой счетчик
+     */
+    public void merge(HyperLogLog other) {
+        if (other.dense != null) {
+            if (dense == null) {
+                toDense();
+            }
+            for (int i = 0; i < REGISTERS; i++) {
+                if (dense[i] < other.dense[i]) {
+                    dense[i] = other.dense[i];
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < other.sparseSize; i++) {
+            update(other.sparse[i] >>> RANK_BITS, other.sparse[i] & RANK_MASK);
+        }
+    }
+
+    /**
+     * Оценить количество различных учтенных значений
+     *
+     * @return оценка количества различных значений
+     */
+    public long estimate() {
+        var histogram = new int[MAX_RANK + 1];
+        if (dense != null) {
+            for (byte rank : dense) {
+                histogram[rank]++;
+            }
+        } else {
+            histogram[0] = REGISTERS - sparseSize;
+            for (int i = 0; i < sparseSize; i++) {
+                histogram[sparse[i] & RANK_MASK]++;
+            }
+        }
+        double registers = REGISTERS;
+        double z = registers * tau(1.0 - histogram[MAX_RANK] / registers);
+        for (int rank = MAX_RANK - 1; rank >= 1; rank--) {
+            z = 0.5 * (z + histogram[rank]);
+        }
+        z += registers * sigma(histogram[0] / registers);
+        return Math.round(ALPHA_INF * registers * registers / z);
+    }
+
+    /**
+     * Сериализовать счетчик для хранения в БД
+     *
+     * @return компактное двоичное представление
+     */
+    public byte[] toBytes() {
+        if (dense != null) {
+            var bytes = new byte[HEADER_BYTES + DENSE_BYTES];
+            bytes[0] = DENSE_FORMAT;
+            bytes[1] = PRECISION;
+            for (int i = 0, j = HEADER_BYTES; i < REGISTERS; i += 4, j += 3) {
+                int packed = dense[i] << 18 | dense[i + 1] << 12 | dense[i + 2] << 6 | dense[i + 3];
+                bytes[j] = (byte) (packed >>> 16);
+                bytes[j + 1] = (byte) (packed >>> 8);
+                bytes[j + 2] = (byte) packed;
+            }
+            return bytes;
+        }
+        var output = new ByteArrayOutputStream(HEADER_BYTES + sparseSize * 3);
+        output.write(SPARSE_FORMAT);
+        output.write(PRECISION);
+        writeVarInt(output, sparseSize);
+        int previous = 0;
+        for (int i = 0; i < sparseSize; i++) {
+            writeVarInt(output, sparse[i] - previous);
+            previous = sparse[i];
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Восстановить счетчик из двоичного представления, полученного {@link #toBytes()}
+     *
+     * @param bytes двоичное представление
+     * @return счетчик
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length < HEADER_BYTES || bytes[1] != PRECISION) {
+            throw new IllegalArgumentException("Неподдерживаемый формат счетчика HyperLogLog");
+        }
+        var sketch = new HyperLogLog();
+        if (bytes[0] == DENSE_FORMAT) {
+            if (bytes.length != HEADER_BYTES + DENSE_BYTES) {
+                throw new IllegalArgumentException("Поврежден счетчик HyperLogLog");
+            }
+            sketch.dense = new byte[REGISTERS];
+            for (int i = 0, j = HEADER_BYTES; i < REGISTERS; i += 4, j += 3) {
+                int packed = (bytes[j] & 0xFF) << 16 | (bytes[j + 1] & 0xFF) << 8 | (bytes[j + 2] & 0xFF);
+                sketch.dense[i] = (byte) (packed >>> 18 & RANK_MASK);
+                sketch.dense[i + 1] = (byte) (packed >>> 12 & RANK_MASK);
+                sketch.dense[i + 2] = (byte) (packed >>> 6 & RANK_MASK);
+                sketch.dense[i + 3] = (byte) (packed & RANK_MASK);
+            }
+            sketch.sparse = null;
+            return sketch;
+        }
+        if (bytes[0] != SPARSE_FORMAT) {
+            throw new IllegalArgumentException("Неподдерживаемый формат счетчика HyperLogLog");
+        }
+        var position = new int[]{HEADER_BYTES};
+        int size = readVarInt(bytes, position);
+        sketch.sparse = new int[Math.max(size, 8)];
+        int entry = 0;
+        for (int i = 0; i < size; i++) {
+            entry += readVarInt(bytes, position);
+            sketch.sparse[i] = entry;
+        }
+        sketch.sparseSize = size;
+        return sketch;
+    }
+
+    /**
+     * 64-битный хеш строки: FNV-1a с финальным перемешиванием из MurmurHash3
+     *
+     * @param value строка
+     * @return хеш
+     */
+    public static long hash(String value) {
+        return hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 64-битный хеш массива байт: FNV-1a с финальным перемешиванием из MurmurHash3
+     *
+     * @param value массив байт
+     * @return хеш
+     */
+    public static long hash(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte symbol : value) {
+            hash ^= symbol & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void update(int index, int rank) {
+        if (dense != null) {
+            if (dense[index] < rank) {
+                dense[index] = (byte) rank;
+            }
+            return;
+        }
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleIndex = sparse[middle] >>> RANK_BITS;
+            if (middleIndex < index) {
+                low = middle + 1;
+            } else if (middleIndex > index) {
+                high = middle - 1;
+            } else {
+                if ((sparse[middle] & RANK_MASK) < rank) {
+                    sparse[middle] = index << RANK_BITS | rank;
+                }
+                return;
+            }
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toDense();
+            dense[index] = (byte) rank;
+            return;
+        }
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, SPARSE_LIMIT));
+        }
+        System.arraycopy(sparse, low, sparse, low + 1, sparseSize - low);
+        sparse[low] = index << RANK_BITS | rank;
+        sparseSize++;
+    }
+
+    private void toDense() {
+        dense = new byte[REGISTERS];
+        for (int i = 0; i < sparseSize; i++) {
+            dense[sparse[i] >>> RANK_BITS] = (byte) (sparse[i] & RANK_MASK);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private static double sigma(double value) {
+        if (value == 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double x = value;
+        double y = 1.0;
+        double z = value;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double value) {
+        if (value == 0.0 || value == 1.0) {
+            return 0.0;
+        }
+        double x = value;
+        double y = 1.0;
+        double z = 1.0 - value;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1.0 - x) * (1.0 - x) * y;
+        } while (z != previous);
+        return z / 3.0;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            output.write(rest & 0x7F | 0x80);
+            rest >>>= 7;
+        }
+        output.write(rest);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = bytes[position[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
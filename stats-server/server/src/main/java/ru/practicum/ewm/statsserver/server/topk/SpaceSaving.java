@@ -0,0 +1,130 @@
+package ru.practicum.ewm.statsserver.server.topk;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Алгоритм Space-Saving (Metwally, Agrawal, El Abbadi) поиска самых частых элементов потока в ограниченной
+ * памяти. Хранится не более capacity счетчиков; новый элемент при заполнении занимает счетчик элемента
+ * с наименьшим значением и наследует это значение как погрешность. Счет любого элемента завышен не более
+ * чем на наименьший счетчик, а элемент, встречавшийся чаще, чем (всего элементов / capacity) раз,
+ * гарантированно присутствует среди счетчиков.
+ * <p>
+ * Счетчики хранятся в двоичной куче по значению, поэтому учет элемента выполняется за O(log capacity).
+ * Класс не потокобезопасен.
+ *
+ * @param <K> тип элемента
+ */
+public final class SpaceSaving<K> {
+    private final int capacity;
+    private final Object[] keys;
+    private final long[] counts;
+    private final Map<K, Integer> positions;
+    private int size;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Количество счетчиков должно быть положительным");
+        }
+        this.capacity = capacity;
+        this.keys = new Object[capacity];
+        this.counts = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Учесть очередное появление элемента
+     *
+     * @param key элемент
+     */
+    public void add(K key) {
+        var position = positions.get(key);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            keys[size] = key;
+            counts[size] = 1;
+            positions.put(key, size);
+            siftUp(size++);
+            return;
+        }
+        positions.remove(keyAt(0));
+        keys[0] = key;
+        counts[0]++;
+        positions.put(key, 0);
+        siftDown(0);
+    }
+
+    /**
+     * Передать все элементы со счетчиками в произвольном порядке
+     *
+     * @param action получатель элемента и его счетчика
+     */
+    public void forEach(ObjLongConsumer<K> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(keyAt(i), counts[i]);
+        }
+    }
+
+    /**
+     * Очистить все счетчики
+     */
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        positions.clear();
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int current = position;
+        while (current > 0) {
+            int parent = (current - 1) / 2;
+            if (counts[parent] <= counts[current]) {
+                return;
+            }
+            swap(parent, current);
+            current = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        int current = position;
+        while (true) {
+            int smallest = current;
+            int left = current * 2 + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == current) {
+                return;
+            }
+            swap(current, smallest);
+            current = smallest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        var key = keys[first];
+        keys[first] = keys[second];
+        keys[second] = key;
+        var count = counts[first];
+        counts[first] = counts[second];
+        counts[second] = count;
+        positions.put(keyAt(first), first);
+        positions.put(keyAt(second), second);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int position) {
+        return (K) keys[position];
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.ewm.statsserver.server.topk;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Самые посещаемые эндпоинты за последние минуты и часы без обращения к БД. Время делится на корзины
+ * длительностью bucket, для каждой из корзин последнего окна window ведется свой {@link SpaceSaving}
+ * на capacity счетчиков. Корзины образуют кольцо: корзина, вышедшая за окно, очищается и используется
+ * для новой. Запрос за последние N минут объединяет счетчики корзин, попавших в этот период.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TopUriTracker {
+    long bucketSeconds;
+    @Getter
+    Duration window;
+    @Getter
+    int capacity;
+    Slot[] slots;
+
+    public TopUriTracker(
+            @Value("${stats-server.top.bucket:1m}") Duration bucket,
+            @Value("${stats-server.top.window:24h}") Duration window,
+            @Value("${stats-server.top.capacity:100}") int capacity
+    ) {
+        this.bucketSeconds = Math.max(1L, bucket.toSeconds());
+        this.window = window;
+        this.capacity = capacity;
+        this.slots = new Slot[(int) Math.max(1L, window.toSeconds() / bucketSeconds)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(capacity);
+        }
+    }
+
+    /**
+     * Учесть обращения. Обращения старше окна и из будущего не учитываются.
+     *
+     * @param hits обращения
+     */
+    public void add(List<HitRecord> hits) {
+        long current = bucketOf(Instant.now(Clock.systemUTC()));
+        for (var hit : hits) {
+            long bucket = bucketOf(hit.timestamp());
+            if (bucket > current || bucket <= current - slots.length) {
+                continue;
+            }
+            var slot = slots[(int) Math.floorMod(bucket, (long) slots.length)];
+            synchronized (slot) {
+                if (slot.bucket < bucket) {
+                    slot.summary.clear();
+                    slot.bucket = bucket;
+                }
+                if (slot.bucket == bucket) {
+                    slot.summary.add(new ViewKey(hit.app(), hit.uri()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Получить самые посещаемые эндпоинты за последний период. Количество обращений оценочное: оно может быть
+     * завышено не более чем на долю обращений, не вошедших в счетчики корзин.
+     *
+     * @param k количество эндпоинтов
+     * @param period период, отсчитываемый от текущего момента, с точностью до длительности корзины
+     * @return статистика, отсортированная по убыванию количества обращений
+     */
+    public List<ViewStatsDto> top(int k, Duration period) {
+        long current = bucketOf(Instant.now(Clock.systemUTC()));
+        long buckets = Math.min(slots.length, Math.max(1L, Math.ceilDiv(period.toSeconds(), bucketSeconds)));
+        var totals = new HashMap<ViewKey, Long>();
+        for (long bucket = current - buckets + 1; bucket <= current; bucket++) {
+            var slot = slots[(int) Math.floorMod(bucket, (long) slots.length)];
+            synchronized (slot) {
+                if (slot.bucket == bucket) {
+                    slot.summary.forEach((key, count) -> totals.merge(key, count, Long::sum));
+                }
+            }
+        }
+        return totals.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<ViewKey, Long>>comparingLong(Map.Entry::getValue)
+                        .reversed()
+                        .thenComparing(entry -> entry.getKey().app())
+                        .thenComparing(entry -> entry.getKey().uri()))
+                .limit(k)
+                .map(entry -> new ViewStatsDto(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .toList();
+    }
+
+    private long bucketOf(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), bucketSeconds);
+    }
+
+    private record ViewKey(String app, String uri) {
+    }
+
+    private static final class Slot {
+        private final SpaceSaving<ViewKey> summary;
+        private long bucket = Long.MIN_VALUE;
+
+        private Slot(int capacity) {
+            this.summary = new SpaceSaving<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.ewm.statsserver.server.window;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счетчики обращений к каждому эндпоинту за последние 5 минут, час и сутки без обращения к БД. Для каждой пары
+ * компонент-эндпоинт ведутся два кольца ячеек: посекундное на 5 минут и поминутное на сутки. Ячейка - одно число
+ * long: старшие 32 бита - номер секунды или минуты, которой она принадлежит, младшие - количество обращений.
+ * Ячейка обновляется CAS без блокировок; ячейка с устаревшим номером при первом обращении новой секунды
+ * или минуты начинается с нуля.
+ * <p>
+ * Счетчики знают только обращения, принятые после запуска сервиса, и только для max-uris эндпоинтов, поэтому
+ * запрос отвечается по ним, лишь когда ответ совпадет с ответом БД: период начинается не раньше запуска и не
+ * раньше последнего обращения, не поместившегося в счетчики, а края периода, не выровненные по минуте, попадают
+ * в посекундное кольцо. Иначе запрос выполняется по БД.
+ * <p>
+ * Счетчики учитывают только обращения, принятые этим экземпляром, поэтому включаются (stats-server.window.enabled)
+ * лишь при единственном экземпляре сервиса: за балансировщиком каждый экземпляр отвечал бы по своей доле обращений.
+ * Обращения учитываются после того, как пакет принят целиком; отклоненный или не записанный пакет в счетчики
+ * не попадает.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class SlidingWindowCounters {
+    static int SECOND_CELLS = 300;
+    static int MINUTE_CELLS = 1_440;
+    static long COUNT_MASK = 0xFFFF_FFFFL;
+    boolean enabled;
+    int maxUris;
+    Clock clock;
+    long startedAt;
+    ConcurrentHashMap<ViewKey, Counters> counters = new ConcurrentHashMap<>();
+    AtomicLong untrackedUntil = new AtomicLong(Long.MIN_VALUE);
+
+    @Autowired
+    public SlidingWindowCounters(
+            @Value("${stats-server.window.enabled:false}") boolean enabled,
+            @Value("${stats-server.window.max-uris:2000}") int maxUris
+    ) {
+        this(enabled, maxUris, Clock.systemUTC());
+    }
+
+    SlidingWindowCounters(boolean enabled, int maxUris, Clock clock) {
+        this.enabled = enabled;
+        this.maxUris = maxUris;
+        this.clock = clock;
+        this.startedAt = clock.instant().getEpochSecond();
+    }
+
+    /**
+     * Учесть обращения. Обращения старше суток не попадают ни в одно окно и пропускаются. Обращения из будущего
+     * не учитываются, и периоды, начинающиеся не позже них, выполняются по БД.
+     *
+     * @param hits обращения
+     */
+    public void add(List<HitRecord> hits) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.instant().getEpochSecond();
+        for (var hit : hits) {
+            long second = hit.timestamp().getEpochSecond();
+            if (second > now) {
+                untrackedUntil.accumulateAndGet(second, Math::max);
+            } else if (Math.floorDiv(second, 60L) > Math.floorDiv(now, 60L) - MINUTE_CELLS) {
+                add(new ViewKey(hit.app(), hit.uri()), second, now);
+            }
+        }
+    }
+
+    /**
+     * Получить статистику за период по счетчикам
+     *
+     * @param begin начало периода (включительно)
+     * @param end конец периода (включительно)
+     * @param uris список эндпоинтов, null или пустой список - статистика по всем эндпоинтам
+     * @return статистика, отсортированная по убыванию количества обращений, или пустое значение, если
+     *         счетчики не покрывают период и запрос нужно выполнить по БД
+     */
+    public Optional<List<ViewStatsDto>> query(Instant begin, Instant end, List<String> uris) {
+        long now = clock.instant().getEpochSecond();
+        long from = begin.getEpochSecond();
+        long to = Math.min(end.getEpochSecond(), now) + 1;
+        long oldestSecond = now - SECOND_CELLS + 1;
+        if (!enabled || from < startedAt || from <= untrackedUntil.get()
+                || Math.floorDiv(from, 60L) <= Math.floorDiv(now, 60L) - MINUTE_CELLS) {
+            return Optional.empty();
+        }
+        long split = from;
+        if (from < oldestSecond) {
+            split = to % 60L == 0 ? to : Math.floorDiv(to, 60L) * 60L;
+            if (from % 60L != 0 || split < oldestSecond && split != to) {
+                return Optional.empty();
+            }
+        }
+        var filter = uris == null || uris.isEmpty() ? null : new HashSet<>(uris);
+        var stats = new ArrayList<ViewStatsDto>();
+        for (var entry : counters.entrySet()) {
+            var key = entry.getKey();
+            if (filter != null && !filter.contains(key.uri())) {
+                continue;
+            }
+            long hits = 0L;
+            for (long minute = from / 60L; minute < split / 60L; minute++) {
+                hits += read(entry.getValue().minutes, minute);
+            }
+            for (long second = Math.max(split, from); second < to; second++) {
+                hits += read(entry.getValue().seconds, second);
+            }
+            if (hits > 0) {
+                stats.add(new ViewStatsDto(key.app(), key.uri(), hits));
+            }
+        }
+        stats.sort(Comparator.comparingLong(ViewStatsDto::hits).reversed()
+                .thenComparing(ViewStatsDto::app)
+                .thenComparing(ViewStatsDto::uri));
+        return Optional.of(stats);
+    }
+
+    /**
+     * Удалить счетчики эндпоинтов, к которым не было обращений больше суток. Счетчики помечаются удаляемыми
+     * и удаляются, только если их никто не обновляет; обновление удаляемых счетчиков повторяется на новых.
+     */
+    @Scheduled(fixedDelayString = "PT1M")
+    public void evictIdle() {
+        long currentMinute = Math.floorDiv(clock.instant().getEpochSecond(), 60L);
+        for (var entry : counters.entrySet()) {
+            var value = entry.getValue();
+            value.retired = true;
+            if (value.writers.get() == 0 && value.isIdle(currentMinute)) {
+                counters.remove(entry.getKey(), value);
+            } else {
+                value.retired = false;
+            }
+        }
+    }
+
+    private void add(ViewKey key, long second, long now) {
+        while (true) {
+            var value = counters.get(key);
+            if (value == null) {
+                if (counters.size() >= maxUris) {
+                    untrackedUntil.accumulateAndGet(now, Math::max);
+                    return;
+                }
+                value = counters.computeIfAbsent(key, viewKey -> new Counters());
+            }
+            value.writers.incrementAndGet();
+            try {
+                if (value.retired) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (second > now - SECOND_CELLS) {
+                    increment(value.seconds, second);
+                }
+                increment(value.minutes, Math.floorDiv(second, 60L));
+                return;
+            } finally {
+                value.writers.decrementAndGet();
+            }
+        }
+    }
+
+    private static void increment(AtomicLongArray cells, long stamp) {
+        int index = (int) Math.floorMod(stamp, (long) cells.length());
+        while (true) {
+            long cell = cells.get(index);
+            long cellStamp = cell >>> 32;
+            long next;
+            if (cellStamp == stamp) {
+                next = cell + 1;
+            } else if (cellStamp < stamp) {
+                next = stamp << 32 | 1L;
+            } else {
+                return;
+            }
+            if (cells.compareAndSet(index, cell, next)) {
+                return;
+            }
+        }
+    }
+
+    private static long read(AtomicLongArray cells, long stamp) {
+        long cell = cells.get((int) Math.floorMod(stamp, (long) cells.length()));
+        return cell >>> 32 == stamp ? cell & COUNT_MASK : 0L;
+    }
+
+    private record ViewKey(String app, String uri) {
+    }
+
+    /**
+     * Кольца ячеек одной пары компонент-эндпоинт
+     */
+    private static final class Counters {
+        private final AtomicLongArray seconds = new AtomicLongArray(SECOND_CELLS);
+        private final AtomicLongArray minutes = new AtomicLongArray(MINUTE_CELLS);
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean retired;
+
+        private boolean isIdle(long currentMinute) {
+            for (int i = 0; i < MINUTE_CELLS; i++) {
+                if (minutes.get(i) >>> 32 > currentMinute - MINUTE_CELLS) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS "stats-db"
+(
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id       INTEGER                                 NOT NULL,
+    uri_id       INTEGER                                 NOT NULL,
+    ip           BYTEA                                   NOT NULL,
+    epoch_second BIGINT                                  NOT NULL,
+    CONSTRAINT "pk_stats-db" PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS "ix_stats-db_epoch_second" ON "stats-db" (epoch_second);
+
+-- Индекс для запросов статистики со списком эндпоинтов (покрывающие индексы - в schema-postgresql.sql)
+CREATE INDEX IF NOT EXISTS "ix_stats-db_uri_id_epoch_second" ON "stats-db" (uri_id, epoch_second);
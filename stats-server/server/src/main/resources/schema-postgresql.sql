@@ -0,0 +1,69 @@
+-- Переход с прежнего формата таблицы обращений (app, uri, ip - текстом, timestamp): прежняя таблица вместе
+-- с секциями, первичным ключом и последовательностью переименовывается в "stats-db_legacy", а ее обращения
+-- переносятся в новую таблицу при запуске сервиса задачей LegacyHitMigration. Индекс первых обращений
+-- и таблицы агрегатов, посчитанные по IP-адресам в текстовом виде, очищаются и заполняются заново при переносе
+DO '
+DECLARE
+    legacy_partition RECORD;
+BEGIN
+    IF NOT EXISTS (SELECT 1
+                   FROM information_schema.columns
+                   WHERE table_schema = current_schema()
+                     AND table_name = ''stats-db''
+                     AND column_name = ''timestamp'') THEN
+        RETURN;
+    END IF;
+    FOR legacy_partition IN SELECT c.relname
+                            FROM pg_inherits i
+                                     JOIN pg_class c ON c.oid = i.inhrelid
+                            WHERE i.inhparent = ''"stats-db"''::regclass
+        LOOP
+            EXECUTE format(''ALTER TABLE %I RENAME TO %I'', legacy_partition.relname,
+                           legacy_partition.relname || ''_legacy'');
+        END LOOP;
+    IF EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ''pk_stats-db'') THEN
+        ALTER TABLE "stats-db" RENAME CONSTRAINT "pk_stats-db" TO "pk_stats-db_legacy";
+    END IF;
+    ALTER TABLE "stats-db" RENAME TO "stats-db_legacy";
+    ALTER SEQUENCE IF EXISTS "stats-db_id_seq" RENAME TO "stats-db_legacy_id_seq";
+    IF to_regclass(''stats_first_seen'') IS NOT NULL THEN
+        TRUNCATE stats_first_seen;
+    END IF;
+    IF to_regclass(''stats_rollup_minute'') IS NOT NULL THEN
+        TRUNCATE stats_rollup_minute, stats_rollup_hour, stats_rollup_day;
+    END IF;
+END';
+
+-- Обращения хранятся компактно: компонент и эндпоинт - идентификаторами словарей stats_app и stats_uri,
+-- IP-адрес - в двоичном виде, время - в секундах от начала эпохи Unix (UTC).
+-- Таблица обращений секционирована по времени обращения: запросы за диапазон читают только нужные секции,
+-- а устаревшие обращения удаляются целыми секциями. Секции создаются заранее задачей HitPartitionMaintenance,
+-- обращения вне созданных секций попадают в секцию по умолчанию и переносятся при создании нужной секции.
+-- Первичный ключ секционированной таблицы обязан включать ключ секционирования
+CREATE SEQUENCE IF NOT EXISTS "stats-db_id_seq";
+
+CREATE TABLE IF NOT EXISTS "stats-db"
+(
+    id           BIGINT DEFAULT nextval('"stats-db_id_seq"') NOT NULL,
+    app_id       INTEGER                                      NOT NULL,
+    uri_id       INTEGER                                      NOT NULL,
+    ip           BYTEA                                        NOT NULL,
+    epoch_second BIGINT                                       NOT NULL,
+    CONSTRAINT "pk_stats-db" PRIMARY KEY (id, epoch_second)
+) PARTITION BY RANGE (epoch_second);
+
+CREATE TABLE IF NOT EXISTS "stats-db_default" PARTITION OF "stats-db" DEFAULT;
+
+-- Индексы для запросов за диапазон времени. Индекс по эндпоинту и времени покрывающий: столбцы, которые
+-- читают запросы статистики со списком эндпоинтов (app_id, ip), хранятся в индексе, и таблица читается
+-- сканированием только индекса. Индекс по времени для запросов по всем эндпоинтам не покрывающий: при IPv4
+-- строка таблицы занимает около 60 байт, запись индекса с включенными app_id, uri_id, ip - около 36 байт,
+-- а только по времени - около 20 байт, поэтому два покрывающих индекса были бы больше самой таблицы.
+-- Запросы по всем эндпоинтам читают из таблицы только строки своего диапазона, найденные по индексу.
+-- Покрывающий индекс по времени прежних версий заменяется обычным
+DROP INDEX IF EXISTS "ix_stats-db_epoch_second_cover";
+
+CREATE INDEX IF NOT EXISTS "ix_stats-db_epoch_second" ON "stats-db" (epoch_second);
+
+CREATE INDEX IF NOT EXISTS "ix_stats-db_uri_id_epoch_second_cover" ON "stats-db" (uri_id, epoch_second)
+    INCLUDE (app_id, ip);
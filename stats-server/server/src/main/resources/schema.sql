@@ -1,9 +1,174 @@
-CREATE TABLE IF NOT EXISTS "stats-db"
-(
-    id        BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-    app       VARCHAR(255)                            NOT NULL,
-    uri       VARCHAR(255)                            NOT NULL,
-    ip        VARCHAR(255)                            NOT NULL,
-    timestamp TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
-    CONSTRAINT "pk_stats-db" PRIMARY KEY (id)
-);
\ No newline at end of file
+-- Таблица обращений "stats-db" создается платформенным скриптом schema-postgresql.sql или schema-h2.sql,
+-- который выполняется перед этим скриптом
+
+-- Словари компонентов и эндпоинтов, на идентификаторы которых ссылается таблица обращений
+CREATE TABLE IF NOT EXISTS stats_app
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_stats_app PRIMARY KEY (id),
+    CONSTRAINT uq_stats_app_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS stats_uri
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_stats_uri PRIMARY KEY (id),
+    CONSTRAINT uq_stats_uri_name UNIQUE (name)
+);
+
+-- Индекс первых обращений: ключ - MD5 от uri без учета регистра и упакованного ip, по нему определяется
+-- уникальность обращения. first_second - время первого обращения (секунды от начала эпохи Unix), по нему ключи
+-- удаляются вместе с обращениями, вышедшими за срок хранения; ключи, записанные до появления столбца, хранят null
+-- и не удаляются
+CREATE TABLE IF NOT EXISTS stats_first_seen
+(
+    visitor_key  UUID NOT NULL,
+    first_second BIGINT,
+    CONSTRAINT pk_stats_first_seen PRIMARY KEY (visitor_key)
+);
+
+ALTER TABLE stats_first_seen ADD COLUMN IF NOT EXISTS first_second BIGINT;
+
+CREATE INDEX IF NOT EXISTS ix_stats_first_seen_first_second ON stats_first_seen (first_second);
+
+-- Позиция журнала приема, до которой обращения перенесены в БД (режим stats-server.ingest.mode=journal)
+CREATE TABLE IF NOT EXISTS stats_journal_offset
+(
+    id             INTEGER NOT NULL,
+    segment        BIGINT  NOT NULL,
+    segment_offset INTEGER NOT NULL,
+    CONSTRAINT pk_stats_journal_offset PRIMARY KEY (id)
+);
+
+INSERT INTO stats_journal_offset (id, segment, segment_offset)
+VALUES (1, 0, 0)
+ON CONFLICT DO NOTHING;
+
+-- Граница сжатия устаревших обращений (задача HitCompaction): обращения раньше compacted_before (секунды
+-- от начала эпохи Unix) хранятся только в агрегатах не мельче granularity, null - сжатие не выполнялось
+CREATE TABLE IF NOT EXISTS stats_compaction
+(
+    id               INTEGER     NOT NULL,
+    compacted_before BIGINT      NOT NULL,
+    granularity      VARCHAR(16),
+    CONSTRAINT pk_stats_compaction PRIMARY KEY (id)
+);
+
+INSERT INTO stats_compaction (id, compacted_before)
+VALUES (1, 0)
+ON CONFLICT DO NOTHING;
+
+-- Таблицы агрегатов. Первичный ключ (app, uri, bucket) обслуживает обновление строк при записи обращений,
+-- а запросы статистики за диапазон корзин - индексы по корзине и по эндпоинту и корзине. Количество обращений
+-- в ключ индексов не входит: оно меняется при каждой записи, и его обновление перемещало бы запись в индексе
+CREATE TABLE IF NOT EXISTS stats_rollup_minute
+(
+    app    VARCHAR(255)                NOT NULL,
+    uri    VARCHAR(255)                NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_stats_rollup_minute PRIMARY KEY (app, uri, bucket)
+);
+
+ALTER TABLE stats_rollup_minute ADD COLUMN IF NOT EXISTS sketch BYTEA;
+
+DROP INDEX IF EXISTS ix_stats_rollup_minute_bucket;
+
+DROP INDEX IF EXISTS ix_stats_rollup_minute_uri_bucket;
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_minute_bucket_app_uri ON stats_rollup_minute (bucket, app, uri);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_minute_uri_bucket_app ON stats_rollup_minute (uri, bucket, app);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_hour
+(
+    app    VARCHAR(255)                NOT NULL,
+    uri    VARCHAR(255)                NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_stats_rollup_hour PRIMARY KEY (app, uri, bucket)
+);
+
+ALTER TABLE stats_rollup_hour ADD COLUMN IF NOT EXISTS sketch BYTEA;
+
+DROP INDEX IF EXISTS ix_stats_rollup_hour_bucket;
+
+DROP INDEX IF EXISTS ix_stats_rollup_hour_uri_bucket;
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_hour_bucket_app_uri ON stats_rollup_hour (bucket, app, uri);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_hour_uri_bucket_app ON stats_rollup_hour (uri, bucket, app);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_day
+(
+    app    VARCHAR(255)                NOT NULL,
+    uri    VARCHAR(255)                NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_stats_rollup_day PRIMARY KEY (app, uri, bucket)
+);
+
+ALTER TABLE stats_rollup_day ADD COLUMN IF NOT EXISTS sketch BYTEA;
+
+DROP INDEX IF EXISTS ix_stats_rollup_day_bucket;
+
+DROP INDEX IF EXISTS ix_stats_rollup_day_uri_bucket;
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_day_bucket_app_uri ON stats_rollup_day (bucket, app, uri);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_day_uri_bucket_app ON stats_rollup_day (uri, bucket, app);
+
+-- Счетчики уникальных IP строятся задачей сжатия только для корзин до границы сжатия. Счетчики более поздних
+-- корзин, построенные при записи обращений прежними версиями, перестали бы обновляться, поэтому очищаются:
+-- уникальные IP по таким корзинам считаются из исходных записей
+UPDATE stats_rollup_minute SET sketch = NULL
+WHERE sketch IS NOT NULL
+  AND bucket >= (SELECT TIMESTAMP '1970-01-01 00:00:00' + compacted_before * INTERVAL '1' SECOND
+                 FROM stats_compaction
+                 WHERE id = 1);
+
+UPDATE stats_rollup_hour SET sketch = NULL
+WHERE sketch IS NOT NULL
+  AND bucket >= (SELECT TIMESTAMP '1970-01-01 00:00:00' + compacted_before * INTERVAL '1' SECOND
+                 FROM stats_compaction
+                 WHERE id = 1);
+
+UPDATE stats_rollup_day SET sketch = NULL
+WHERE sketch IS NOT NULL
+  AND bucket >= (SELECT TIMESTAMP '1970-01-01 00:00:00' + compacted_before * INTERVAL '1' SECOND
+                 FROM stats_compaction
+                 WHERE id = 1);
+
+-- Первичное заполнение агрегатов по уже накопленным обращениям: выполняется, только пока таблица агрегатов пуста.
+-- Счетчики уникальных IP (sketch) для таких строк не заполняются, уникальные IP по ним считаются из исходных записей
+INSERT INTO stats_rollup_minute (app, uri, bucket, hits)
+SELECT a.name, u.name, TIMESTAMP '1970-01-01 00:00:00' + raw.bucket * INTERVAL '1' SECOND, raw.hits
+FROM (SELECT app_id, uri_id, epoch_second / 60 * 60 AS bucket, COUNT(*) AS hits
+      FROM "stats-db"
+      WHERE NOT EXISTS (SELECT 1 FROM stats_rollup_minute)
+      GROUP BY app_id, uri_id, epoch_second / 60 * 60) AS raw
+JOIN stats_app a ON a.id = raw.app_id
+JOIN stats_uri u ON u.id = raw.uri_id;
+
+INSERT INTO stats_rollup_hour (app, uri, bucket, hits)
+SELECT a.name, u.name, TIMESTAMP '1970-01-01 00:00:00' + raw.bucket * INTERVAL '1' SECOND, raw.hits
+FROM (SELECT app_id, uri_id, epoch_second / 3600 * 3600 AS bucket, COUNT(*) AS hits
+      FROM "stats-db"
+      WHERE NOT EXISTS (SELECT 1 FROM stats_rollup_hour)
+      GROUP BY app_id, uri_id, epoch_second / 3600 * 3600) AS raw
+JOIN stats_app a ON a.id = raw.app_id
+JOIN stats_uri u ON u.id = raw.uri_id;
+
+INSERT INTO stats_rollup_day (app, uri, bucket, hits)
+SELECT a.name, u.name, TIMESTAMP '1970-01-01 00:00:00' + raw.bucket * INTERVAL '1' SECOND, raw.hits
+FROM (SELECT app_id, uri_id, epoch_second / 86400 * 86400 AS bucket, COUNT(*) AS hits
+      FROM "stats-db"
+      WHERE NOT EXISTS (SELECT 1 FROM stats_rollup_day)
+      GROUP BY app_id, uri_id, epoch_second / 86400 * 86400) AS raw
+JOIN stats_app a ON a.id = raw.app_id
+JOIN stats_uri u ON u.id = raw.uri_id;
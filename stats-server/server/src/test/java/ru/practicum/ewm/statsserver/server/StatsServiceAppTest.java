@@ -0,0 +1,32 @@
+package ru.practicum.ewm.statsserver.server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Контекст сервиса поднимается с настройками из application.properties: профиль test заменяет только
+ * подключение к БД на H2, поэтому ошибка в поставляемых настройках (например, формат интервала
+ * запланированной задачи) обнаруживается этим тестом
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@DisplayName("Интеграционное тестирование запуска сервиса статистики с поставляемыми настройками")
+class StatsServiceAppTest {
+    @Autowired
+    private LiveStatsHub liveStatsHub;
+
+    @Test
+    @DisplayName("Контекст сервиса поднимается, интервалы задач разбираются из application.properties")
+    void contextLoadsTest() {
+        assertThat(liveStatsHub.getInterval(), equalTo(Duration.ofSeconds(2)));
+    }
+}
@@ -0,0 +1,114 @@
+package ru.practicum.ewm.statsserver.server.binary;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.ewm.statsserver.commondto.binary.HitFrame;
+import ru.practicum.ewm.statsserver.commondto.binary.PackedIp;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Модульное тестирование приема статистики по двоичному протоколу")
+class BinaryIngestServerTest {
+    private static final Instant TIMESTAMP = Instant.parse("2024-01-01T00:00:00.250Z");
+    @Mock
+    private StatsService statsService;
+    private BinaryIngestServer server;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new BinaryIngestServer(statsService, true, port, 1, 2, Duration.ofMillis(50), 2);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("Обращения записываются пакетом, подтверждения приходят по порядку с признаком уникальности")
+    void hitsAcknowledgedTest() throws IOException {
+        var hit = new HitRecord("app", "/events/1", "10.0.0.1", TIMESTAMP);
+        when(statsService.addHits(List.of(hit, hit))).thenReturn(List.of(true, false));
+
+        try (var socket = new Socket("localhost", port)) {
+            var output = socket.getOutputStream();
+            output.write(new HitFrame.Dict(HitFrame.Dict.APP, 1, "app").encode());
+            output.write(new HitFrame.Dict(HitFrame.Dict.URI, 1, "/events/1").encode());
+            output.write(new HitFrame.Hit(10, 1, 1, PackedIp.pack("10.0.0.1"), TIMESTAMP.toEpochMilli()).encode());
+            output.write(new HitFrame.Hit(11, 1, 1, PackedIp.pack("10.0.0.1"), TIMESTAMP.toEpochMilli()).encode());
+            output.flush();
+            var input = new DataInputStream(socket.getInputStream());
+
+            assertThat(readAck(input), equalTo(new HitFrame.Ack(10, HitFrame.Ack.UNIQUE)));
+            assertThat(readAck(input), equalTo(new HitFrame.Ack(11, HitFrame.Ack.NOT_UNIQUE)));
+        }
+        verify(statsService).addHits(List.of(hit, hit));
+    }
+
+    @Test
+    @DisplayName("Обращение с неизвестным идентификатором эндпоинта подтверждается как ошибочное")
+    void unknownUriTest() throws IOException {
+        try (var socket = new Socket("localhost", port)) {
+            var output = socket.getOutputStream();
+            output.write(new HitFrame.Dict(HitFrame.Dict.APP, 1, "app").encode());
+            output.write(new HitFrame.Hit(1, 1, 7, PackedIp.pack("10.0.0.1"), TIMESTAMP.toEpochMilli()).encode());
+            output.flush();
+
+            assertThat(readAck(new DataInputStream(socket.getInputStream())),
+                    equalTo(new HitFrame.Ack(1, HitFrame.Ack.FAILED)));
+        }
+    }
+
+    @Test
+    @DisplayName("Соединение, объявившее больше идентификаторов, чем вмещает словарь, закрывается")
+    void dictOverflowTest() throws IOException {
+        try (var socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10_000);
+            var output = socket.getOutputStream();
+            output.write(new HitFrame.Dict(HitFrame.Dict.APP, 1, "app").encode());
+            output.write(new HitFrame.Dict(HitFrame.Dict.URI, 1, "/events/1").encode());
+            output.write(new HitFrame.Dict(HitFrame.Dict.URI, 1, "/events/1").encode());
+            output.write(new HitFrame.Dict(HitFrame.Dict.URI, 2, "/events/2").encode());
+            output.write(new HitFrame.Dict(HitFrame.Dict.URI, 3, "/events/3").encode());
+            output.write(new HitFrame.Hit(1, 1, 1, PackedIp.pack("10.0.0.1"), TIMESTAMP.toEpochMilli()).encode());
+            output.flush();
+
+            assertThrows(IOException.class, () -> readAck(new DataInputStream(socket.getInputStream())));
+        }
+        verify(statsService, never()).addHits(anyList());
+    }
+
+    private static HitFrame readAck(DataInputStream input) throws IOException {
+        var payload = new byte[input.readInt()];
+        input.readFully(payload);
+        return HitFrame.decode(ByteBuffer.wrap(payload));
+    }
+}
@@ -0,0 +1,152 @@
+package ru.practicum.ewm.statsserver.server.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Модульное тестирование кеша результатов запросов статистики")
+class StatsResultCacheTest {
+    private static final Instant BEGIN = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2024-01-02T00:00:00Z");
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("Результат за закрытый период вычисляется один раз для запросов с разным порядком и повторами uris")
+    void closedWindowIsCachedTest() {
+        var cache = new StatsResultCache(100, Duration.ZERO, Duration.ofMinutes(1));
+
+        var first = cache.get(StatsQueryKey.of(BEGIN, END, List.of("/b", "/a"), false, null), loader("/a"));
+        var second = cache.get(StatsQueryKey.of(BEGIN, END, List.of("/a", "/b", "/a"), false, false), loader("/a"));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(second, equalTo(first));
+    }
+
+    @Test
+    @DisplayName("Результат за открытый период при нулевом open-window-ttl не кешируется")
+    void openWindowIsNotCachedTest() {
+        var cache = new StatsResultCache(100, Duration.ZERO, Duration.ofMinutes(1));
+        var key = StatsQueryKey.of(BEGIN, Instant.now().plusSeconds(60), null, true, false);
+
+        cache.get(key, loader("/a"));
+        cache.get(key, loader("/a"));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    @DisplayName("При превышении max-rows вытесняется давно не запрашивавшийся результат")
+    void leastRecentlyUsedIsEvictedTest() {
+        var cache = new StatsResultCache(4, Duration.ZERO, Duration.ofMinutes(1));
+        var keyA = StatsQueryKey.of(BEGIN, END, List.of("/a"), false, false);
+        var keyB = StatsQueryKey.of(BEGIN, END, List.of("/b"), false, false);
+        var keyC = StatsQueryKey.of(BEGIN, END, List.of("/c"), false, false);
+
+        cache.get(keyA, loader("/a"));
+        cache.get(keyB, loader("/b"));
+        cache.get(keyA, loader("/a"));
+        cache.get(keyC, loader("/c"));
+        var calls = new ArrayList<String>();
+        cache.get(keyA, () -> {
+            calls.add("/a");
+            return List.of();
+        });
+        cache.get(keyB, () -> {
+            calls.add("/b");
+            return List.of();
+        });
+
+        assertThat(calls, contains("/b"));
+    }
+
+    @Test
+    @DisplayName("Запись обращений с опозданием удаляет результаты закрытых периодов, в которые они попадают")
+    void lateWriteInvalidatesClosedWindowTest() {
+        var cache = new StatsResultCache(100, Duration.ZERO, Duration.ofMinutes(1));
+        var key = StatsQueryKey.of(BEGIN, END, null, false, false);
+        var other = StatsQueryKey.of(END.plusSeconds(1), END.plusSeconds(3_600), null, false, false);
+        cache.get(key, loader("/a"));
+        cache.get(other, loader("/a"));
+
+        cache.written(Instant.now(), Instant.now());
+        cache.get(key, loader("/a"));
+        assertThat(loads.get(), equalTo(2));
+
+        cache.written(BEGIN.plusSeconds(60), BEGIN.plusSeconds(120));
+        cache.get(key, loader("/a"));
+        cache.get(other, loader("/a"));
+        assertThat(loads.get(), equalTo(3));
+    }
+
+    @Test
+    @DisplayName("Одновременные запросы с одинаковыми параметрами вычисляются один раз")
+    void concurrentLoadsAreCoalescedTest() throws Exception {
+        var cache = new StatsResultCache(100, Duration.ZERO, Duration.ofMinutes(1));
+        var key = StatsQueryKey.of(BEGIN, END, null, false, false);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var first = executor.submit(() -> cache.get(key, () -> {
+                started.countDown();
+                await(release);
+                return loader("/a").get();
+            }));
+            started.await();
+            var waiting = CompletableFuture.supplyAsync(() -> cache.get(key, loader("/b")));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS), equalTo(first.get(5, TimeUnit.SECONDS)));
+            assertThat(loads.get(), equalTo(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Ошибка вычисления передается ожидающим запросам и не сохраняется в кеше")
+    void failedLoadIsNotCachedTest() {
+        var cache = new StatsResultCache(100, Duration.ZERO, Duration.ofMinutes(1));
+        var key = StatsQueryKey.of(BEGIN, END, null, false, false);
+
+        assertThrows(IllegalStateException.class, () -> cache.get(key, () -> {
+            throw new IllegalStateException("БД недоступна");
+        }));
+        cache.get(key, loader("/a"));
+
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private Supplier<List<ViewStatsDto>> loader(String uri) {
+        return () -> {
+            loads.incrementAndGet();
+            return List.of(new ViewStatsDto("app", uri, 1L));
+        };
+    }
+}
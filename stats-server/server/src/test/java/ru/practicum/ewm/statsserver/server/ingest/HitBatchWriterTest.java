@@ -0,0 +1,90 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Кеш результатов должен узнавать о записанных обращениях только после фиксации транзакции, в которой они
+ * записаны, иначе запрос статистики между уведомлением и фиксацией сохранил бы закрытый период без них
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({HitBatchWriter.class, FirstSeenIndex.class, StatsDictionary.class, HitRollupWriter.class,
+        StatsResultCache.class})
+@DisplayName("Интеграционное тестирование уведомления кеша результатов о записи обращений")
+class HitBatchWriterTest {
+    private static final Instant FROM = Instant.parse("2024-01-01T10:00:00Z");
+    private static final Instant TO = Instant.parse("2024-01-01T10:05:00Z");
+    private static final List<HitRecord> HITS = List.of(
+            new HitRecord("ewm-main-service", "/events/1", "10.0.0.1", TO),
+            new HitRecord("ewm-main-service", "/events/2", "10.0.0.1", FROM));
+    @Autowired
+    private HitBatchWriter writer;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @SpyBean
+    private StatsResultCache resultCache;
+
+    @AfterEach
+    void tearDown() {
+        reset(resultCache);
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Без внешней транзакции кеш уведомляется сразу после записи")
+    void notifiedAfterWriteTest() {
+        writer.write(HITS);
+
+        verify(resultCache).written(FROM, TO);
+    }
+
+    @Test
+    @DisplayName("Внутри внешней транзакции кеш уведомляется только после ее фиксации")
+    void notifiedAfterOuterCommitTest() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            writer.append(HITS);
+            verify(resultCache, never()).written(any(), any());
+        });
+
+        verify(resultCache).written(FROM, TO);
+    }
+
+    @Test
+    @DisplayName("При откате внешней транзакции кеш не уведомляется")
+    void notNotifiedAfterOuterRollbackTest() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            writer.append(HITS);
+            status.setRollbackOnly();
+        });
+
+        verify(resultCache, never()).written(any(), any());
+    }
+}
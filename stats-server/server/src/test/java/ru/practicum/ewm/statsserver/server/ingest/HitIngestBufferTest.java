@@ -0,0 +1,31 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@DisplayName("Модульное тестирование буфера приема обращений")
+class HitIngestBufferTest {
+    private final HitIngestBuffer buffer = new HitIngestBuffer(null, IngestMode.SYNC, 3, 10, Duration.ofMillis(200));
+
+    @Test
+    @DisplayName("Пакет, не помещающийся в буфер целиком, не принимается ни частично")
+    void offerIsAllOrNothingTest() {
+        assertThat(buffer.offerRegistered(List.of(hit("/a"), hit("/b"))), equalTo(true));
+        assertThat(buffer.offerRegistered(List.of(hit("/c"), hit("/d"))), equalTo(false));
+        assertThat(buffer.offerUnregistered(List.of(hit("/c"), hit("/d"))), equalTo(false));
+        assertThat(buffer.hasCapacityFor(1), equalTo(true));
+        assertThat(buffer.offerUnregistered(List.of(hit("/c"))), equalTo(true));
+        assertThat(buffer.hasCapacityFor(1), equalTo(false));
+    }
+
+    private static HitRecord hit(String uri) {
+        return new HitRecord("app", uri, "127.0.0.1", Instant.now());
+    }
+}
@@ -0,0 +1,85 @@
+package ru.practicum.ewm.statsserver.server.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({LegacyHitMigration.class, HitBatchWriter.class, FirstSeenIndex.class, StatsDictionary.class,
+        HitRollupWriter.class, StatsResultCache.class})
+@DisplayName("Интеграционное тестирование переноса обращений из таблицы прежнего формата")
+class LegacyHitMigrationTest {
+    static final String CREATE_LEGACY = """
+            CREATE TABLE "stats-db_legacy"
+            (
+                id        BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+                app       VARCHAR(255)                            NOT NULL,
+                uri       VARCHAR(255)                            NOT NULL,
+                ip        VARCHAR(255)                            NOT NULL,
+                timestamp TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
+                CONSTRAINT "pk_stats-db_legacy" PRIMARY KEY (id)
+            )""";
+    static final String INSERT_LEGACY = """
+            INSERT INTO "stats-db_legacy" (app, uri, ip, timestamp)
+            VALUES ('ewm-main-service', ?, ?, TIMESTAMP '2024-01-01 10:00:00')""";
+    @Autowired
+    private LegacyHitMigration migration;
+    @Autowired
+    private HitBatchWriter writer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DROP TABLE IF EXISTS \"stats-db_legacy\"");
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Обращения переносятся с регистрацией первых обращений и агрегатами, прежняя таблица удаляется")
+    void migrateTest() {
+        jdbcTemplate.execute(CREATE_LEGACY);
+        jdbcTemplate.update(INSERT_LEGACY, "/events/1", "10.0.0.1");
+        jdbcTemplate.update(INSERT_LEGACY, "/events/1", "LocalHost");
+        jdbcTemplate.update(INSERT_LEGACY, "/events/2", "10.0.0.1");
+
+        migration.migrate();
+
+        assertThat(count("\"stats-db\""), equalTo(3L));
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(hits) FROM stats_rollup_day", Long.class), equalTo(3L));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'stats-db_legacy'", Long.class),
+                equalTo(0L));
+        var instant = Instant.parse("2024-01-02T00:00:00Z");
+        assertThat(writer.write(List.of(
+                new HitRecord("ewm-main-service", "/EVENTS/1", "10.0.0.1", instant),
+                new HitRecord("ewm-main-service", "/events/1", "localhost", instant),
+                new HitRecord("ewm-main-service", "/events/3", "10.0.0.1", instant)
+        )), contains(false, false, true));
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.ewm.statsserver.server.journal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+@DisplayName("Модульное тестирование журнала приема обращений")
+class HitJournalTest {
+    private static final DataSize SEGMENT_SIZE = DataSize.ofBytes(200);
+    @TempDir
+    private Path dir;
+
+    @Test
+    @DisplayName("Обращения читаются в порядке записи с признаком регистрации, в том числе из нескольких сегментов")
+    void appendAndReadTest() throws IOException {
+        var journal = open(3);
+        var hits = hits(6);
+
+        journal.append(hits.subList(0, 3), true);
+        journal.append(hits.subList(3, 6), false);
+        var batch = journal.read(JournalPosition.START, 100);
+
+        assertThat(batch.registered(), equalTo(hits.subList(0, 3)));
+        assertThat(batch.unregistered(), equalTo(hits.subList(3, 6)));
+        assertThat(batch.end().segment(), equalTo(1L));
+    }
+
+    @Test
+    @DisplayName("После повторного открытия журнал дочитывается с сохраненной позиции и дописывается в конец")
+    void reopenTest() throws IOException {
+        var hits = hits(6);
+        var journal = open(3);
+        journal.append(hits.subList(0, 4), true);
+        var applied = journal.read(JournalPosition.START, 2).end();
+
+        var reopened = open(3);
+        reopened.append(hits.subList(4, 6), true);
+        var batch = reopened.read(reopened.recover(applied), 100);
+
+        assertThat(batch.registered(), equalTo(hits.subList(2, 6)));
+    }
+
+    @Test
+    @DisplayName("Пакет не принимается, пока для него не хватает сегментов, и принимается после удаления перенесенных")
+    void rejectWhenFullTest() throws IOException {
+        var journal = open(2);
+        var hits = hits(6);
+        journal.append(hits, true);
+        var overflow = Collections.nCopies(3, hits.get(0));
+
+        assertThat(journal.append(overflow, true), is(false));
+        assertThat(journal.read(JournalPosition.START, 100).registered(), equalTo(hits));
+
+        journal.release(journal.read(JournalPosition.START, 100).end());
+
+        assertThat(journal.append(overflow, true), is(true));
+    }
+
+    private HitJournal open(int maxSegments) throws IOException {
+        var journal = new HitJournal(IngestMode.JOURNAL, dir, SEGMENT_SIZE, maxSegments, false);
+        journal.open();
+        return journal;
+    }
+
+    private static List<HitRecord> hits(int count) {
+        var hits = new ArrayList<HitRecord>();
+        for (int i = 0; i < count; i++) {
+            hits.add(new HitRecord("app", "/events/" + i, "10.0.0." + i,
+                    Instant.ofEpochSecond(1_700_000_000L + i)));
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,146 @@
+package ru.practicum.ewm.statsserver.server.live;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+
+@DisplayName("Модульное тестирование рассылки приращений живой статистики")
+class LiveStatsHubTest {
+    private final LiveStatsHub hub = new LiveStatsHub(Duration.ofSeconds(2), 2, 4, Runnable::run);
+
+    @Test
+    @DisplayName("Приращения за тик рассылаются один раз с учетом набора эндпоинтов подписчика")
+    void tickDeliversDeltasTest() {
+        var all = new ArrayList<List<ViewStatsDto>>();
+        var filtered = new ArrayList<List<ViewStatsDto>>();
+        hub.subscribe(null, all::add, exception -> {
+        });
+        hub.subscribe(List.of("/b"), filtered::add, exception -> {
+        });
+
+        hub.add(List.of(hit("/a"), hit("/b"), hit("/b")));
+        hub.tick();
+        hub.tick();
+
+        assertThat(all, contains(
+                List.of(new ViewStatsDto("app", "/b", 2L), new ViewStatsDto("app", "/a", 1L)),
+                List.of()
+        ));
+        assertThat(filtered, contains(List.of(new ViewStatsDto("app", "/b", 2L)), List.of()));
+    }
+
+    @Test
+    @DisplayName("Подписчики с одинаковым набором эндпоинтов получают один и тот же список")
+    void sameUrisShareDeltaTest() {
+        var first = new ArrayList<List<ViewStatsDto>>();
+        var second = new ArrayList<List<ViewStatsDto>>();
+        hub.subscribe(List.of("/a"), first::add, exception -> {
+        });
+        hub.subscribe(List.of("/a"), second::add, exception -> {
+        });
+
+        hub.add(List.of(hit("/a")));
+        hub.tick();
+
+        assertThat(first.get(0), sameInstance(second.get(0)));
+    }
+
+    @Test
+    @DisplayName("Отмена подписки и ошибка получателя освобождают место для нового подписчика")
+    void unsubscribeReleasesSlotTest() {
+        var unsubscribe = hub.subscribe(null, delta -> {
+        }, exception -> {
+        }).orElseThrow();
+        hub.subscribe(null, delta -> {
+            throw new IllegalStateException("closed");
+        }, exception -> {
+        });
+
+        assertThat(subscribe(hub).isPresent(), equalTo(false));
+        unsubscribe.run();
+        hub.tick();
+        assertThat(subscribe(hub).isPresent(), equalTo(true));
+        assertThat(subscribe(hub).isPresent(), equalTo(true));
+    }
+
+    @Test
+    @DisplayName("Исключение получателя передается обработчику отключения подписчика")
+    void listenerFailureReportedTest() {
+        var failure = new IllegalStateException("closed");
+        var dropped = new ArrayList<RuntimeException>();
+        hub.subscribe(null, delta -> {
+            throw failure;
+        }, dropped::add);
+
+        hub.tick();
+        hub.tick();
+
+        assertThat(dropped, contains(sameInstance(failure)));
+    }
+
+    @Test
+    @DisplayName("Тик не ждет отправки, подписчик с заполненной очередью отключается")
+    void slowSubscriberDroppedTest() {
+        var sends = new ArrayList<Runnable>();
+        var slowHub = new LiveStatsHub(Duration.ofSeconds(2), 1, 2, sends::add);
+        var received = new ArrayList<List<ViewStatsDto>>();
+        var dropped = new ArrayList<RuntimeException>();
+        slowHub.subscribe(null, received::add, dropped::add);
+
+        slowHub.tick();
+        slowHub.tick();
+        assertThat(dropped, empty());
+        slowHub.tick();
+
+        assertThat(sends.size(), equalTo(1));
+        assertThat(dropped.size(), equalTo(1));
+        assertThat(dropped.get(0), instanceOf(IllegalStateException.class));
+        sends.get(0).run();
+        assertThat(received, empty());
+        assertThat(subscribe(slowHub).isPresent(), equalTo(true));
+    }
+
+    @Test
+    @DisplayName("Приращения, поставленные во время отправки, отправляются по порядку без новой задачи")
+    void queuedDuringSendTest() {
+        var sends = new ArrayList<Runnable>();
+        var queuedHub = new LiveStatsHub(Duration.ofSeconds(2), 1, 4, sends::add);
+        var received = new ArrayList<List<ViewStatsDto>>();
+        queuedHub.subscribe(null, received::add, exception -> {
+        });
+
+        queuedHub.add(List.of(hit("/a")));
+        queuedHub.tick();
+        queuedHub.tick();
+        sends.get(0).run();
+        queuedHub.tick();
+        sends.get(1).run();
+
+        assertThat(sends.size(), equalTo(2));
+        assertThat(received, contains(List.of(new ViewStatsDto("app", "/a", 1L)), List.of(), List.of()));
+    }
+
+    private static Optional<Runnable> subscribe(LiveStatsHub hub) {
+        return hub.subscribe(null, delta -> {
+        }, exception -> {
+        });
+    }
+
+    private static HitRecord hit(String uri) {
+        return new HitRecord("app", uri, "127.0.0.1", Instant.now());
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.ewm.statsserver.server.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.compaction.HitCompaction;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitIngestBuffer;
+import ru.practicum.ewm.statsserver.server.journal.HitJournal;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+import ru.practicum.ewm.statsserver.server.rollup.RollupStatsRepository;
+import ru.practicum.ewm.statsserver.server.topk.TopUriTracker;
+import ru.practicum.ewm.statsserver.server.window.SlidingWindowCounters;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "stats-server.ingest.mode=async",
+        "stats-server.ingest.buffer-capacity=4",
+        "stats-server.ingest.flush-interval=20ms"
+})
+@Import({StatsServiceImpl.class, HitIngestBuffer.class, HitBatchWriter.class, FirstSeenIndex.class,
+        StatsDictionary.class, HitRollupWriter.class, RollupStatsRepository.class, StatsResultCache.class,
+        TopUriTracker.class, HitJournal.class, HitCompaction.class, SlidingWindowCounters.class,
+        LiveStatsHub.class})
+@DisplayName("Интеграционное тестирование уникальности обращений при приеме через буфер")
+class AsyncIngestTest {
+    static final String TIMESTAMP = "2024-01-01 10:00:00";
+    @Autowired
+    private StatsService statsService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Уникальность определяется сразу при приеме, обращения записываются в БД фоновым потоком")
+    void uniqueFlagsBeforeWriteTest() throws InterruptedException {
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"), hit("/events/1", "10.0.0.1"),
+                hit("/events/2", "10.0.0.1"))), contains(true, false, true));
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))), contains(false));
+
+        assertThat(awaitHits(4L), equalTo(4L));
+    }
+
+    @Test
+    @DisplayName("Пакет, не поместившийся в буфер, не записывается и не регистрируется в индексе первых обращений")
+    void rejectedBatchIsNotRegisteredTest() throws InterruptedException {
+        assertThrows(AppTooManyRequestsException.class, () -> statsService.addAll(List.of(
+                hit("/events/1", "10.0.0.1"), hit("/events/1", "10.0.0.2"), hit("/events/1", "10.0.0.3"),
+                hit("/events/1", "10.0.0.4"), hit("/events/1", "10.0.0.5"))));
+
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))), contains(true));
+        assertThat(awaitHits(1L), equalTo(1L));
+    }
+
+    private long awaitHits(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        long count = countHits();
+        while (count < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+            count = countHits();
+        }
+        return count;
+    }
+
+    private long countHits() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"stats-db\"", Long.class);
+    }
+
+    private static HitDto hit(String uri, String ip) {
+        return new HitDto("ewm-main-service", uri, ip, TIMESTAMP);
+    }
+}
@@ -0,0 +1,141 @@
+package ru.practicum.ewm.statsserver.server.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.compaction.HitCompaction;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitIngestBuffer;
+import ru.practicum.ewm.statsserver.server.journal.HitJournal;
+import ru.practicum.ewm.statsserver.server.journal.HitJournalApplier;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+import ru.practicum.ewm.statsserver.server.rollup.RollupStatsRepository;
+import ru.practicum.ewm.statsserver.server.topk.TopUriTracker;
+import ru.practicum.ewm.statsserver.server.window.SlidingWindowCounters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "stats-server.ingest.mode=journal",
+        "stats-server.ingest.flush-interval=20ms",
+        "stats-server.journal.segment-size=4KB",
+        "stats-server.journal.max-segments=1",
+        "stats-server.journal.register-backoff=1m"
+})
+@Import({StatsServiceImpl.class, HitIngestBuffer.class, HitBatchWriter.class, FirstSeenIndex.class,
+        StatsDictionary.class, HitRollupWriter.class, RollupStatsRepository.class, StatsResultCache.class,
+        TopUriTracker.class, HitJournal.class, HitJournalApplier.class, HitCompaction.class,
+        SlidingWindowCounters.class, LiveStatsHub.class})
+@DisplayName("Интеграционное тестирование уникальности обращений при приеме через журнал")
+class JournalIngestTest {
+    static final String TIMESTAMP = "2024-01-01 10:00:00";
+    @Autowired
+    private StatsService statsService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @SpyBean
+    private FirstSeenIndex firstSeenIndex;
+
+    @DynamicPropertySource
+    static void journalDir(DynamicPropertyRegistry registry) throws IOException {
+        var dir = Files.createTempDirectory("stats-journal-test");
+        registry.add("stats-server.journal.dir", dir::toString);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reset(firstSeenIndex);
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Уникальность определяется сразу при приеме, обращения переносятся из журнала в БД фоновым потоком")
+    void uniqueFlagsBeforeWriteTest() throws InterruptedException {
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"), hit("/events/1", "10.0.0.1"),
+                hit("/events/2", "10.0.0.1"))), contains(true, false, true));
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))), contains(false));
+
+        assertThat(awaitHits(4L), equalTo(4L));
+    }
+
+    @Test
+    @DisplayName("Пакет, не поместившийся в журнал, не записывается и не регистрируется в индексе первых обращений")
+    void rejectedBatchIsNotRegisteredTest() throws InterruptedException {
+        var batch = new ArrayList<HitDto>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(hit("/events/1", "10.0.1." + i));
+        }
+        assertThrows(AppTooManyRequestsException.class, () -> statsService.addAll(batch));
+
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.1.0"))), contains(true));
+        assertThat(awaitHits(1L), equalTo(1L));
+    }
+
+    @Test
+    @DirtiesContext
+    @DisplayName("После ошибки БД индекс первых обращений не опрашивается, обращения принимаются в журнал")
+    void registerBackoffTest() throws InterruptedException {
+        doThrow(new DataAccessResourceFailureException("БД недоступна"))
+                .doCallRealMethod()
+                .when(firstSeenIndex).register(anyList());
+
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))), contains(false));
+        assertThat(statsService.addAll(List.of(hit("/events/2", "10.0.0.1"))), contains(false));
+
+        assertThat(awaitHits(2L), equalTo(2L));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats_first_seen", Long.class), equalTo(2L));
+    }
+
+    private long awaitHits(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        long count = countHits();
+        while (count < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+            count = countHits();
+        }
+        return count;
+    }
+
+    private long countHits() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"stats-db\"", Long.class);
+    }
+
+    private static HitDto hit(String uri, String ip) {
+        return new HitDto("ewm-main-service", uri, ip, TIMESTAMP);
+    }
+}
@@ -7,33 +7,50 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.StatsQueryDto;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.exception.AppExceptionHandlers;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static java.lang.Boolean.FALSE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.ZoneOffset.UTC;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("Модульное тестирование контроллера 'сервиса статистики'")
 class StatsControllerTest {
     private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
-    private final ObjectMapper mapper = new ObjectMapper();
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
     private MockMvc mvc;
     private HitDto hitCreate;
     private String dateTime;
@@ -48,7 +65,9 @@ class StatsControllerTest {
     void setUp() {
         dateTime = LocalDateTime.ofInstant(Instant.now(Clock.systemUTC()), UTC)
                 .format(DateTimeFormatter.ofPattern(DATE_TIME_PATTERN));
-        mvc = MockMvcBuilders.standaloneSetup(statsController).build();
+        mvc = MockMvcBuilders.standaloneSetup(statsController)
+                .setControllerAdvice(new AppExceptionHandlers())
+                .build();
         hitCreate = new HitDto(
                 "app",
                 "uri/normal",
@@ -69,6 +88,35 @@ class StatsControllerTest {
         verify(statsService).add(any());
     }
 
+    @Test
+    @DisplayName("Успешная запись пакета корректных данных, ответ 201 Created с признаками уникальности")
+    void hitsCreateStatsWithCorrectRequestTest() throws Exception {
+        when(statsService.addAll(any()))
+                .thenReturn(List.of(true, false));
+        mvc.perform(post("/hits")
+                        .content(mapper.writeValueAsString(List.of(hitCreate, hitCreate)))
+                        .characterEncoding("UTF-8")
+                        .contentType(APPLICATION_JSON)
+                        .accept(APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(content().json("[true, false]"));
+        verify(statsService).addAll(any());
+    }
+
+    @Test
+    @DisplayName("Буфер приема статистики заполнен, ответ 429 Too Many Requests с заголовком Retry-After")
+    void hitCreateStatsWhenBufferIsFullTest() throws Exception {
+        when(statsService.add(any()))
+                .thenThrow(new AppTooManyRequestsException("source", "error", "message", Duration.ofSeconds(2)));
+        mvc.perform(post("/hit")
+                        .content(mapper.writeValueAsString(hitCreate))
+                        .characterEncoding("UTF-8")
+                        .contentType(APPLICATION_JSON)
+                        .accept(APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+    }
+
     @Test
     @DisplayName("Отсутствует тело в запросе, ответ 400 BadRequest")
     void hitCreateStatsWithNoBodyRequestTest() throws Exception {
@@ -82,7 +130,7 @@ class StatsControllerTest {
     @Test
     @DisplayName("Получение статистики при наличии всех аргументов, ответ 200 Ok")
     void getStatsWithAllArgTest() throws Exception {
-        when(statsService.getStats(any(), any(), any(), any()))
+        when(statsService.getStats(any(), any(), any(), any(), any()))
                 .thenReturn(List.of());
         mvc.perform(get("/stats")
                                 .param("start", dateTime)
@@ -95,4 +143,104 @@ class StatsControllerTest {
                 .andExpect(status().isOk());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Получение статистики без заголовка Accept, ответ 200 Ok в формате JSON")
+    void getStatsWithoutAcceptTest() throws Exception {
+        when(statsService.getStats(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(new ViewStatsDto("app", "uri", 1L)));
+        mvc.perform(get("/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(APPLICATION_JSON))
+                .andExpect(content().json("[{\"app\":\"app\",\"uri\":\"uri\",\"hits\":1}]"));
+    }
+
+    @Test
+    @DisplayName("Получение статистики потоком NDJSON, ответ 200 Ok с одной записью в каждой строке")
+    void streamStatsTest() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ViewStatsDto> action = invocation.getArgument(5);
+            action.accept(new ViewStatsDto("app", "uri/1", 2L));
+            action.accept(new ViewStatsDto("app", "uri/2", 1L));
+            return null;
+        }).when(statsService).streamStats(any(), any(), any(), any(), any(), any());
+        mvc.perform(get("/stats")
+                        .param("unique", FALSE.toString())
+                        .accept("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"app":"app","uri":"uri/1","hits":2}
+                        {"app":"app","uri":"uri/2","hits":1}
+                        """));
+        verify(statsService, never()).getStats(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Получение самых посещаемых эндпоинтов с параметрами по умолчанию, ответ 200 Ok")
+    void getTopWithDefaultsTest() throws Exception {
+        when(statsService.getTop(eq(10), eq("1h")))
+                .thenReturn(List.of(new ViewStatsDto("app", "uri", 5L)));
+        mvc.perform(get("/stats/top"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"app\":\"app\",\"uri\":\"uri\",\"hits\":5}]"));
+    }
+
+    @Test
+    @DisplayName("Получение статистики по пакету запросов, ответ 200 Ok со списками в порядке запросов")
+    void getStatsBatchTest() throws Exception {
+        var queries = List.of(
+                new StatsQueryDto(dateTime, dateTime, List.of("uri/1"), false),
+                new StatsQueryDto(null, null, null, true));
+        when(statsService.getStatsBatch(eq(queries)))
+                .thenReturn(List.of(List.of(new ViewStatsDto("app", "uri/1", 3L)), List.of()));
+        mvc.perform(post("/stats/batch")
+                        .content(mapper.writeValueAsString(queries))
+                        .characterEncoding(UTF_8)
+                        .contentType(APPLICATION_JSON)
+                        .accept(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[[{\"app\":\"app\",\"uri\":\"uri/1\",\"hits\":3}],[]]"));
+    }
+
+    @Test
+    @DisplayName("Получение временного ряда потоком NDJSON, ответ 200 Ok с одной точкой в каждой строке")
+    void streamTimeSeriesTest() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<TimeSeriesPointDto> action = invocation.getArgument(5);
+            action.accept(new TimeSeriesPointDto("app", "uri", "2024-01-01 00:00:00", 3L, null));
+            action.accept(new TimeSeriesPointDto("app", "uri", "2024-01-01 01:00:00", 1L, null));
+            return null;
+        }).when(statsService).streamTimeSeries(any(), any(), any(), eq("hour"), eq(false), any());
+        mvc.perform(get("/stats/timeseries")
+                        .param("uris", "uri")
+                        .accept("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"app":"app","uri":"uri","bucket":"2024-01-01 00:00:00","hits":3}
+                        {"app":"app","uri":"uri","bucket":"2024-01-01 01:00:00","hits":1}
+                        """));
+    }
+
+    @Test
+    @DisplayName("Подписка на живую статистику передает приращения событиями SSE")
+    void subscribeLiveTest() throws Exception {
+        when(statsService.subscribeLive(eq(List.of("uri")), any(), any())).thenAnswer(invocation -> {
+            Consumer<List<ViewStatsDto>> listener = invocation.getArgument(1);
+            listener.accept(List.of(new ViewStatsDto("app", "uri", 2L)));
+            listener.accept(List.of());
+            return (Runnable) () -> {
+            };
+        });
+        mvc.perform(get("/stats/live")
+                        .param("uris", "uri")
+                        .accept("text/event-stream"))
+                .andExpect(request().asyncStarted())
+                .andExpect(content().string(startsWith(":subscribed")))
+                .andExpect(content().string(containsString("""
+                        event:stats
+                        data:[{"app":"app","uri":"uri","hits":2}]
+                        """)))
+                .andExpect(content().string(containsString(":ping")));
+    }
+}
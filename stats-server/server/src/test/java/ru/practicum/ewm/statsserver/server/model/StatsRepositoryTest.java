@@ -1,33 +1,257 @@
 package ru.practicum.ewm.statsserver.server.model;
 
-import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.TimeSeriesPointDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.compaction.HitCompaction;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitIngestBuffer;
+import ru.practicum.ewm.statsserver.server.journal.HitJournal;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+import ru.practicum.ewm.statsserver.server.rollup.BatchQuery;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+import ru.practicum.ewm.statsserver.server.rollup.QuerySegment;
+import ru.practicum.ewm.statsserver.server.rollup.RollupGranularity;
+import ru.practicum.ewm.statsserver.server.rollup.RollupStatsRepository;
+import ru.practicum.ewm.statsserver.server.rollup.StatsQueryPlanner;
+import ru.practicum.ewm.statsserver.server.sketch.HyperLogLog;
+import ru.practicum.ewm.statsserver.server.topk.TopUriTracker;
+import ru.practicum.ewm.statsserver.server.window.SlidingWindowCounters;
 
-import java.time.Clock;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * Записи выполняются без общей транзакции теста, чтобы откат записи обращений проверялся так же, как в сервисе
+ */
 @DataJpaTest
-@Import({StatsServiceImpl.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({StatsServiceImpl.class, HitIngestBuffer.class, HitBatchWriter.class, FirstSeenIndex.class,
+        StatsDictionary.class, HitRollupWriter.class, RollupStatsRepository.class, StatsResultCache.class,
+        TopUriTracker.class, HitJournal.class, HitCompaction.class, SlidingWindowCounters.class,
+        LiveStatsHub.class})
 @DisplayName("Набор интеграционных тестов для репозитория сервиса статистики")
 public class StatsRepositoryTest {
+    static final String TIMESTAMP = "2024-01-01 10:00:00";
+    private static final String APP = "ewm-main-service";
+    private static final String HOUR_SKETCH = """
+            SELECT sketch FROM stats_rollup_hour
+            WHERE uri = '/events/1' AND bucket = TIMESTAMP '2024-01-01 10:00:00'""";
     @Autowired
     private StatsService statsService;
-    private HitEntity hitOne;
+    @Autowired
+    private RollupStatsRepository rollupStatsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @SpyBean
+    private HitRollupWriter rollupWriter;
 
-    public StatsRepositoryTest() {
+    @AfterEach
+    void tearDown() {
+        reset(rollupWriter);
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Уникально только первое обращение с IP к эндпоинту, в том числе внутри пакета и без учета регистра")
+    void addAllUniqueFlagsTest() {
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"), hit("/events/1", "10.0.0.1"),
+                hit("/events/1", "10.0.0.2"), hit("/events/2", "10.0.0.1"))), contains(true, false, true, true));
+        assertThat(statsService.addAll(List.of(hit("/EVENTS/1", "10.0.0.1"), hit("/events/3", "10.0.0.1"))),
+                contains(false, true));
+        assertThat(countHits(), equalTo(6L));
     }
 
-    @BeforeEach
-    void setUp() {
-        hitOne = new HitEntity(0L, "app", "uri", "ip", Instant.now(Clock.systemUTC()));
+    @Test
+    @DisplayName("Откат записи пакета отменяет регистрацию его обращений в индексе первых обращений")
+    void rolledBackWriteIsNotRegisteredTest() {
+        doThrow(new DataAccessResourceFailureException("БД недоступна")).when(rollupWriter).add(anyList());
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))));
+        reset(rollupWriter);
+
+        assertThat(countHits(), equalTo(0L));
+        assertThat(statsService.addAll(List.of(hit("/events/1", "10.0.0.1"))), contains(true));
     }
 
     @Test
-    @DisplayName("Запись в БД события 'успешная обработка обращения к эндпоинту'")
-    void addHitTest() {
+    @DisplayName("Запись обращений увеличивает количество обращений в агрегатах, не строя и не меняя счетчики")
+    void rollupWithoutSketchesTest() {
+        addRangeHits();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats_rollup_hour WHERE sketch IS NOT NULL",
+                Long.class), equalTo(0L));
+        fillHourSketches();
+        var sketch = jdbcTemplate.queryForObject(HOUR_SKETCH, byte[].class);
+
+        statsService.addAll(List.of(hit("/events/1", "10.0.0.4", "2024-01-01 10:30:00")));
+
+        assertThat(jdbcTemplate.queryForObject(HOUR_SKETCH, byte[].class), equalTo(sketch));
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT hits FROM stats_rollup_hour
+                WHERE uri = '/events/1' AND bucket = TIMESTAMP '2024-01-01 10:00:00'""", Long.class), equalTo(4L));
+    }
+
+    @Test
+    @DisplayName("Пакет запросов, включая повторяющиеся, дает ту же статистику, что и отдельные запросы")
+    void batchMatchesSingleQueriesTest() {
+        addRangeHits();
+        fillHourSketches();
+        var wide = plan("2024-01-01T09:59:30Z", "2024-01-01T13:00:10Z");
+        var narrow = plan("2024-01-01T10:05:00Z", "2024-01-01T11:30:00Z");
+        var queries = List.of(new BatchQuery(wide, null, false), new BatchQuery(wide, null, true),
+                new BatchQuery(narrow, List.of("/events/1", "/events/2"), true),
+                new BatchQuery(narrow, List.of("/events/1"), false), new BatchQuery(wide, null, true));
+
+        var batch = rollupStatsRepository.getStatsBatch(queries, 4096);
+
+        assertThat(batch.size(), equalTo(queries.size()));
+        for (int i = 0; i < queries.size(); i++) {
+            assertThat(batch.get(i), equalTo(single(queries.get(i))));
+        }
+        assertThat(batch.get(1), contains(new ViewStatsDto(APP, "/events/1", 3L),
+                new ViewStatsDto(APP, "/events/2", 2L), new ViewStatsDto(APP, "/events/3", 1L)));
+    }
+
+    @Test
+    @DisplayName("Уникальные IP корзин агрегатов без счетчика читаются в пакете из исходных записей")
+    void batchRawFallbackTest() {
+        addRangeHits();
+        jdbcTemplate.update("UPDATE stats_rollup_hour SET sketch = NULL");
+        var wide = plan("2024-01-01T09:59:30Z", "2024-01-01T13:00:10Z");
+        var queries = List.of(new BatchQuery(wide, null, true), new BatchQuery(wide, List.of("/events/2"), true),
+                new BatchQuery(wide, null, false));
+
+        var batch = rollupStatsRepository.getStatsBatch(queries, 4096);
+
+        assertThat(batch.get(0), contains(new ViewStatsDto(APP, "/events/1", 3L),
+                new ViewStatsDto(APP, "/events/2", 2L), new ViewStatsDto(APP, "/events/3", 1L)));
+        assertThat(batch.get(1), contains(new ViewStatsDto(APP, "/events/2", 2L)));
+        assertThat(batch.get(2), equalTo(single(queries.get(2))));
+    }
+
+    @Test
+    @DisplayName("Запрос пакета, которому не хватило счетчиков уникальных IP, вычисляется отдельно")
+    void batchSketchLimitTest() {
+        addRangeHits();
+        fillHourSketches();
+        var wide = plan("2024-01-01T09:59:30Z", "2024-01-01T13:00:10Z");
+        var queries = List.of(new BatchQuery(wide, List.of("/events/3"), true), new BatchQuery(wide, null, true),
+                new BatchQuery(wide, null, false));
+
+        var batch = rollupStatsRepository.getStatsBatch(queries, 2);
+
+        for (int i = 0; i < queries.size(); i++) {
+            assertThat(batch.get(i), equalTo(single(queries.get(i))));
+        }
+        assertThat(batch.get(1).size(), equalTo(3));
+    }
+
+    @Test
+    @DisplayName("Уникальные IP корзин временного ряда без счетчика подсчитываются по исходным записям")
+    void timeSeriesRawVisitorsTest() {
+        addRangeHits();
+        fillHourSketches();
+        jdbcTemplate.update("""
+                UPDATE stats_rollup_hour SET sketch = NULL
+                WHERE bucket IN (TIMESTAMP '2024-01-01 09:00:00', TIMESTAMP '2024-01-01 10:00:00',
+                                 TIMESTAMP '2024-01-01 12:00:00')""");
+        var points = new ArrayList<TimeSeriesPointDto>();
+
+        rollupStatsRepository.streamTimeSeries(RollupGranularity.HOUR, Instant.parse("2024-01-01T09:00:00Z"),
+                Instant.parse("2024-01-01T14:00:00Z"), null, true, points::add);
+
+        assertThat(points, contains(new TimeSeriesPointDto(APP, "/events/1", "2024-01-01 09:00:00", 1L, 1L),
+                new TimeSeriesPointDto(APP, "/events/1", "2024-01-01 10:00:00", 3L, 2L),
+                new TimeSeriesPointDto(APP, "/events/2", "2024-01-01 11:00:00", 1L, 1L),
+                new TimeSeriesPointDto(APP, "/events/2", "2024-01-01 12:00:00", 1L, 1L),
+                new TimeSeriesPointDto(APP, "/events/3", "2024-01-01 13:00:00", 1L, 1L)));
+    }
+
+    /**
+     * Обращения, попадающие в исходные записи на краях диапазона 09:59:30 - 13:00:10 и в часовые агрегаты
+     */
+    private void addRangeHits() {
+        statsService.addAll(List.of(hit("/events/1", "10.0.0.3", "2024-01-01 09:59:45"),
+                hit("/events/1", "10.0.0.1", "2024-01-01 10:00:00"),
+                hit("/events/1", "10.0.0.2", "2024-01-01 10:05:30"),
+                hit("/events/1", "10.0.0.1", "2024-01-01 10:05:40"),
+                hit("/events/2", "10.0.0.1", "2024-01-01 11:20:15"),
+                hit("/events/2", "10.0.0.3", "2024-01-01 12:59:59"),
+                hit("/events/3", "10.0.0.1", "2024-01-01 13:00:05")));
+    }
+
+    /**
+     * Заполнить счетчики уникальных IP часовых корзин по исходным записям так же, как их заполняет задача сжатия
+     */
+    private void fillHourSketches() {
+        var sketches = new HashMap<List<Object>, HyperLogLog>();
+        jdbcTemplate.query("""
+                SELECT a.name AS app, u.name AS uri, h.epoch_second / 3600 * 3600 AS bucket, h.ip
+                FROM "stats-db" h
+                JOIN stats_app a ON a.id = h.app_id
+                JOIN stats_uri u ON u.id = h.uri_id""", (RowCallbackHandler) resultSet -> sketches.computeIfAbsent(
+                List.of(resultSet.getString("app"), resultSet.getString("uri"), resultSet.getLong("bucket")),
+                key -> new HyperLogLog()).add(resultSet.getBytes("ip")));
+        sketches.forEach((key, sketch) -> jdbcTemplate.update(
+                "UPDATE stats_rollup_hour SET sketch = ? WHERE app = ? AND uri = ? AND bucket = ?",
+                sketch.toBytes(), key.get(0), key.get(1),
+                LocalDateTime.ofEpochSecond((Long) key.get(2), 0, ZoneOffset.UTC)));
+    }
+
+    private List<ViewStatsDto> single(BatchQuery query) {
+        if (query.unique()) {
+            return rollupStatsRepository.getUniqueStats(query.plan(), query.uris());
+        }
+        var stats = new ArrayList<ViewStatsDto>();
+        rollupStatsRepository.streamStats(query.plan(), query.uris(), stats::add);
+        return stats;
+    }
+
+    private static List<QuerySegment> plan(String from, String to) {
+        return StatsQueryPlanner.plan(Instant.parse(from), Instant.parse(to));
+    }
+
+    private long countHits() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"stats-db\"", Long.class);
+    }
+
+    private static HitDto hit(String uri, String ip) {
+        return hit(uri, ip, TIMESTAMP);
+    }
+
+    private static HitDto hit(String uri, String ip, String timestamp) {
+        return new HitDto(APP, uri, ip, timestamp);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package ru.practicum.ewm.statsserver.server.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.compaction.HitCompaction;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitIngestBuffer;
+import ru.practicum.ewm.statsserver.server.journal.HitJournal;
+import ru.practicum.ewm.statsserver.server.live.LiveStatsHub;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+import ru.practicum.ewm.statsserver.server.rollup.RollupStatsRepository;
+import ru.practicum.ewm.statsserver.server.rollup.StatsQueryPlanner;
+import ru.practicum.ewm.statsserver.server.topk.TopUriTracker;
+import ru.practicum.ewm.statsserver.server.window.SlidingWindowCounters;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * Счетчики обращений за последние сутки должны отвечать так же, как БД: пакет, запись которого не удалась,
+ * в счетчиках не учитывается, а обращения, которые счетчики учесть не могут, переводят запрос на БД
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "stats-server.window.enabled=true")
+@Import({StatsServiceImpl.class, HitIngestBuffer.class, HitBatchWriter.class, FirstSeenIndex.class,
+        StatsDictionary.class, HitRollupWriter.class, RollupStatsRepository.class, StatsResultCache.class,
+        TopUriTracker.class, HitJournal.class, HitCompaction.class, SlidingWindowCounters.class,
+        LiveStatsHub.class})
+@DisplayName("Интеграционное тестирование согласованности счетчиков обращений с БД")
+class WindowIngestTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Autowired
+    private StatsService statsService;
+    @Autowired
+    private SlidingWindowCounters windowCounters;
+    @Autowired
+    private RollupStatsRepository rollupStatsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @SpyBean
+    private HitRollupWriter rollupWriter;
+
+    @AfterEach
+    void tearDown() {
+        reset(rollupWriter);
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Пакет, запись которого в БД откатилась, не учитывается в счетчиках")
+    void rolledBackWriteIsNotCountedTest() {
+        var now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        statsService.addAll(List.of(hit("/events/1", now)));
+        doThrow(new DataAccessResourceFailureException("БД недоступна")).when(rollupWriter).add(anyList());
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> statsService.addAll(List.of(hit("/events/1", now), hit("/events/2", now))));
+        reset(rollupWriter);
+        statsService.addAll(List.of(hit("/events/1", now)));
+
+        var windowStats = windowCounters.query(now, now, null);
+
+        assertThat(windowStats.isPresent(), equalTo(true));
+        assertThat(windowStats.get(), contains(new ViewStatsDto("ewm-main-service", "/events/1", 2L)));
+        assertThat(windowStats.get(), equalTo(databaseStats(now, now)));
+        assertThat(statsService.getStats(format(now), format(now), null, false, false),
+                equalTo(databaseStats(now, now)));
+    }
+
+    @Test
+    @DisplayName("Обращения пакета из будущего записываются в БД, а периоды с ними отвечаются по БД")
+    void futureHitsFallBackToDatabaseTest() {
+        var now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        var future = now.plus(1, ChronoUnit.HOURS);
+        statsService.addAll(List.of(hit("/events/1", now), hit("/events/2", future)));
+
+        assertThat(windowCounters.query(now, future, null).isPresent(), equalTo(false));
+        assertThat(statsService.getStats(format(now), format(future), null, false, false),
+                equalTo(databaseStats(now, future)));
+        assertThat(databaseStats(now, future).size(), equalTo(2));
+    }
+
+    private List<ViewStatsDto> databaseStats(Instant begin, Instant end) {
+        var stats = new ArrayList<ViewStatsDto>();
+        rollupStatsRepository.streamStats(StatsQueryPlanner.plan(begin, end.plusSeconds(1)), null, stats::add);
+        return stats;
+    }
+
+    private static String format(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).format(FORMATTER);
+    }
+
+    private static HitDto hit(String uri, Instant timestamp) {
+        return new HitDto("ewm-main-service", uri, "10.0.0.1", format(timestamp));
+    }
+}
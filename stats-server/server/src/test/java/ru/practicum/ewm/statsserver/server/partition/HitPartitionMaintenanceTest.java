@@ -0,0 +1,143 @@
+package ru.practicum.ewm.statsserver.server.partition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Обслуживание секций на PostgreSQL: преобразование несекционированной таблицы обращений, перенос ее обращений
+ * в секции, удаление устаревших секций и смена шага секционирования
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Интеграционное тестирование обслуживания секций таблицы обращений")
+class HitPartitionMaintenanceTest {
+    static final String CREATE_UNPARTITIONED = """
+            CREATE SEQUENCE "stats-db_id_seq";
+            CREATE TABLE "stats-db"
+            (
+                id           BIGINT DEFAULT nextval('"stats-db_id_seq"') NOT NULL,
+                app_id       INTEGER                                      NOT NULL,
+                uri_id       INTEGER                                      NOT NULL,
+                ip           BYTEA                                        NOT NULL,
+                epoch_second BIGINT                                       NOT NULL,
+                CONSTRAINT "pk_stats-db" PRIMARY KEY (id, epoch_second)
+            );
+            CREATE INDEX "ix_stats-db_epoch_second" ON "stats-db" (epoch_second)""";
+    static final String INSERT_HIT = """
+            INSERT INTO "stats-db" (app_id, uri_id, ip, epoch_second) VALUES (1, 1, int4send(1), ?)""";
+    static final String LIST_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = to_regclass('"stats-db"')""";
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16.1");
+
+    @BeforeEach
+    void resetSchema() {
+        var jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword()));
+        jdbcTemplate.execute("DROP SCHEMA public CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA public");
+    }
+
+    @Test
+    @DisplayName("Несекционированная таблица становится секцией по умолчанию, обращения переносятся в секции")
+    void convertAndRetainTest() {
+        var dataSource = new SingleConnectionDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword(), true);
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        for (var statement : CREATE_UNPARTITIONED.split(";")) {
+            jdbcTemplate.execute(statement);
+        }
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        var today = LocalDate.now(Clock.systemUTC());
+        var expired = today.minusDays(40);
+        jdbcTemplate.update(INSERT_HIT, epochSecond(expired));
+        jdbcTemplate.update(INSERT_HIT, epochSecond(today.minusDays(2)));
+        jdbcTemplate.update(INSERT_HIT, epochSecond(today));
+
+        maintenance(jdbcTemplate, dataSource, PartitionInterval.DAY, Period.ZERO).maintain();
+
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('"stats-db"')""",
+                Long.class), equalTo(1L));
+        var partitions = jdbcTemplate.queryForList(LIST_PARTITIONS, String.class);
+        assertThat(partitions, hasItem("stats-db_default"));
+        assertThat(partitions, hasItem("stats-db_p" + PartitionInterval.DAY.suffix(expired)));
+        assertThat(partitions, hasItem("stats-db_p" + PartitionInterval.DAY.suffix(today.plusDays(3))));
+        assertThat(count("\"stats-db\"", jdbcTemplate), equalTo(3L));
+        assertThat(count("\"stats-db_default\"", jdbcTemplate), equalTo(0L));
+
+        maintenance(jdbcTemplate, dataSource, PartitionInterval.DAY, Period.ofDays(30)).maintain();
+
+        assertThat(jdbcTemplate.queryForList(LIST_PARTITIONS, String.class),
+                not(hasItem("stats-db_p" + PartitionInterval.DAY.suffix(expired))));
+        assertThat(count("\"stats-db\"", jdbcTemplate), equalTo(2L));
+    }
+
+    @Test
+    @DisplayName("После смены суточного шага на месячный месяцы с суточными секциями дополняются суточными")
+    void changeIntervalTest() {
+        var dataSource = new SingleConnectionDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword(), true);
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(
+                new ClassPathResource("schema-postgresql.sql"), new ClassPathResource("schema.sql")
+        ).execute(dataSource);
+        var today = LocalDate.now(Clock.systemUTC());
+        maintenance(jdbcTemplate, dataSource, PartitionInterval.DAY, Period.ZERO).maintain();
+
+        maintenance(jdbcTemplate, dataSource, PartitionInterval.MONTH, Period.ZERO).maintain();
+
+        var partitions = jdbcTemplate.queryForList(LIST_PARTITIONS, String.class);
+        var month = PartitionInterval.MONTH.floor(today);
+        assertThat(partitions, hasItem("stats-db_p" + PartitionInterval.DAY.suffix(today.plusDays(3))));
+        assertThat(partitions, hasItem("stats-db_p" + PartitionInterval.MONTH.suffix(month.plusMonths(3))));
+        assertThat(partitions, not(hasItem("stats-db_p" + PartitionInterval.MONTH.suffix(month))));
+        var end = month.plusMonths(4);
+        for (var day = month; day.isBefore(end); day = day.plusDays(1)) {
+            jdbcTemplate.update(INSERT_HIT, epochSecond(day));
+        }
+        assertThat(count("\"stats-db_default\"", jdbcTemplate), equalTo(0L));
+
+        maintenance(jdbcTemplate, dataSource, PartitionInterval.DAY, Period.ZERO).maintain();
+
+        assertThat(jdbcTemplate.queryForList(LIST_PARTITIONS, String.class).size(), equalTo(partitions.size()));
+    }
+
+    private static HitPartitionMaintenance maintenance(JdbcTemplate jdbcTemplate, SingleConnectionDataSource dataSource,
+                                                       PartitionInterval interval, Period retention) {
+        return new HitPartitionMaintenance(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                new FirstSeenIndex(jdbcTemplate), new ClassPathResource("schema-postgresql.sql"),
+                interval, 3, retention);
+    }
+
+    private static long count(String table, JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private static long epochSecond(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toEpochSecond() + 3_600;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.practicum.ewm.statsserver.server.partition;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.statsserver.server.cache.StatsResultCache;
+import ru.practicum.ewm.statsserver.server.dictionary.StatsDictionary;
+import ru.practicum.ewm.statsserver.server.ingest.FirstSeenIndex;
+import ru.practicum.ewm.statsserver.server.ingest.HitBatchWriter;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+import ru.practicum.ewm.statsserver.server.rollup.HitRollupWriter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Удаление устаревших обращений на БД без секционирования: вместе с обращениями удаляются агрегаты
+ * и ключи индекса первых обращений
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({HitPartitionMaintenance.class, HitBatchWriter.class, FirstSeenIndex.class, StatsDictionary.class,
+        HitRollupWriter.class, StatsResultCache.class})
+@TestPropertySource(properties = "stats-server.partitions.retention=30d")
+@DisplayName("Интеграционное тестирование удаления обращений, вышедших за срок хранения")
+class HitRetentionTest {
+    @Autowired
+    private HitPartitionMaintenance maintenance;
+    @Autowired
+    private HitBatchWriter writer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM \"stats-db\"");
+        jdbcTemplate.update("DELETE FROM stats_first_seen");
+        jdbcTemplate.update("DELETE FROM stats_rollup_minute");
+        jdbcTemplate.update("DELETE FROM stats_rollup_hour");
+        jdbcTemplate.update("DELETE FROM stats_rollup_day");
+    }
+
+    @Test
+    @DisplayName("Обращения старше срока хранения удаляются вместе с агрегатами и ключами первых обращений")
+    void purgeExpiredTest() {
+        var expired = Instant.now().minus(Duration.ofDays(60));
+        var recent = Instant.now().minus(Duration.ofDays(1));
+        writer.write(List.of(hit("/events/1", expired), hit("/events/1", expired), hit("/events/2", recent)));
+
+        maintenance.maintain();
+
+        assertThat(count("\"stats-db\""), equalTo(1L));
+        for (var table : List.of("stats_rollup_minute", "stats_rollup_hour", "stats_rollup_day")) {
+            assertThat(jdbcTemplate.queryForObject("SELECT SUM(hits) FROM " + table, Long.class), equalTo(1L));
+        }
+        assertThat(count("stats_first_seen"), equalTo(1L));
+        assertThat(writer.write(List.of(hit("/events/1", recent), hit("/events/2", recent))), contains(true, false));
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private static HitRecord hit(String uri, Instant timestamp) {
+        return new HitRecord("ewm-main-service", uri, "10.0.0.1", timestamp);
+    }
+}
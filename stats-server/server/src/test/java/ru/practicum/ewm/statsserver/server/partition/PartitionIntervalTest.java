@@ -0,0 +1,44 @@
+package ru.practicum.ewm.statsserver.server.partition;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+@DisplayName("Модульное тестирование шага секционирования таблицы обращений")
+class PartitionIntervalTest {
+    private static final LocalDate DATE = LocalDate.parse("2024-02-29");
+
+    @Test
+    @DisplayName("Начало, следующая секция и суффикс имени суточной секции")
+    void dayTest() {
+        assertThat(PartitionInterval.DAY.floor(DATE), equalTo(DATE));
+        assertThat(PartitionInterval.DAY.next(DATE), equalTo(LocalDate.parse("2024-03-01")));
+        assertThat(PartitionInterval.DAY.suffix(DATE), equalTo("20240229"));
+        assertThat(PartitionInterval.DAY.parse("20240229"), equalTo(DATE));
+    }
+
+    @Test
+    @DisplayName("Начало, следующая секция и суффикс имени месячной секции")
+    void monthTest() {
+        var start = PartitionInterval.MONTH.floor(DATE);
+        assertThat(start, equalTo(LocalDate.parse("2024-02-01")));
+        assertThat(PartitionInterval.MONTH.next(start), equalTo(LocalDate.parse("2024-03-01")));
+        assertThat(PartitionInterval.MONTH.suffix(start), equalTo("202402"));
+        assertThat(PartitionInterval.MONTH.parse("202402"), equalTo(start));
+    }
+
+    @Test
+    @DisplayName("Шаг секции определяется по длине суффикса, посторонние суффиксы не распознаются")
+    void ofSuffixTest() {
+        assertThat(PartitionInterval.ofSuffix("20240229"), equalTo(PartitionInterval.DAY));
+        assertThat(PartitionInterval.ofSuffix("202402"), equalTo(PartitionInterval.MONTH));
+        assertThat(PartitionInterval.ofSuffix("2024"), nullValue());
+        assertThat(PartitionInterval.ofSuffix("2024-02"), nullValue());
+        assertThat(PartitionInterval.ofSuffix("default"), nullValue());
+    }
+}
@@ -0,0 +1,121 @@
+package ru.practicum.ewm.statsserver.server.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import ru.practicum.ewm.statsserver.commondto.HitDto;
+import ru.practicum.ewm.statsserver.server.exception.AppTooManyRequestsException;
+import ru.practicum.ewm.statsserver.server.ingest.IngestMode;
+import ru.practicum.ewm.statsserver.server.model.StatsService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Модульное тестирование неблокирующего приема статистики")
+class ReactiveIngestServerTest {
+    private static final String HIT = """
+            {"app":"app","uri":"/events/1","ip":"10.0.0.1","timestamp":"2024-01-01 00:00:00"}""";
+    @Mock
+    private StatsService statsService;
+    private ReactiveIngestServer server;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new ReactiveIngestServer(statsService, new ObjectMapper(), IngestMode.ASYNC, true, port, 1);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("Пакет обращений принимается без ожидания записи, ответ 202 Accepted")
+    void hitsAcceptedTest() {
+        assertThat(post("/hits", "[" + HIT + "," + HIT + "]"), equalTo(202));
+        verify(statsService).enqueue(List.of(
+                new HitDto("app", "/events/1", "10.0.0.1", "2024-01-01 00:00:00"),
+                new HitDto("app", "/events/1", "10.0.0.1", "2024-01-01 00:00:00")));
+    }
+
+    @Test
+    @DisplayName("Обращение без обязательного поля не принимается, ответ 400 Bad Request")
+    void hitWithoutIpTest() {
+        assertThat(post("/hit", "{\"app\":\"app\",\"uri\":\"/events/1\",\"timestamp\":\"2024-01-01 00:00:00\"}"),
+                equalTo(400));
+        verify(statsService, never()).enqueue(any());
+    }
+
+    @Test
+    @DisplayName("Буфер приема заполнен, ответ 429 Too Many Requests")
+    void hitWhenBufferIsFullTest() {
+        doThrow(new AppTooManyRequestsException("source", "error", "message", Duration.ofSeconds(1)))
+                .when(statsService).enqueue(any());
+        assertThat(post("/hit", HIT), equalTo(429));
+    }
+
+    @Test
+    @DisplayName("Обращения ставятся в журнал или буфер вне потоков Netty")
+    void enqueueOffEventLoopTest() {
+        var thread = new AtomicReference<String>();
+        doAnswer(invocation -> {
+            thread.set(Thread.currentThread().getName());
+            return null;
+        }).when(statsService).enqueue(any());
+
+        assertThat(post("/hit", HIT), equalTo(202));
+        assertThat(thread.get(), startsWith("boundedElastic"));
+    }
+
+    @Test
+    @DisplayName("Некорректное обращение, отклоненное при приеме, - ответ 400 Bad Request")
+    void illegalHitTest() {
+        doThrow(new IllegalArgumentException("Некорректный IP")).when(statsService).enqueue(any());
+        assertThat(post("/hit", HIT), equalTo(400));
+    }
+
+    @Test
+    @DisplayName("Ошибка записи в журнал - ответ 500 Internal Server Error")
+    void journalFailureTest() {
+        doThrow(new UncheckedIOException(new IOException("Нет места на диске")))
+                .when(statsService).enqueue(any());
+        assertThat(post("/hit", HIT), equalTo(500));
+    }
+
+    private int post(String path, String body) {
+        return HttpClient.create()
+                .post()
+                .uri("http://localhost:" + port + path)
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .response()
+                .map(response -> response.status().code())
+                .block(Duration.ofSeconds(10));
+    }
+}
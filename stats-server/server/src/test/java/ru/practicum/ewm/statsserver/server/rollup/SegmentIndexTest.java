@@ -0,0 +1,52 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@DisplayName("Модульное тестирование индекса участков пакета запросов")
+class SegmentIndexTest {
+    private static final Instant DAY_1 = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant DAY_2 = Instant.parse("2024-01-02T00:00:00Z");
+    private static final Instant DAY_3 = Instant.parse("2024-01-03T00:00:00Z");
+    private static final Instant DAY_4 = Instant.parse("2024-01-04T00:00:00Z");
+    private static final Instant DAY_6 = Instant.parse("2024-01-06T00:00:00Z");
+    private static final Instant DAY_7 = Instant.parse("2024-01-07T00:00:00Z");
+
+    @Test
+    @DisplayName("Пересекающиеся участки читаются одним диапазоном, несмежные - отдельными")
+    void scanRangesMergeOverlappingSegmentsTest() {
+        var index = new SegmentIndex(List.of(
+                new QuerySegment(RollupGranularity.DAY, DAY_1, DAY_3),
+                new QuerySegment(RollupGranularity.DAY, DAY_2, DAY_4),
+                new QuerySegment(RollupGranularity.DAY, DAY_6, DAY_7)
+        ), List.of(0, 1, 2));
+
+        assertThat(index.scanRanges(RollupGranularity.DAY), contains(
+                new QuerySegment(RollupGranularity.DAY, DAY_1, DAY_4),
+                new QuerySegment(RollupGranularity.DAY, DAY_6, DAY_7)
+        ));
+        assertThat(index.queriesIn(new QuerySegment(RollupGranularity.DAY, DAY_1, DAY_4)), equalTo(new int[]{0, 1}));
+    }
+
+    @Test
+    @DisplayName("Момент времени относится ко всем запросам, участки которых его содержат, правая граница исключается")
+    void queriesAtTest() {
+        var index = new SegmentIndex(List.of(
+                new QuerySegment(RollupGranularity.DAY, DAY_1, DAY_3),
+                new QuerySegment(RollupGranularity.DAY, DAY_2, DAY_4)
+        ), List.of(0, 1));
+
+        assertThat(index.queriesAt(DAY_1.getEpochSecond()), equalTo(new int[]{0}));
+        assertThat(index.queriesAt(DAY_2.getEpochSecond() + 1), equalTo(new int[]{0, 1}));
+        assertThat(index.queriesAt(DAY_3.getEpochSecond()), equalTo(new int[]{1}));
+        assertThat(index.queriesAt(DAY_4.getEpochSecond()), equalTo(new int[0]));
+        assertThat(index.queriesAt(DAY_1.getEpochSecond() - 1), equalTo(new int[0]));
+    }
+}
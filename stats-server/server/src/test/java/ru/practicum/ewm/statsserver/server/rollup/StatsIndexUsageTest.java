@@ -0,0 +1,151 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Проверка планов запросов статистики на PostgreSQL с заполненными таблицами: каждый вид запроса должен
+ * читать таблицу через предназначенный для него индекс, а не полным сканированием. Запросы
+ * {@link RollupStatsRepository}, включая точный подсчет уникальных IP, собираются из его же шаблонов с теми же
+ * параметрами, что и в сервисе, поэтому изменение запроса или индекса, ломающее план, обнаруживается этим
+ * тестом. Диапазоны запросов выбраны так же, как в типичных запросах статистики: малая доля накопленных
+ * обращений.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Интеграционное тестирование использования индексов запросами статистики")
+class StatsIndexUsageTest {
+    private static final long FROM = 1_704_931_200L;
+    private static final LocalDateTime HOUR_FROM = LocalDateTime.parse("2024-01-11T00:00:00");
+    private static final LocalDateTime HOUR_TO = LocalDateTime.parse("2024-01-12T00:00:00");
+    private static final List<String> FULL_SCANS = List.of(
+            "Seq Scan on \"stats-db", "Seq Scan on stats_rollup");
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16.1");
+    private static JdbcTemplate jdbcTemplate;
+    private static NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @BeforeAll
+    static void seed() {
+        var dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        new ResourceDatabasePopulator(
+                new ClassPathResource("schema-postgresql.sql"), new ClassPathResource("schema.sql")
+        ).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        jdbcTemplate.execute("INSERT INTO stats_app (name) SELECT 'app-' || i FROM generate_series(1, 3) i");
+        jdbcTemplate.execute("INSERT INTO stats_uri (name) SELECT '/events/' || i FROM generate_series(1, 200) i");
+        jdbcTemplate.execute("""
+                INSERT INTO "stats-db" (app_id, uri_id, ip, epoch_second)
+                SELECT 1 + i % 3, 1 + i % 200, int4send(i % 5000), 1704067200 + i * 13
+                FROM generate_series(0, 199999) i""");
+        jdbcTemplate.execute("""
+                INSERT INTO stats_rollup_hour (app, uri, bucket, hits)
+                SELECT 'app-1', '/events/' || u, TIMESTAMP '2024-01-01 00:00:00' + h * INTERVAL '1 hour', 10
+                FROM generate_series(1, 200) u, generate_series(0, 719) h""");
+        jdbcTemplate.execute("VACUUM ANALYZE \"stats-db\", stats_rollup_hour");
+    }
+
+    @Test
+    @DisplayName("Точное количество уникальных IP по всем эндпоинтам читается через индекс по времени")
+    void uniqueWithoutUrisTest() {
+        assertUsesIndexes(RollupStatsRepository.EXACT_UNIQUE_QUERY.formatted(""),
+                new MapSqlParameterSource("from", FROM).addValue("to", FROM + 3_600),
+                "ix_stats-db_epoch_second");
+    }
+
+    @Test
+    @DisplayName("Точное количество уникальных IP по списку эндпоинтов читается из покрывающего индекса")
+    void uniqueWithUrisTest() {
+        assertUsesIndexes(RollupStatsRepository.EXACT_UNIQUE_QUERY.formatted(RollupStatsRepository.URI_IDS_FILTER),
+                new MapSqlParameterSource("from", FROM).addValue("to", FROM + 86_400)
+                        .addValue("uriIds", List.of(1, 2, 3)),
+                "ix_stats-db_uri_id_epoch_second_cover");
+    }
+
+    @Test
+    @DisplayName("Статистика по краям диапазона из исходных записей и середине из агрегатов читает индексы")
+    void mixedPlanTest() {
+        var sql = RollupStatsRepository.STATS_QUERY.formatted(String.join(RollupStatsRepository.PARTS_SEPARATOR,
+                RollupStatsRepository.RAW_PART.formatted(0, 0, ""),
+                RollupStatsRepository.ROLLUP_PART.formatted(RollupGranularity.HOUR.getTable(), 1, 1, "")));
+        assertUsesIndexes(sql, new MapSqlParameterSource()
+                        .addValue("from0", FROM).addValue("to0", FROM + 59)
+                        .addValue("from1", HOUR_FROM).addValue("to1", HOUR_TO),
+                "ix_stats-db_epoch_second", "ix_stats_rollup_hour_bucket_app_uri");
+    }
+
+    @Test
+    @DisplayName("Статистика по списку эндпоинтов читает индексы по эндпоинту")
+    void mixedPlanWithUrisTest() {
+        var sql = RollupStatsRepository.STATS_QUERY.formatted(String.join(RollupStatsRepository.PARTS_SEPARATOR,
+                RollupStatsRepository.RAW_PART.formatted(0, 0, RollupStatsRepository.URI_IDS_FILTER),
+                RollupStatsRepository.ROLLUP_PART.formatted(RollupGranularity.HOUR.getTable(), 1, 1,
+                        RollupStatsRepository.URIS_FILTER)));
+        assertUsesIndexes(sql, new MapSqlParameterSource()
+                        .addValue("from0", FROM).addValue("to0", FROM + 86_400)
+                        .addValue("from1", HOUR_FROM).addValue("to1", HOUR_TO)
+                        .addValue("uriIds", List.of(1, 2)).addValue("uris", List.of("/events/1", "/events/2")),
+                "ix_stats-db_uri_id_epoch_second_cover", "ix_stats_rollup_hour_uri_bucket_app");
+    }
+
+    @Test
+    @DisplayName("IP корзин без счетчиков уникальных IP читаются из покрывающего индекса по эндпоинту и времени")
+    void rawVisitorsTest() {
+        assertUsesIndexes(RollupStatsRepository.RAW_VISITORS_QUERY.formatted(RollupStatsRepository.URI_IDS_FILTER),
+                new MapSqlParameterSource("from", FROM).addValue("to", FROM + 86_400)
+                        .addValue("uriIds", List.of(1, 2, 3)),
+                "ix_stats-db_uri_id_epoch_second_cover");
+    }
+
+    @Test
+    @DisplayName("IP корзин временного ряда без счетчиков читаются из покрывающего индекса по эндпоинту и времени")
+    void bucketVisitorsTest() {
+        assertUsesIndexes(RollupStatsRepository.BUCKET_VISITORS_QUERY.formatted(
+                        3_600, RollupStatsRepository.URI_IDS_FILTER, 3_600),
+                new MapSqlParameterSource("from", FROM).addValue("to", FROM + 86_400)
+                        .addValue("uriIds", List.of(1, 2, 3)),
+                "ix_stats-db_uri_id_epoch_second_cover");
+    }
+
+    /**
+     * Проверить, что план запроса использует каждый из индексов и не сканирует полностью таблицы обращений
+     * и агрегатов; словари компонентов и эндпоинтов малы и могут читаться целиком.
+     * Для секционированной таблицы в плане указываются индексы секций, созданные по индексу таблицы, поэтому
+     * подходит любой из них. Имена индексов выбраны так, что ни одно не входит в другое.
+     */
+    private static void assertUsesIndexes(String sql, MapSqlParameterSource params, String... indexes) {
+        var plan = String.join("\n", namedJdbcTemplate.queryForList("EXPLAIN " + sql, params, String.class));
+        for (var fullScan : FULL_SCANS) {
+            assertThat(plan, not(containsString(fullScan)));
+        }
+        for (var index : indexes) {
+            var names = new ArrayList<String>();
+            names.add(index);
+            names.addAll(jdbcTemplate.queryForList("""
+                    SELECT c.relname
+                    FROM pg_inherits i
+                    JOIN pg_class c ON c.oid = i.inhrelid
+                    WHERE i.inhparent = to_regclass(?)""", String.class, "\"" + index + "\""));
+            assertThat(plan + "\nиндексы: " + names, names.stream().anyMatch(plan::contains));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.ewm.statsserver.server.rollup;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+@DisplayName("Модульное тестирование планировщика запросов статистики")
+class StatsQueryPlannerTest {
+
+    @Test
+    @DisplayName("Диапазон с неровными краями покрывается корзинами от крупных к мелким и исходными записями по краям")
+    void planRaggedRangeTest() {
+        var from = Instant.parse("2024-01-01T22:58:30Z");
+        var to = Instant.parse("2024-01-04T01:02:10Z");
+
+        var plan = StatsQueryPlanner.plan(from, to);
+
+        assertThat(plan, contains(
+                QuerySegment.raw(from, Instant.parse("2024-01-01T22:59:00Z")),
+                new QuerySegment(RollupGranularity.MINUTE,
+                        Instant.parse("2024-01-01T22:59:00Z"), Instant.parse("2024-01-01T23:00:00Z")),
+                new QuerySegment(RollupGranularity.HOUR,
+                        Instant.parse("2024-01-01T23:00:00Z"), Instant.parse("2024-01-02T00:00:00Z")),
+                new QuerySegment(RollupGranularity.DAY,
+                        Instant.parse("2024-01-02T00:00:00Z"), Instant.parse("2024-01-04T00:00:00Z")),
+                new QuerySegment(RollupGranularity.HOUR,
+                        Instant.parse("2024-01-04T00:00:00Z"), Instant.parse("2024-01-04T01:00:00Z")),
+                new QuerySegment(RollupGranularity.MINUTE,
+                        Instant.parse("2024-01-04T01:00:00Z"), Instant.parse("2024-01-04T01:02:00Z")),
+                QuerySegment.raw(Instant.parse("2024-01-04T01:02:00Z"), to)
+        ));
+    }
+
+    @Test
+    @DisplayName("Диапазон внутри одной минуты читается только из исходных записей")
+    void planShortRangeTest() {
+        var from = Instant.parse("2024-01-01T10:00:05Z");
+        var to = Instant.parse("2024-01-01T10:00:45Z");
+
+        assertThat(StatsQueryPlanner.plan(from, to), contains(QuerySegment.raw(from, to)));
+    }
+
+    @Test
+    @DisplayName("Выровненный по суткам диапазон читается только из суточных агрегатов, пустой диапазон - никак")
+    void planAlignedRangeTest() {
+        var from = Instant.parse("2024-01-01T00:00:00Z");
+        var to = Instant.parse("2024-02-01T00:00:00Z");
+
+        assertThat(StatsQueryPlanner.plan(from, to), contains(new QuerySegment(RollupGranularity.DAY, from, to)));
+        assertThat(StatsQueryPlanner.plan(to, from), empty());
+        assertThat(StatsQueryPlanner.plan(from, from), empty());
+    }
+
+    @Test
+    @DisplayName("Часть диапазона до границы сжатия читается из агрегатов не мельче часовых с краями до целого часа")
+    void planCompactedRangeTest() {
+        var from = Instant.parse("2024-01-01T22:58:30Z");
+        var compactedBefore = Instant.parse("2024-01-03T00:00:00Z");
+        var to = Instant.parse("2024-01-03T00:02:10Z");
+
+        var plan = StatsQueryPlanner.plan(from, to, compactedBefore, RollupGranularity.HOUR);
+
+        assertThat(plan, contains(
+                new QuerySegment(RollupGranularity.HOUR,
+                        Instant.parse("2024-01-01T22:00:00Z"), Instant.parse("2024-01-01T23:00:00Z")),
+                new QuerySegment(RollupGranularity.HOUR,
+                        Instant.parse("2024-01-01T23:00:00Z"), Instant.parse("2024-01-02T00:00:00Z")),
+                new QuerySegment(RollupGranularity.DAY,
+                        Instant.parse("2024-01-02T00:00:00Z"), compactedBefore),
+                new QuerySegment(RollupGranularity.MINUTE,
+                        compactedBefore, Instant.parse("2024-01-03T00:02:00Z")),
+                QuerySegment.raw(Instant.parse("2024-01-03T00:02:00Z"), to)
+        ));
+    }
+
+    @Test
+    @DisplayName("Диапазон целиком до границы сжатия внутри одних суток читается из одной суточной корзины")
+    void planCompactedToDaysTest() {
+        var from = Instant.parse("2024-01-01T10:15:00Z");
+        var to = Instant.parse("2024-01-01T12:45:00Z");
+
+        assertThat(StatsQueryPlanner.plan(from, to, Instant.parse("2024-02-01T00:00:00Z"), RollupGranularity.DAY),
+                contains(new QuerySegment(RollupGranularity.DAY,
+                        Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-01-02T00:00:00Z"))));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.ewm.statsserver.server.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@DisplayName("Модульное тестирование счетчика уникальных значений HyperLogLog")
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("Оценка количества уникальных IP укладывается в 2% при повторных обращениях")
+    void estimateTest() {
+        var sketch = new HyperLogLog();
+        int distinct = 200_000;
+        for (int i = 0; i < distinct; i++) {
+            sketch.add(ip(i));
+            sketch.add(ip(i));
+        }
+
+        assertThat((double) sketch.estimate(), closeTo(distinct, distinct * 0.02));
+    }
+
+    @Test
+    @DisplayName("Малое количество уникальных IP считается точно и хранится компактно")
+    void smallCardinalityTest() {
+        var sketch = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            sketch.add(ip(i % 10));
+        }
+
+        assertThat(sketch.estimate(), equalTo(10L));
+        assertThat(sketch.toBytes().length, lessThan(64));
+        assertThat(new HyperLogLog().estimate(), equalTo(0L));
+    }
+
+    @Test
+    @DisplayName("Объединение счетчиков и восстановление из двоичного представления не меняют оценку")
+    void mergeAndSerializationTest() {
+        var whole = new HyperLogLog();
+        var even = new HyperLogLog();
+        var odd = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            whole.add(ip(i));
+            (i % 2 == 0 ? even : odd).add(ip(i));
+        }
+
+        var merged = HyperLogLog.fromBytes(even.toBytes());
+        merged.merge(HyperLogLog.fromBytes(odd.toBytes()));
+
+        assertThat(merged.estimate(), equalTo(whole.estimate()));
+        assertThat(HyperLogLog.fromBytes(whole.toBytes()).estimate(), equalTo(whole.estimate()));
+    }
+
+    private static String ip(int number) {
+        return "10." + (number >>> 16 & 0xFF) + "." + (number >>> 8 & 0xFF) + "." + (number & 0xFF);
+    }
+}
@@ -0,0 +1,69 @@
+package ru.practicum.ewm.statsserver.server.topk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasKey;
+
+@DisplayName("Модульное тестирование алгоритма Space-Saving")
+class SpaceSavingTest {
+
+    @Test
+    @DisplayName("Пока элементов не больше счетчиков, счет точный")
+    void exactCountsWithinCapacityTest() {
+        var summary = new SpaceSaving<String>(3);
+        summary.add("/a");
+        summary.add("/b");
+        summary.add("/a");
+
+        var counts = collect(summary);
+
+        assertThat(counts, equalTo(Map.of("/a", 2L, "/b", 1L)));
+    }
+
+    @Test
+    @DisplayName("Частые элементы потока сохраняются в счетчиках, счет не занижается")
+    void heavyHittersAreKeptTest() {
+        var summary = new SpaceSaving<String>(10);
+        var exact = new HashMap<String, Long>();
+        var random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            var key = random.nextInt(4) == 0 ? "/rare/" + random.nextInt(1000) : "/hot/" + random.nextInt(3);
+            summary.add(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        var counts = collect(summary);
+
+        assertThat(counts, aMapWithSize(10));
+        for (int i = 0; i < 3; i++) {
+            assertThat(counts, hasKey("/hot/" + i));
+        }
+        counts.forEach((key, count) -> assertThat(count, greaterThanOrEqualTo(exact.get(key))));
+    }
+
+    @Test
+    @DisplayName("После очистки счетчики пусты")
+    void clearTest() {
+        var summary = new SpaceSaving<String>(2);
+        summary.add("/a");
+        summary.clear();
+        summary.add("/b");
+
+        assertThat(collect(summary), equalTo(Map.of("/b", 1L)));
+    }
+
+    private static Map<String, Long> collect(SpaceSaving<String> summary) {
+        var counts = new HashMap<String, Long>();
+        summary.forEach(counts::put);
+        return counts;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.practicum.ewm.statsserver.server.window;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.statsserver.commondto.ViewStatsDto;
+import ru.practicum.ewm.statsserver.server.ingest.HitRecord;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@DisplayName("Модульное тестирование счетчиков обращений за последние 5 минут, час и сутки")
+class SlidingWindowCountersTest {
+    private static final Instant STARTED = Instant.parse("2024-01-01T00:00:00Z");
+    private final MutableClock clock = new MutableClock(STARTED);
+    private final SlidingWindowCounters counters = new SlidingWindowCounters(true, 100, clock);
+
+    @Test
+    @DisplayName("Статистика за последние 5 минут считается по секундам и сортируется по убыванию обращений")
+    void lastMinutesTest() {
+        clock.now = STARTED.plusSeconds(120);
+        counters.add(List.of(hit("/a", 10), hit("/b", 30), hit("/b", 31), hit("/a", 119)));
+
+        assertThat(counters.query(STARTED.plusSeconds(11), STARTED.plusSeconds(120), null).orElseThrow(), contains(
+                new ViewStatsDto("app", "/b", 2L),
+                new ViewStatsDto("app", "/a", 1L)
+        ));
+        assertThat(counters.query(STARTED, STARTED.plusSeconds(10), List.of("/a")).orElseThrow(), contains(
+                new ViewStatsDto("app", "/a", 1L)
+        ));
+    }
+
+    @Test
+    @DisplayName("Статистика за последний час считается по минутам, если начало периода выровнено по минуте")
+    void lastHourTest() {
+        clock.now = STARTED.plusSeconds(3_600);
+        counters.add(List.of(hit("/a", 61), hit("/a", 119), hit("/a", 3_590), hit("/a", 3_600)));
+
+        assertThat(counters.query(STARTED.plusSeconds(60), STARTED.plusSeconds(3_600), null).orElseThrow(), contains(
+                new ViewStatsDto("app", "/a", 4L)
+        ));
+        assertThat(counters.query(STARTED.plusSeconds(120), STARTED.plusSeconds(3_595), null).orElseThrow(), contains(
+                new ViewStatsDto("app", "/a", 1L)
+        ));
+        assertThat(counters.query(STARTED.plusSeconds(61), STARTED.plusSeconds(3_600), null),
+                equalTo(Optional.empty()));
+    }
+
+    @Test
+    @DisplayName("Периоды, начинающиеся до запуска или до обращения сверх max-uris, выполняются по БД")
+    void uncoveredPeriodTest() {
+        var small = new SlidingWindowCounters(true, 1, clock);
+        clock.now = STARTED.plusSeconds(100);
+        small.add(List.of(hit("/a", 50), hit("/b", 60)));
+
+        assertThat(small.query(STARTED.minusSeconds(60), STARTED.plusSeconds(100), null), equalTo(Optional.empty()));
+        assertThat(small.query(STARTED.plusSeconds(40), STARTED.plusSeconds(100), null), equalTo(Optional.empty()));
+        assertThat(small.query(STARTED.plusSeconds(101), STARTED.plusSeconds(200), null).orElseThrow(),
+                equalTo(List.of()));
+    }
+
+    private static HitRecord hit(String uri, long second) {
+        return new HitRecord("app", uri, "127.0.0.1", STARTED.plusSeconds(second));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}